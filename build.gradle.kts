@@ -2,6 +2,7 @@ plugins {
 	java
 	id("org.springframework.boot") version "3.3.1"
 	id("io.spring.dependency-management") version "1.1.5"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "net.rooms"
@@ -22,16 +23,32 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-jdbc")
 	implementation("org.springframework.boot:spring-boot-starter-web")
 	implementation("org.springframework.boot:spring-boot-starter-security")
+	implementation("org.springframework.boot:spring-boot-starter-actuator")
+	implementation("org.springframework.boot:spring-boot-starter-aop")
 	implementation("com.google.code.gson:gson:2.11.0")
 	compileOnly("org.projectlombok:lombok")
+	compileOnly("com.google.code.findbugs:jsr305:3.0.2") // Meta-annotations of Spring's @Nullable
 	annotationProcessor("org.projectlombok:lombok")
 	developmentOnly("org.springframework.boot:spring-boot-devtools")
 	runtimeOnly("com.h2database:h2")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("org.springframework.security:spring-security-test")
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+	jmh("org.springframework:spring-test")
 }
 
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+// Benchmarks live in src/jmh/java, run them with "gradle jmh" or a subset with -PjmhIncludes=<regex>
+jmh {
+	warmupIterations = 3
+	iterations = 5
+	fork = 1
+	includeTests = false
+	timeOnIteration = "2s"
+	warmup = "2s"
+	resultFormat = "JSON"
+	project.findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+}
@@ -0,0 +1,68 @@
+package net.rooms.RoomsServer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import net.rooms.RoomsServer.room.JdbcRoomRepository;
+import net.rooms.RoomsServer.room.Room;
+import net.rooms.RoomsServer.user.JdbcUserRepository;
+import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.user.UserRole;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An embedded H2 database with the schema of the application, for benchmarks that go through the
+ * JDBC repositories. Every instance is a separate in-memory database behind a Hikari pool, the
+ * same way Spring Boot sets up the application.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+	private final HikariDataSource dataSource;
+	private final JdbcClient jdbcClient;
+	private final JdbcTemplate jdbcTemplate;
+
+	public BenchmarkDatabase() {
+		dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+		jdbcClient = JdbcClient.create(dataSource);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public JdbcClient jdbcClient() {
+		return jdbcClient;
+	}
+
+	public JdbcTemplate jdbcTemplate() {
+		return jdbcTemplate;
+	}
+
+	/**
+	 * Creates a user with the given username, which is also used as its nickname.
+	 */
+	public User createUser(String username) {
+		User user = new User(username, username, "", UserRole.USER, LocalDateTime.now());
+		new JdbcUserRepository(jdbcClient).create(user);
+		return user;
+	}
+
+	/**
+	 * Creates a public room owned by the given user, and adds all given users as participants.
+	 * The users must already exist.
+	 */
+	public void createRoom(long roomID, String owner, Iterable<String> participants) {
+		JdbcRoomRepository rooms = new JdbcRoomRepository(jdbcClient, 10);
+		rooms.create(new Room(roomID, "Room " + roomID, false, "", owner, LocalDateTime.now(), ""));
+		for (String username : participants)
+			rooms.joinUser(roomID, username);
+	}
+
+	@Override
+	public void close() {
+		jdbcClient.sql("SHUTDOWN").update();
+		dataSource.close();
+	}
+}
@@ -0,0 +1,99 @@
+package net.rooms.RoomsServer;
+
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.game.notifications.GameUpdate;
+import net.rooms.RoomsServer.game.requests.BroadcastRequest;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import net.rooms.RoomsServer.message.requests.MessageRequest;
+import net.rooms.RoomsServer.room.Room;
+import net.rooms.RoomsServer.user.Participant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts the records sent over the WebSocket connection to JSON, and the requests clients send
+ * back from JSON. Messages are also written into a reused buffer, the way the history export
+ * writes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JSONBenchmark {
+	private Message message;
+	private Participant participant;
+	private Room room;
+	private GameUpdate gameUpdate;
+
+	private StringBuilder buffer;
+
+	private String messageJson;
+	private String messageRequestJson;
+	private String broadcastRequestJson;
+
+	@Setup
+	public void setup() {
+		LocalDateTime now = LocalDateTime.now();
+		message = new Message(1024, 7, MessageType.MESSAGE, "alice", "Anyone up for a round of snakes?", now);
+		participant = new Participant(7, "Alice", "alice", now);
+		room = new Room(7, "Arcade", false, "", "alice", now, "Games and chatter");
+		gameUpdate = new GameUpdate(new SnakesConfig(GameType.SNAKES, 4, 10, true), "bob", List.of("alice", "bob", "carol"));
+
+		buffer = new StringBuilder(256);
+		messageJson = JSON.toJson(message);
+		messageRequestJson = JSON.toJson(new MessageRequest(7, MessageType.MESSAGE, message.content(), "JSESSIONID=0123456789ABCDEF"));
+		broadcastRequestJson = JSON.toJson(new BroadcastRequest(42, "{\"x\":120,\"y\":64,\"vx\":-3,\"vy\":2}", "JSESSIONID=0123456789ABCDEF"));
+	}
+
+	@Benchmark
+	public String messageToJson() {
+		return JSON.toJson(message);
+	}
+
+	@Benchmark
+	public StringBuilder messageToBuffer() {
+		buffer.setLength(0);
+		JSON.toJson(message, buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public Message messageFromJson() {
+		return JSON.fromJson(messageJson, Message.class);
+	}
+
+	@Benchmark
+	public String participantToJson() {
+		return JSON.toJson(participant);
+	}
+
+	@Benchmark
+	public String roomToJson() {
+		return JSON.toJson(room);
+	}
+
+	@Benchmark
+	public MessageRequest messageRequestFromJson() {
+		return JSON.fromJson(messageRequestJson, MessageRequest.class);
+	}
+
+	@Benchmark
+	public BroadcastRequest broadcastRequestFromJson() {
+		return JSON.fromJson(broadcastRequestJson, BroadcastRequest.class);
+	}
+
+	@Benchmark
+	public String gameUpdateToJson() {
+		return JSON.toJson(gameUpdate);
+	}
+}
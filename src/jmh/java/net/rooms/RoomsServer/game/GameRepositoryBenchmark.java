@@ -0,0 +1,138 @@
+package net.rooms.RoomsServer.game;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageRepository;
+import net.rooms.RoomsServer.message.MessageType;
+import net.rooms.RoomsServer.message.RecentMessages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Lobby operations and relay lookups of the {@link GameRepository} from several threads at once.
+ * With a single game all threads contend for the same entry, with many games each thread has a
+ * game of its own. Lobby messages are handed to a writer whose repository discards them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(3) // Snakes lobbies hold four players, the host and one per thread
+public class GameRepositoryBenchmark {
+
+	@Param({"1", "64"})
+	public int games;
+
+	private GameStateWriter writer;
+	private GameRepository repository;
+
+	@Setup
+	public void setup() {
+		MessageRepository messageRepository = new DiscardingMessageRepository();
+		writer = new GameStateWriter(messageRepository, new RecentMessages(messageRepository, new SimpleMeterRegistry(), 0, 0), 1000);
+		repository = new GameRepository(writer, false, 30);
+
+		String config = JSON.toJson(new SnakesConfig(GameType.SNAKES, SnakesConfig.MAX_PLAYERS, 10, false));
+		for (long id = 0; id < games; id++) {
+			Message message = new Message(id, 1, MessageType.SNAKES_GAME_OPEN, "host" + id, config, LocalDateTime.now());
+			repository.open(message, GameType.SNAKES, SnakesConfig.class);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		writer.shutdown();
+	}
+
+	@State(Scope.Thread)
+	public static class Player {
+		private static final AtomicInteger counter = new AtomicInteger();
+
+		String username;
+		long game;
+
+		@Setup
+		public void setup(GameRepositoryBenchmark benchmark) {
+			int index = counter.getAndIncrement();
+			username = "player" + index;
+			game = index % benchmark.games;
+		}
+	}
+
+	@Benchmark
+	public Message joinLeave(Player player) {
+		repository.join(player.game, player.username);
+		return repository.leave(player.username);
+	}
+
+	@Benchmark
+	public void lookup(Player player, Blackhole blackhole) {
+		blackhole.consume(repository.getGameParticipants(player.game));
+		blackhole.consume(repository.getHost(player.game));
+		blackhole.consume(repository.getRoomID(player.game));
+		blackhole.consume(repository.getGameID(player.username));
+	}
+
+	private static class DiscardingMessageRepository implements MessageRepository {
+		@Override
+		public boolean create(Message message) {
+			return true;
+		}
+
+		@Override
+		public List<Message> createAll(List<Message> messages) {
+			return List.of();
+		}
+
+		@Override
+		public boolean update(Message message) {
+			return true;
+		}
+
+		@Override
+		public Message get(long id) {
+			return Message.EMPTY;
+		}
+
+		@Override
+		public long lastID() {
+			return 0;
+		}
+
+		@Override
+		public List<Message> listByRoom(long roomID) {
+			return List.of();
+		}
+
+		@Override
+		public List<Message> listBefore(long roomID, long before, int limit) {
+			return List.of();
+		}
+
+		@Override
+		public List<Message> listAfter(long roomID, long after, int limit) {
+			return List.of();
+		}
+
+		@Override
+		public void forEachInRoom(long roomID, Consumer<Message> consumer) {
+		}
+	}
+}
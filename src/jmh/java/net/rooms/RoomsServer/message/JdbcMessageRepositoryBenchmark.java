@@ -0,0 +1,81 @@
+package net.rooms.RoomsServer.message;
+
+import net.rooms.RoomsServer.BenchmarkDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads messages through the {@link JdbcMessageRepository} against embedded H2. Batched
+ * writes are reported per message.
+ * Messages are created in a room of their own, so the room that is listed keeps its size for the
+ * whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JdbcMessageRepositoryBenchmark {
+	private static final long WRITE_ROOM = 1;
+	private static final long READ_ROOM = 2;
+	private static final int BATCH = 64; // As written by the MessageWriter by default
+
+	@Param({"50", "1000"})
+	public int history;
+
+	private BenchmarkDatabase database;
+	private JdbcMessageRepository repository;
+
+	@Setup
+	public void setup() {
+		database = new BenchmarkDatabase();
+		database.createUser("alice");
+		database.createRoom(WRITE_ROOM, "alice", List.of("alice"));
+		database.createRoom(READ_ROOM, "alice", List.of("alice"));
+
+		repository = new JdbcMessageRepository(database.jdbcClient(), database.jdbcTemplate(), 50, 500, 0);
+		for (int i = 0; i < history; i++)
+			repository.create(new Message(repository.lastID(), READ_ROOM, MessageType.MESSAGE, "alice", "Message " + i, LocalDateTime.now()));
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.close();
+	}
+
+	@Benchmark
+	public boolean create() {
+		Message message = new Message(repository.lastID(), WRITE_ROOM, MessageType.MESSAGE, "alice", "Hello", LocalDateTime.now());
+		return repository.create(message);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<Message> createAll() {
+		List<Message> messages = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			messages.add(new Message(repository.lastID(), WRITE_ROOM, MessageType.MESSAGE, "alice", "Hello", LocalDateTime.now()));
+		return repository.createAll(messages);
+	}
+
+	@Benchmark
+	public List<Message> listByRoom() {
+		return repository.listByRoom(READ_ROOM);
+	}
+
+	@Benchmark
+	public List<Message> listTail() {
+		return repository.listBefore(READ_ROOM, Long.MAX_VALUE, MessageService.DEFAULT_PAGE_SIZE);
+	}
+}
@@ -0,0 +1,104 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.rooms.RoomsServer.BenchmarkDatabase;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.GameRepository;
+import net.rooms.RoomsServer.game.GameService;
+import net.rooms.RoomsServer.game.GameStateWriter;
+import net.rooms.RoomsServer.message.requests.MessageRequest;
+import net.rooms.RoomsServer.room.JdbcRoomRepository;
+import net.rooms.RoomsServer.user.JdbcUserRepository;
+import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.websocket.SessionFanOut;
+import net.rooms.RoomsServer.websocket.util.WSAuth;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Posts a chat message through {@link MessageController#processMessage}, from parsing the
+ * request to notifying every participant of the room. The repositories run against embedded H2,
+ * while the broker is replaced by a channel that only counts what it is sent. With async set, chat
+ * messages are written by the {@link MessageWriter} in the background.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageControllerBenchmark {
+	private static final long ROOM = 1;
+
+	@Param({"2", "16", "64"})
+	public int participants;
+
+	@Param({"false", "true"})
+	public boolean async;
+
+	private final AtomicLong sent = new AtomicLong();
+	private BenchmarkDatabase database;
+	private GameStateWriter writer;
+	private MessageWriter messageWriter;
+	private MessageController controller;
+	private String request;
+	private SimpMessageHeaderAccessor headers;
+
+	@Setup
+	public void setup() {
+		database = new BenchmarkDatabase();
+		List<String> usernames = new ArrayList<>();
+		for (int i = 0; i < participants; i++)
+			usernames.add(database.createUser("user" + i).username());
+		database.createRoom(ROOM, usernames.get(0), usernames);
+
+		MessageChannel brokerChannel = (message, timeout) -> {
+			sent.incrementAndGet();
+			return true;
+		};
+		JdbcMessageRepository messageRepository = new JdbcMessageRepository(database.jdbcClient(), database.jdbcTemplate(), 50, 500, 0);
+		JdbcRoomRepository roomRepository = new JdbcRoomRepository(database.jdbcClient(), 10);
+		RecentMessages recentMessages = new RecentMessages(messageRepository, new SimpleMeterRegistry(), 100, 1 << 20);
+		MessageIndex messageIndex = new MessageIndex(messageRepository, new SimpleMeterRegistry(), 1 << 20);
+		writer = new GameStateWriter(messageRepository, recentMessages, 1000);
+		GameService gameService = new GameService(new GameRepository(writer, false, 30), roomRepository, writer,
+				new SessionFanOut(new DefaultSimpUserRegistry(), brokerChannel));
+		SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+		messageWriter = new MessageWriter(messageRepository, recentMessages, messageIndex, template, new SimpleMeterRegistry(), async, 5, 64, 8192);
+		MessageService messageService = new MessageService(messageRepository, roomRepository, gameService, messageWriter, recentMessages, messageIndex);
+		controller = new MessageController(template, messageService);
+
+		User sender = new JdbcUserRepository(database.jdbcClient()).findByUsername(usernames.get(0)).orElseThrow();
+		headers = SimpMessageHeaderAccessor.create();
+		headers.setSessionAttributes(new HashMap<>(Map.of(WSAuth.USER_ATTRIBUTE, sender))); // Bound on CONNECT
+		request = JSON.toJson(new MessageRequest(ROOM, MessageType.MESSAGE, "Hello everyone", null));
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		messageWriter.shutdown();
+		writer.shutdown();
+		database.close();
+		if (sent.get() == 0) throw new IllegalStateException("No notifications were sent, check the benchmark setup");
+	}
+
+	@Benchmark
+	public void processMessage() {
+		controller.processMessage(request, headers);
+	}
+}
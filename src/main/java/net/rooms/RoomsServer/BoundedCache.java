@@ -0,0 +1,109 @@
+package net.rooms.RoomsServer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A read-through cache holding up to a fixed number of entries, which evicts the least recently
+ * used entry when it is full. Meant for records that are read far more often than they change.
+ * <br>
+ * A value loaded while the cache is told about a change is returned to its caller but not cached,
+ * so the cache never holds a value from before a change it was told about. Null values are never
+ * cached. A capacity of zero disables the cache, so that every read goes to the loader.
+ * <br>
+ * Lookups are counted by "rooms.cache.lookups", tagged with the name of the cache and whether
+ * the value was found.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the cached values.
+ */
+public class BoundedCache<K, V> {
+	private final int capacity;
+	private final Map<K, V> entries; // In access order, guarded by this
+	private long generation; // Incremented with every change, guarded by this
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+
+	/**
+	 * @param name     The name the meters of the cache are tagged with.
+	 * @param capacity The maximum number of entries, zero to disable the cache.
+	 */
+	public BoundedCache(String name, int capacity, MeterRegistry registry) {
+		if (capacity < 0) throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() <= BoundedCache.this.capacity) return false;
+				evictions.increment();
+				return true;
+			}
+		};
+
+		Gauge.builder("rooms.cache.size", this, BoundedCache::size)
+				.description("Entries held in memory")
+				.tag("cache", name)
+				.register(registry);
+		hits = Counter.builder("rooms.cache.lookups").tag("cache", name).tag("result", "hit").register(registry);
+		misses = Counter.builder("rooms.cache.lookups").tag("cache", name).tag("result", "miss").register(registry);
+		evictions = Counter.builder("rooms.cache.evictions")
+				.description("Entries evicted to make room for new ones")
+				.tag("cache", name)
+				.register(registry);
+	}
+
+	/**
+	 * @param loader Loads the value if it is not cached, may return null.
+	 * @return The value of the given key, or null if the loader returned null.
+	 */
+	public @Nullable V get(K key, Function<? super K, ? extends V> loader) {
+		long loadedAt;
+		synchronized (this) {
+			V value = entries.get(key);
+			if (value != null) {
+				hits.increment();
+				return value;
+			}
+			loadedAt = generation;
+		}
+
+		misses.increment();
+		V value = loader.apply(key);
+		if (value == null || capacity == 0) return value;
+
+		synchronized (this) {
+			if (generation == loadedAt) entries.putIfAbsent(key, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Replaces the cached value of the given key after it was changed, if it is cached.
+	 *
+	 * @param update Returns the changed value given the cached one.
+	 */
+	public synchronized void update(K key, UnaryOperator<V> update) {
+		generation++;
+		entries.computeIfPresent(key, (k, value) -> update.apply(value));
+	}
+
+	/**
+	 * Drops the cached value of the given key, if it is cached.
+	 */
+	public synchronized void invalidate(K key) {
+		generation++;
+		entries.remove(key);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
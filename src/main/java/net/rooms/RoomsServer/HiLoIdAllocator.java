@@ -0,0 +1,60 @@
+package net.rooms.RoomsServer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out identifiers in blocks reserved from a database sequence, so that most identifiers
+ * cost no query at all.
+ * <br>
+ * Every value drawn from the sequence (the "hi" value) reserves the identifiers
+ * {@code hi * blockSize} through {@code hi * blockSize + blockSize - 1}, which are then handed out
+ * from memory. Since the sequence never returns the same value twice, blocks never overlap, even
+ * between several servers sharing the database. Identifiers handed out by a single allocator only
+ * ever increase, although they leave gaps: a block that is not used up when the server stops is
+ * lost.
+ */
+public class HiLoIdAllocator {
+	private final LongSupplier sequence;
+	private final int blockSize;
+	private volatile Block block = new Block(0, 0);
+
+	/**
+	 * @param sequence  Draws the next value of the database sequence.
+	 * @param blockSize The number of identifiers reserved with every sequence value.
+	 */
+	public HiLoIdAllocator(LongSupplier sequence, int blockSize) {
+		if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+		this.sequence = sequence;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * @return An identifier that was never handed out before, greater than all identifiers handed
+	 * out by this allocator so far.
+	 */
+	public long next() {
+		while (true) {
+			Block block = this.block;
+			long id = block.next.getAndIncrement();
+			if (id < block.end) return id;
+
+			synchronized (this) {
+				if (this.block == block) { // No other thread reserved a new block in the meantime
+					long start = Math.multiplyExact(sequence.getAsLong(), blockSize);
+					this.block = new Block(start, start + blockSize);
+				}
+			}
+		}
+	}
+
+	private static class Block {
+		final AtomicLong next;
+		final long end; // Exclusive
+
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+}
@@ -3,6 +3,8 @@ package net.rooms.RoomsServer;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import net.rooms.RoomsServer.adapters.LocalDateTimeAdapter;
+import net.rooms.RoomsServer.adapters.RecordAdapterFactory;
+import net.rooms.RoomsServer.metrics.RelayMetrics;
 
 import java.time.LocalDateTime;
 
@@ -10,11 +12,19 @@ import java.time.LocalDateTime;
  * A utility class that acts like a shell for the gson library.
  * Holds a single static instance of a {@link Gson} object that can be used to convert objects to
  * and from JSON strings.
+ * <br>
+ * The records sent to clients most often are written by the hand-written adapters of
+ * {@link RecordAdapterFactory} rather than by reflection, and every thread serializes into a
+ * buffer of its own that is reused between calls.
  */
 public class JSON {
+	private static final int MAX_RETAINED_BUFFER = 16 * 1024; // Larger buffers are not kept for reuse
+
 	private static final Gson gson = new GsonBuilder()
 			.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+			.registerTypeAdapterFactory(new RecordAdapterFactory())
 			.create();
+	private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
 
 	/**
 	 * Serializes the given object into a JSON string.
@@ -23,7 +33,28 @@ public class JSON {
 	 * @return A JSON string representation of the given object.
 	 */
 	public static String toJson(Object src) {
-		return gson.toJson(src);
+		StringBuilder buffer = buffers.get();
+		buffer.setLength(0);
+		toJson(src, buffer);
+		String json = buffer.toString();
+		if (buffer.capacity() > MAX_RETAINED_BUFFER) buffers.remove();
+		return json;
+	}
+
+	/**
+	 * Serializes the given object as JSON into the given buffer, which lets callers that write
+	 * many objects reuse a single buffer.
+	 *
+	 * @param src The object to serialize.
+	 * @param out The buffer the JSON is appended to.
+	 */
+	public static void toJson(Object src, StringBuilder out) {
+		long start = System.nanoTime();
+		try {
+			gson.toJson(src, out);
+		} finally {
+			RelayMetrics.serialized(start);
+		}
 	}
 
 	/**
@@ -34,6 +65,11 @@ public class JSON {
 	 * @return An object of the specified type from the JSON.
 	 */
 	public static <T> T fromJson(String json, Class<T> type) {
-		return gson.fromJson(json, type);
+		long start = System.nanoTime();
+		try {
+			return gson.fromJson(json, type);
+		} finally {
+			RelayMetrics.deserialized(start);
+		}
 	}
 }
@@ -0,0 +1,34 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.game.notifications.BroadcastNotification;
+
+import java.io.IOException;
+
+/**
+ * Converts {@link BroadcastNotification} objects to and from json without reflection. Produces the
+ * same json as the reflective adapter of gson.
+ */
+public class BroadcastNotificationAdapter extends TypeAdapter<BroadcastNotification> {
+	@Override
+	public void write(JsonWriter out, BroadcastNotification value) throws IOException {
+		out.beginObject();
+		out.name("payload").value(value.payload());
+		out.endObject();
+	}
+
+	@Override
+	public BroadcastNotification read(JsonReader in) throws IOException {
+		String payload = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			if (in.nextName().equals("payload")) payload = RecordAdapterFactory.nextString(in);
+			else in.skipValue();
+		}
+		in.endObject();
+		return new BroadcastNotification(payload);
+	}
+}
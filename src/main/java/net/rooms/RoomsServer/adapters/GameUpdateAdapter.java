@@ -0,0 +1,57 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.game.config.GameConfig;
+import net.rooms.RoomsServer.game.notifications.GameUpdate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converts {@link GameUpdate} objects to json without reflection, apart from the game config,
+ * which is written by the adapter gson has for its runtime type. Produces the same json as the
+ * reflective adapter of gson.
+ * <br>
+ * Game updates cannot be read back, since the json does not tell which config they hold.
+ */
+public class GameUpdateAdapter extends TypeAdapter<GameUpdate> {
+	private final Gson gson;
+
+	public GameUpdateAdapter(Gson gson) {
+		this.gson = gson;
+	}
+
+	@Override
+	public void write(JsonWriter out, GameUpdate value) throws IOException {
+		out.beginObject();
+		out.name("config");
+		writeConfig(out, value.config());
+		out.name("username").value(value.username());
+		out.name("participants");
+		List<String> participants = value.participants();
+		if (participants == null) {
+			out.nullValue();
+		} else {
+			out.beginArray();
+			for (String participant : participants)
+				out.value(participant);
+			out.endArray();
+		}
+		out.endObject();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends GameConfig> void writeConfig(JsonWriter out, T config) throws IOException {
+		if (config == null) out.nullValue();
+		else gson.getAdapter((Class<T>) config.getClass()).write(out, config);
+	}
+
+	@Override
+	public GameUpdate read(JsonReader in) {
+		throw new JsonParseException("Game updates cannot be read from json");
+	}
+}
@@ -1,20 +1,70 @@
 package net.rooms.RoomsServer.adapters;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 /**
- * Allows serializing {@link LocalDateTime} objects into json.
+ * Converts {@link LocalDateTime} objects to and from json, in the
+ * {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME} format.
  */
-public class LocalDateTimeAdapter implements JsonSerializer<LocalDateTime> {
+public class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
 	@Override
-	public JsonElement serialize(LocalDateTime src, Type typeOfSrc, JsonSerializationContext context) {
-		return new JsonPrimitive(src.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+	public void write(JsonWriter out, LocalDateTime value) throws IOException {
+		if (value == null) out.nullValue();
+		else out.value(format(value));
+	}
+
+	@Override
+	public LocalDateTime read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return LocalDateTime.parse(in.nextString(), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+	}
+
+	/**
+	 * Formats the given date the same way {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME} does,
+	 * without the intermediate objects the formatter creates. The fraction of the second is
+	 * written with as few digits as needed, and left out if it is zero.
+	 */
+	public static String format(LocalDateTime value) {
+		int year = value.getYear();
+		if (year < 0 || year > 9999) return value.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+		char[] chars = new char[29]; // yyyy-MM-ddTHH:mm:ss.nnnnnnnnn
+		digits(chars, 0, year, 4);
+		chars[4] = '-';
+		digits(chars, 5, value.getMonthValue(), 2);
+		chars[7] = '-';
+		digits(chars, 8, value.getDayOfMonth(), 2);
+		chars[10] = 'T';
+		digits(chars, 11, value.getHour(), 2);
+		chars[13] = ':';
+		digits(chars, 14, value.getMinute(), 2);
+		chars[16] = ':';
+		digits(chars, 17, value.getSecond(), 2);
+
+		int nano = value.getNano();
+		if (nano == 0) return new String(chars, 0, 19);
+
+		chars[19] = '.';
+		digits(chars, 20, nano, 9);
+		int length = 29;
+		while (chars[length - 1] == '0') length--;
+		return new String(chars, 0, length);
+	}
+
+	private static void digits(char[] chars, int offset, int value, int count) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
 	}
 }
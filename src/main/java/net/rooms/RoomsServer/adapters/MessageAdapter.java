@@ -0,0 +1,56 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Converts {@link Message} objects to and from json without reflection. Produces the same json as
+ * the reflective adapter of gson.
+ */
+public class MessageAdapter extends TypeAdapter<Message> {
+	private final LocalDateTimeAdapter dates = new LocalDateTimeAdapter();
+
+	@Override
+	public void write(JsonWriter out, Message value) throws IOException {
+		out.beginObject();
+		out.name("id").value(value.id());
+		out.name("roomID").value(value.roomID());
+		out.name("type").value(value.type() != null ? value.type().name() : null);
+		out.name("sender").value(value.sender());
+		out.name("content").value(value.content());
+		out.name("sendDate");
+		dates.write(out, value.sendDate());
+		out.endObject();
+	}
+
+	@Override
+	public Message read(JsonReader in) throws IOException {
+		long id = 0;
+		long roomID = 0;
+		MessageType type = null;
+		String sender = null;
+		String content = null;
+		LocalDateTime sendDate = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "id" -> id = in.nextLong();
+				case "roomID" -> roomID = in.nextLong();
+				case "type" -> type = RecordAdapterFactory.nextEnum(in, MessageType.class);
+				case "sender" -> sender = RecordAdapterFactory.nextString(in);
+				case "content" -> content = RecordAdapterFactory.nextString(in);
+				case "sendDate" -> sendDate = dates.read(in);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new Message(id, roomID, type, sender, content, sendDate);
+	}
+}
@@ -0,0 +1,49 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.user.Participant;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Converts {@link Participant} objects to and from json without reflection. Produces the same json
+ * as the reflective adapter of gson.
+ */
+public class ParticipantAdapter extends TypeAdapter<Participant> {
+	private final LocalDateTimeAdapter dates = new LocalDateTimeAdapter();
+
+	@Override
+	public void write(JsonWriter out, Participant value) throws IOException {
+		out.beginObject();
+		out.name("roomID").value(value.roomID());
+		out.name("nickname").value(value.nickname());
+		out.name("username").value(value.username());
+		out.name("signupDate");
+		dates.write(out, value.signupDate());
+		out.endObject();
+	}
+
+	@Override
+	public Participant read(JsonReader in) throws IOException {
+		long roomID = 0;
+		String nickname = null;
+		String username = null;
+		LocalDateTime signupDate = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "roomID" -> roomID = in.nextLong();
+				case "nickname" -> nickname = RecordAdapterFactory.nextString(in);
+				case "username" -> username = RecordAdapterFactory.nextString(in);
+				case "signupDate" -> signupDate = dates.read(in);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new Participant(roomID, nickname, username, signupDate);
+	}
+}
@@ -0,0 +1,55 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.room.PublicRoom;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Converts {@link PublicRoom} objects to and from json without reflection. Produces the same json
+ * as the reflective adapter of gson.
+ */
+public class PublicRoomAdapter extends TypeAdapter<PublicRoom> {
+	private final LocalDateTimeAdapter dates = new LocalDateTimeAdapter();
+
+	@Override
+	public void write(JsonWriter out, PublicRoom value) throws IOException {
+		out.beginObject();
+		out.name("roomID").value(value.roomID());
+		out.name("title").value(value.title());
+		out.name("hasPassword").value(value.hasPassword());
+		out.name("owner").value(value.owner());
+		out.name("creationDate");
+		dates.write(out, value.creationDate());
+		out.name("description").value(value.description());
+		out.endObject();
+	}
+
+	@Override
+	public PublicRoom read(JsonReader in) throws IOException {
+		long roomID = 0;
+		String title = null;
+		boolean hasPassword = false;
+		String owner = null;
+		LocalDateTime creationDate = null;
+		String description = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "roomID" -> roomID = in.nextLong();
+				case "title" -> title = RecordAdapterFactory.nextString(in);
+				case "hasPassword" -> hasPassword = in.nextBoolean();
+				case "owner" -> owner = RecordAdapterFactory.nextString(in);
+				case "creationDate" -> creationDate = dates.read(in);
+				case "description" -> description = RecordAdapterFactory.nextString(in);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new PublicRoom(roomID, title, hasPassword, owner, creationDate, description);
+	}
+}
@@ -0,0 +1,60 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.rooms.RoomsServer.game.notifications.BroadcastNotification;
+import net.rooms.RoomsServer.game.notifications.GameUpdate;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.room.PublicRoom;
+import net.rooms.RoomsServer.room.Room;
+import net.rooms.RoomsServer.user.Participant;
+
+import java.io.IOException;
+
+/**
+ * Provides the hand-written adapters of the records that are sent to clients most often, in place
+ * of the reflective adapter gson would create for them. All other types are left to gson.
+ */
+public class RecordAdapterFactory implements TypeAdapterFactory {
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		Class<? super T> raw = type.getRawType();
+		TypeAdapter<?> adapter;
+		if (raw == Message.class) adapter = new MessageAdapter();
+		else if (raw == Participant.class) adapter = new ParticipantAdapter();
+		else if (raw == Room.class) adapter = new RoomAdapter();
+		else if (raw == PublicRoom.class) adapter = new PublicRoomAdapter();
+		else if (raw == GameUpdate.class) adapter = new GameUpdateAdapter(gson);
+		else if (raw == BroadcastNotification.class) adapter = new BroadcastNotificationAdapter();
+		else return null;
+		return (TypeAdapter<T>) adapter.nullSafe();
+	}
+
+	/**
+	 * @return The next string value, or null if the next value is null.
+	 */
+	static String nextString(JsonReader in) throws IOException {
+		if (in.peek() != JsonToken.NULL) return in.nextString();
+		in.nextNull();
+		return null;
+	}
+
+	/**
+	 * @return The constant of the given enum named by the next string value, or null if the next
+	 * value is null or names no constant, like gson does.
+	 */
+	static <E extends Enum<E>> E nextEnum(JsonReader in, Class<E> type) throws IOException {
+		String name = nextString(in);
+		if (name == null) return null;
+		try {
+			return Enum.valueOf(type, name);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.rooms.RoomsServer.room.Room;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Converts {@link Room} objects to and from json without reflection. Produces the same json as the
+ * reflective adapter of gson.
+ */
+public class RoomAdapter extends TypeAdapter<Room> {
+	private final LocalDateTimeAdapter dates = new LocalDateTimeAdapter();
+
+	@Override
+	public void write(JsonWriter out, Room value) throws IOException {
+		out.beginObject();
+		out.name("roomID").value(value.roomID());
+		out.name("title").value(value.title());
+		out.name("isPrivate").value(value.isPrivate());
+		out.name("password").value(value.password());
+		out.name("owner").value(value.owner());
+		out.name("creationDate");
+		dates.write(out, value.creationDate());
+		out.name("description").value(value.description());
+		out.endObject();
+	}
+
+	@Override
+	public Room read(JsonReader in) throws IOException {
+		long roomID = 0;
+		String title = null;
+		boolean isPrivate = false;
+		String password = null;
+		String owner = null;
+		LocalDateTime creationDate = null;
+		String description = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "roomID" -> roomID = in.nextLong();
+				case "title" -> title = RecordAdapterFactory.nextString(in);
+				case "isPrivate" -> isPrivate = in.nextBoolean();
+				case "password" -> password = RecordAdapterFactory.nextString(in);
+				case "owner" -> owner = RecordAdapterFactory.nextString(in);
+				case "creationDate" -> creationDate = dates.read(in);
+				case "description" -> description = RecordAdapterFactory.nextString(in);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+		return new Room(roomID, title, isPrivate, password, owner, creationDate, description);
+	}
+}
@@ -2,32 +2,52 @@ package net.rooms.RoomsServer.game;
 
 import lombok.AllArgsConstructor;
 import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.delta.DeltaEncoder;
+import net.rooms.RoomsServer.game.engine.SimulationListener;
+import net.rooms.RoomsServer.game.engine.SimulationService;
+import net.rooms.RoomsServer.game.notifications.BatchNotification;
 import net.rooms.RoomsServer.game.notifications.BroadcastNotification;
+import net.rooms.RoomsServer.game.notifications.DeltaNotification;
 import net.rooms.RoomsServer.game.notifications.GameUpdate;
+import net.rooms.RoomsServer.game.requests.AckRequest;
 import net.rooms.RoomsServer.game.requests.BroadcastRequest;
 import net.rooms.RoomsServer.game.requests.ParticipationRequest;
 import net.rooms.RoomsServer.message.Message;
 import net.rooms.RoomsServer.message.MessageService;
 import net.rooms.RoomsServer.message.MessageType;
+import net.rooms.RoomsServer.metrics.RelayMetrics;
 import net.rooms.RoomsServer.user.Participant;
 import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.websocket.SessionFanOut;
 import net.rooms.RoomsServer.websocket.util.WSAuth;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 @Controller
 @AllArgsConstructor
 public class GameController {
+	public static final String GAME_ID_HEADER = "gameID";
+	public static final String SESSION_ID_HEADER = "jSessionID";
+
 	private final SimpMessagingTemplate template;
 	private final GameService gameService;
 	private final MessageService messageService;
+	private final SessionFanOut sessionFanOut;
+	private final SimulationService simulationService;
+	private final InputCoalescer inputCoalescer;
 
 	/**
 	 * Accepts WS requests for joining a game.
 	 * The request is expected to contain json of {@link ParticipationRequest}.
-	 * Only requests with a valid session id that is associated with a user who is a participant in
+	 * Only requests from an authenticated user who is a participant in
 	 * the specified room, would be honored.
 	 * Sends a notification with an updated message to all participants of the room, if the request
 	 * was successful, at "/queue/game/start".
@@ -40,11 +60,12 @@ public class GameController {
 	 * sent.
 	 *
 	 * @param payload Json of {@link ParticipationRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/join")
-	public void joinGame(@Payload String payload) {
+	public void joinGame(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		ParticipationRequest request = JSON.fromJson(payload, ParticipationRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
 
 		Message message = gameService.join(request, user);
 		notifyParticipants(message.roomID(), user.username(), "/queue/game/join", JSON.toJson(message));
@@ -53,7 +74,7 @@ public class GameController {
 	/**
 	 * Accepts WS requests for leaving a game.
 	 * The request is expected to contain json of {@link ParticipationRequest}.
-	 * Only requests with a valid session id that is associated with a user who is a participant in
+	 * Only requests from an authenticated user who is a participant in
 	 * the specified game, would be honored.
 	 * Sends a notification with an updated message to all participants of the room, if the request
 	 * was successful, at "/queue/game/start".
@@ -67,24 +88,30 @@ public class GameController {
 	 * this case is any type that ends with "ABORT".
 	 *
 	 * @param payload Json of {@link ParticipationRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/leave")
-	public void leaveGame(@Payload String payload) {
+	public void leaveGame(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		ParticipationRequest request = JSON.fromJson(payload, ParticipationRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
 
 		leaveGameUsername(user.username());
 	}
 
 	public void leaveGameUsername(String username) {
+		long id = gameService.getGameID(username);
 		Message message = gameService.leave(username);
+		if (message != Message.EMPTY) {
+			if (gameService.getRoomID(id) == 0) simulationService.stop(id); // The host has left and the game was closed
+			else simulationService.leave(id, username);
+		}
 		notifyParticipants(message.roomID(), username, "/queue/game/leave", JSON.toJson(message));
 	}
 
 	/**
 	 * Accepts WS requests for starting a pending game.
 	 * The request is expected to contain json of {@link ParticipationRequest}.
-	 * Only requests with a valid session id that is associated with a user who is a participant in
+	 * Only requests from an authenticated user who is a participant in
 	 * the specified room and the host of the game, would be honored.
 	 * Sends a notification with an updated message to all participants of the room, if the request
 	 * was successful, at "/queue/game/start".
@@ -92,23 +119,30 @@ public class GameController {
 	 * The notification is a {@link Message} where {@link Message#content()} is json of a
 	 * {@link GameUpdate} object and {@link Message#type()} may be any type in {@link MessageType}
 	 * that ends with "ONGOING" indicating that the game has started.
+	 * <br>
+	 * If the game is simulated by the server, the simulation starts along with the game. Its state
+	 * is sent to all participants of the game at "/queue/game/state" on every tick, or only the
+	 * changes to it at "/queue/game/changes" depending on the game, and its result is submitted on
+	 * behalf of the host once the game concludes. If the simulation fails, the game is aborted as
+	 * if the host has left it.
 	 *
 	 * @param payload Json of {@link ParticipationRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/start")
-	public void startGame(@Payload String payload) {
+	public void startGame(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		ParticipationRequest request = JSON.fromJson(payload, ParticipationRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
 
 		Message message = gameService.start(request, user);
+		if (message != Message.EMPTY) simulationService.start(request.id(), simulationListener);
 		notifyParticipants(message.roomID(), user.username(), "/queue/game/start", JSON.toJson(message));
 	}
 
 	/**
 	 * Accepts WS requests for submitting a game results.
 	 * The request is expected to contain json of {@link BroadcastRequest}.
-	 * Only requests with a valid session id that is associated with a user who is the host of the
-	 * game, would be honored.
+	 * Only requests from an authenticated user who is the host of the game, would be honored.
 	 * Sends a notification with an updated message to all participants of the room, if the request
 	 * was successful, at "/queue/game/results".
 	 * <br>
@@ -117,59 +151,189 @@ public class GameController {
 	 * with "RESULT" indicating that the game has concluded.
 	 *
 	 * @param payload Json of {@link BroadcastRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/submit")
-	public void submitGame(@Payload String payload) {
+	public void submitGame(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		BroadcastRequest request = JSON.fromJson(payload, BroadcastRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
 
 		Message message = gameService.submit(request, user);
+		if (message != Message.EMPTY) simulationService.stop(request.id());
 		notifyParticipants(message.roomID(), user.username(), "/queue/game/results", JSON.toJson(message));
 	}
 
 	/**
 	 * Accepts WS requests for broadcasting a payload to game participants.
 	 * The request is expected to contain json of {@link BroadcastRequest}.
-	 * Only requests with a valid session id that is associated with a user who is the host of the
-	 * game, would be honored.
+	 * Only requests from an authenticated user who is the host of the game, would be honored.
 	 * Sends a notification with the payload only to participants of the game, if the request was
 	 * successful, at "/queue/game/guest-channel".
+	 * <br>
+	 * If delta compression is enabled, the notification is a {@link DeltaNotification} instead,
+	 * holding only the changes since the last packet the session of the participant acknowledged
+	 * through "/game/ack". See {@link DeltaEncoder}.
 	 *
 	 * @param payload Json of {@link BroadcastRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/broadcast")
-	public void broadcast(@Payload String payload) {
+	public void broadcast(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		BroadcastRequest request = JSON.fromJson(payload, BroadcastRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
+
+		if (gameService.processBroadcastRequest(request.id(), user).isEmpty()) return;
+		if (simulationService.isSimulated(request.id())) return; // The server is authoritative
+
+		DeltaEncoder.Frame frame = gameService.nextFrame(request.id(), request.payload());
+		if (frame != null) {
+			for (SessionFanOut.Target target : gameService.guestFanOut(request.id()).targets())
+				sessionFanOut.send(target, frame.encodeFor(target.sessionID()), SessionFanOut.TEXT_CONTENT_TYPE);
+			return;
+		}
 
 		String notification = JSON.toJson(new BroadcastNotification(request.payload()));
-		for (String gameParticipant : gameService.processBroadcastRequest(request, user))
-			if (!gameParticipant.equals(user.username()))
-				template.convertAndSendToUser(gameParticipant, "/queue/game/guest-channel", notification);
+		sessionFanOut.send(gameService.guestFanOut(request.id()), notification);
+	}
+
+	/**
+	 * Accepts WS acknowledgements of delta compressed game packets.
+	 * The request is expected to contain json of {@link AckRequest}.
+	 * Only requests from an authenticated user who is a participant in
+	 * the game, would be honored. No notification is sent.
+	 *
+	 * @param payload Json of {@link AckRequest} containing the game id and the number of the last
+	 *                packet received.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
+	 */
+	@MessageMapping("/game/ack")
+	public void ack(@Payload String payload, SimpMessageHeaderAccessor headers) {
+		AckRequest request = JSON.fromJson(payload, AckRequest.class);
+		User user = WSAuth.getUser(headers, request);
+
+		String sessionID = headers.getSessionId();
+		if (sessionID != null) gameService.ack(request.id(), user, sessionID, request.seq());
 	}
 
 	/**
 	 * Accepts WS requests for transmitting a payload from a game participant to the game host.
 	 * The request is expected to contain json of {@link BroadcastRequest}.
-	 * Only requests with a valid session id that is associated with a user who is a participant in
-	 * the game, would be honored.
+	 * Only requests from an authenticated user who is a participant in the game, would be honored.
 	 * Sends a notification with the payload only to the host of the game, if the request was
 	 * successful, at "/queue/game/host-channel".
+	 * <br>
+	 * If the game is simulated by the server, the payload is an input packet and is applied to the
+	 * simulation instead of being sent to the host.
+	 * <br>
+	 * If input coalescing is enabled, payloads received within a short window are sent to the host
+	 * together as a single {@link BatchNotification}. See {@link InputCoalescer}.
 	 *
 	 * @param payload Json of {@link BroadcastRequest} containing the game id.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/game/unicast")
-	public void unicast(@Payload String payload) {
+	public void unicast(@Payload String payload, SimpMessageHeaderAccessor headers) {
 		BroadcastRequest request = JSON.fromJson(payload, BroadcastRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
+
+		if (gameService.processUnicastRequest(request.id(), user).isEmpty()) return;
+		if (simulationService.input(request.id(), user.username(), request.payload())) return;
+		if (inputCoalescer.add(request.id(), request.payload())) return;
 
 		String notification = JSON.toJson(new BroadcastNotification(request.payload()));
-		String host = gameService.processUnicastRequest(request, user);
-		template.convertAndSendToUser(host, "/queue/game/host-channel", notification);
+		sessionFanOut.send(gameService.hostFanOut(request.id()), notification);
 	}
 
+	/**
+	 * Accepts raw WS frames for broadcasting a game packet to game participants.
+	 * Unlike {@link #broadcast}, the body of the frame is not parsed. The game id is read from the
+	 * "gameID" STOMP header, and the body is
+	 * forwarded to the participants exactly as it was received, with its content type, and is never
+	 * delta compressed.
+	 * Only frames from an authenticated user who is the host of the game, would be honored.
+	 * Sends the frame body only to participants of the game, if the request was successful, at
+	 * "/queue/game/guest-channel".
+	 *
+	 * @param frame      The frame received from the host, its body is the game packet.
+	 * @param id         The game id, from the "gameID" header.
+	 * @param jSessionID The session id of the host, from the optional "jSessionID" header. Only
+	 *                   needed if the STOMP session is not authenticated, see {@link WSAuth}.
+	 * @param headers    The headers of the frame.
+	 */
+	@MessageMapping("/game/relay/broadcast")
+	public void relayBroadcast(org.springframework.messaging.Message<byte[]> frame,
+							   @Header(GAME_ID_HEADER) long id,
+							   @Header(name = SESSION_ID_HEADER, required = false) String jSessionID,
+							   SimpMessageHeaderAccessor headers) {
+		User user = WSAuth.getUser(headers, jSessionID);
+
+		if (gameService.processBroadcastRequest(id, user).isEmpty()) return;
+		if (simulationService.isSimulated(id)) return; // The server is authoritative
+
+		sessionFanOut.send(gameService.guestFanOut(id), frame.getPayload(), frame.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+	}
+
+	/**
+	 * Accepts raw WS frames for transmitting a game packet from a game participant to the game
+	 * host.
+	 * Unlike {@link #unicast}, the body of the frame is not parsed. The game id is read from the
+	 * "gameID" STOMP header, and the body is
+	 * forwarded to the host exactly as it was received, with its content type.
+	 * Only frames from an authenticated user who is a participant in the game, would be honored.
+	 * Sends the frame body only to the host of the game, if the request was successful, at
+	 * "/queue/game/host-channel".
+	 *
+	 * @param frame      The frame received from the participant, its body is the game packet.
+	 * @param id         The game id, from the "gameID" header.
+	 * @param jSessionID The session id of the participant, from the optional "jSessionID" header.
+	 *                   Only needed if the STOMP session is not authenticated, see {@link WSAuth}.
+	 * @param headers    The headers of the frame.
+	 */
+	@MessageMapping("/game/relay/unicast")
+	public void relayUnicast(org.springframework.messaging.Message<byte[]> frame,
+							 @Header(GAME_ID_HEADER) long id,
+							 @Header(name = SESSION_ID_HEADER, required = false) String jSessionID,
+							 SimpMessageHeaderAccessor headers) {
+		User user = WSAuth.getUser(headers, jSessionID);
+
+		if (gameService.processUnicastRequest(id, user).isEmpty()) return;
+		if (simulationService.input(id, user.username(), new String(frame.getPayload(), StandardCharsets.UTF_8))) return;
+
+		sessionFanOut.send(gameService.hostFanOut(id), frame.getPayload(), frame.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+	}
+
+	/**
+	 * Pushes the state of server simulated games to their participants, and submits their results
+	 * on behalf of the host.
+	 */
+	private final SimulationListener simulationListener = new SimulationListener() {
+		@Override
+		public void state(long id, String state) {
+			sessionFanOut.send(gameService.playerFanOut(id), state);
+		}
+
+		@Override
+		public void changes(long id, String changes) {
+			sessionFanOut.send(gameService.playerFanOut(id, GameService.CHANGES_CHANNEL), changes);
+		}
+
+		@Override
+		public void result(long id, String host, String result) {
+			Message message = gameService.submit(id, host, result);
+			notifyParticipants(message.roomID(), host, "/queue/game/results", JSON.toJson(message));
+		}
+
+		@Override
+		public void aborted(long id, String host) {
+			// The game is aborted as if the host has left it
+			leaveGameUsername(host);
+		}
+	};
+
 	private void notifyParticipants(long roomID, String username, String destination, String payload) {
-		for (Participant participant : messageService.participants(roomID, username))
+		List<Participant> participants = messageService.participants(roomID, username);
+		RelayMetrics.brokerFanOut(participants.size());
+		for (Participant participant : participants)
 			template.convertAndSendToUser(participant.username(), destination, payload);
 	}
 }
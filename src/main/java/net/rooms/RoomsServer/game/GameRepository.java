@@ -1,99 +1,198 @@
 package net.rooms.RoomsServer.game;
 
-import lombok.Synchronized;
 import net.rooms.RoomsServer.JSON;
 import net.rooms.RoomsServer.game.config.GameConfig;
 import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.delta.DeltaEncoder;
 import net.rooms.RoomsServer.game.notifications.GameUpdate;
 import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import net.rooms.RoomsServer.websocket.FanOutCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
+/**
+ * Holds the live state of every game lobby.
+ * <br>
+ * Lifecycle operations (join, leave, start and close) lock only the {@link GameEntry} they modify,
+ * so operations on different games never contend. A username is claimed for a game with a single
+ * atomic insert into the username map before the entry is locked, which keeps a user from being
+ * part of more than one game at a time.
+ * <br>
+ * The repository is the authority on the lobby state of every live game. Every lifecycle
+ * operation produces the updated lobby message while holding the lock of the entry, and hands it
+ * to the {@link GameStateWriter}, which writes it to the database in the background.
+ * <br>
+ * Lookups used by the relay path ({@link #getGameParticipants(long)}, {@link #getHost(long)},
+ * {@link #getRoomID(long)} and {@link #getGameID(String)}) take no lock at all. They read from
+ * concurrent maps and from a copy-on-write participant set, which may be iterated safely while
+ * other threads modify the game.
+ */
 @Component
 public class GameRepository {
-	private final HashMap<Long, GameEntry> games;
-	private final HashMap<String, Long> usernames; // Username and game ID hash map
+	private static final int MIN_SIMULATED_PLAYERS = 2;
 
-	public GameRepository() {
-		games = new HashMap<>();
-		usernames = new HashMap<>();
+	private final Map<Long, GameEntry> games;
+	private final Map<String, Long> usernames; // Username and game ID map
+	private final int keyframeInterval; // Zero when delta compression is disabled
+	private final GameStateWriter writer;
+
+	public GameRepository(GameStateWriter writer,
+						  @Value("${rooms.game.delta.enabled:false}") boolean deltaEnabled,
+						  @Value("${rooms.game.delta.keyframe-interval:30}") int keyframeInterval) {
+		games = new ConcurrentHashMap<>();
+		usernames = new ConcurrentHashMap<>();
+		this.writer = writer;
+		this.keyframeInterval = deltaEnabled ? keyframeInterval : 0;
 	}
 
-	@Synchronized
 	public <T extends GameConfig> boolean open(Message message, GameType gameType, Class<T> type) {
-		if (usernames.containsKey(message.sender())) return false;
-
 		GameConfig config = JSON.fromJson(message.content(), type);
 		if (!config.verify()) return false;
 
-		games.put(message.id(), new GameEntry(message.roomID(), message.sender(), gameType, config));
-		usernames.put(message.sender(), message.id());
+		if (usernames.putIfAbsent(message.sender(), message.id()) != null) return false;
+		DeltaEncoder delta = keyframeInterval > 0 ? new DeltaEncoder(keyframeInterval) : null;
+		GameEntry entry = new GameEntry(message.roomID(), message.sender(), gameType, config, delta);
+		entry.state.message = message;
+		games.put(message.id(), entry);
 		return true;
 	}
 
-	@Synchronized
-	public GameUpdate join(long id, String username) {
-		if (usernames.containsKey(username)) return null;
-		if (!games.containsKey(id)) return null;
-
+	/**
+	 * Adds the given user to a pending game.
+	 *
+	 * @return The updated lobby message, or null if the user could not join.
+	 */
+	public Message join(long id, String username) {
 		GameEntry entry = games.get(id);
-		if (!entry.state.isPending) return null;
-		entry.participants.add(username);
-		if (!entry.config.verify(entry)) {
-			entry.participants.remove(username);
-			return null;
-		}
+		if (entry == null) return null;
+		if (usernames.putIfAbsent(username, id) != null) return null;
 
-		usernames.put(username, id);
-		return buildGameUpdate(entry, username);
+		synchronized (entry) {
+			if (entry.state.isClosed || !entry.state.isPending) {
+				usernames.remove(username, id);
+				return null;
+			}
+			entry.participants.add(username);
+			if (!entry.config.verify(entry)) {
+				entry.participants.remove(username);
+				usernames.remove(username, id);
+				return null;
+			}
+			entry.fanOut.invalidate();
+			return updateLobby(entry, entry.state.message.type(), JSON.toJson(buildGameUpdate(entry, username)), false);
+		}
 	}
 
-	@Synchronized
-	public GameUpdate leave(String username) {
+	/**
+	 * Removes the given user from its game. If the user is the host, the game is aborted.
+	 *
+	 * @return The updated lobby message, or null if the user is not part of a game.
+	 */
+	public Message leave(String username) {
 		long id = getGameID(username);
-		if (!games.containsKey(id)) return null;
-
 		GameEntry entry = games.get(id);
-		if (!entry.participants.contains(username)) return null;
-
-		if (entry.host.equals(username)) {
-			entry.participants.forEach(usernames::remove);
-			entry.participants.clear();
-			games.remove(id);
-		} else {
-			entry.participants.remove(username);
-			usernames.remove(username);
+		if (entry == null) return null;
+
+		synchronized (entry) {
+			if (!entry.participants.contains(username)) return null;
+
+			MessageType type = entry.state.message.type();
+			boolean aborted = entry.host.equals(username);
+			if (aborted) {
+				close(id, entry);
+				entry.participants.clear();
+				type = switch (entry.type) {
+					case PONG -> MessageType.PONG_GAME_ABORT;
+					case SNAKES -> MessageType.SNAKES_GAME_ABORT;
+				};
+			} else {
+				entry.participants.remove(username);
+				usernames.remove(username, id);
+			}
+			entry.fanOut.invalidate();
+			return updateLobby(entry, type, JSON.toJson(buildGameUpdate(entry, username)), aborted);
 		}
-		return buildGameUpdate(entry, username);
 	}
 
-	@Synchronized
-	public GameUpdate startGame(long id, String username) {
-		if (!games.containsKey(id)) return null;
+	/**
+	 * Starts a pending game on behalf of its host.
+	 *
+	 * @return The updated lobby message, or null if the game could not be started.
+	 */
+	public Message startGame(long id, String username) {
+		GameEntry entry = games.get(id);
+		if (entry == null) return null;
+
+		synchronized (entry) {
+			if (entry.state.isClosed) return null;
+			if (!entry.state.isPending) return null; // Game has already started
+			if (!entry.host.equals(username)) return null; // Only the game host may start the game
+			// A simulated game is won by the last player standing, so a single player would win right away
+			if (entry.config.serverSimulated() && entry.participants.size() < MIN_SIMULATED_PLAYERS) return null;
 
+			entry.state.isPending = false; // The game is no longer pending
+			entry.fanOut.invalidate();
+			MessageType type = switch (entry.type) {
+				case PONG -> MessageType.PONG_GAME_ONGOING;
+				case SNAKES -> MessageType.SNAKES_GAME_ONGOING;
+			};
+			return updateLobby(entry, type, JSON.toJson(buildGameUpdate(entry, username)), true);
+		}
+	}
+
+	/**
+	 * Concludes an ongoing game on behalf of its host.
+	 *
+	 * @param result The result of the game, which becomes the content of the lobby message.
+	 * @return The updated lobby message, or null if the game could not be closed.
+	 */
+	public Message closeGame(long id, String username, String result) {
 		GameEntry entry = games.get(id);
-		if (!entry.state.isPending) return null; // Game has already started
-		if (!entry.host.equals(username)) return null; // Only the game host may start the game
+		if (entry == null) return null;
 
-		entry.state.isPending = false; // The game is no longer pending
-		return buildGameUpdate(entry, username);
+		synchronized (entry) {
+			if (entry.state.isClosed) return null;
+			if (!entry.host.equals(username)) return null; // Only the game host may close the game
+			if (entry.state.isPending) return null; // Pending games haven't started yet and cannot be closed
+			close(id, entry);
+			MessageType type = switch (entry.type) {
+				case PONG -> MessageType.PONG_GAME_RESULT;
+				case SNAKES -> MessageType.SNAKES_GAME_RESULT;
+			};
+			return updateLobby(entry, type, result, true);
+		}
 	}
 
-	@Synchronized
-	public boolean closeGame(long id, String username) {
-		if (!games.containsKey(id)) return false;
+	/**
+	 * Replaces the lobby message of the given game and queues it to be written. Must be called
+	 * while holding the monitor of the entry, so that lobby messages are queued in the order they
+	 * were made.
+	 */
+	private Message updateLobby(GameEntry entry, MessageType type, String content, boolean transition) {
+		Message previous = entry.state.message;
+		Message message = new Message(previous.id(), previous.roomID(), type, previous.sender(), content, previous.sendDate());
+		entry.state.message = message;
+		writer.write(message, transition);
+		return message;
+	}
 
-		GameEntry entry = games.get(id);
-		if (!entry.host.equals(username)) return false; // Only the game host may close the game
-		if (entry.state.isPending) return false; // Pending games haven't started yet and cannot be closed
-		entry.participants.forEach(usernames::remove);
-		games.remove(id);
-		return true;
+	/**
+	 * Removes the given game and releases the usernames of all its participants. Must be called
+	 * while holding the monitor of the entry.
+	 */
+	private void close(long id, GameEntry entry) {
+		entry.state.isClosed = true;
+		entry.participants.forEach(participant -> usernames.remove(participant, id));
+		games.remove(id, entry);
 	}
 
 	private GameUpdate buildGameUpdate(GameEntry entry, String username) {
@@ -101,22 +200,92 @@ public class GameRepository {
 	}
 
 	public Set<String> getGameParticipants(long id) {
-		if (!games.containsKey(id)) return Set.of();
-		return games.get(id).participants;
+		GameEntry entry = games.get(id);
+		if (entry == null) return Set.of();
+		return entry.participants;
 	}
 
 	public @NonNull String getHost(long id) {
-		if (!games.containsKey(id)) return "";
-		return games.get(id).host;
+		GameEntry entry = games.get(id);
+		if (entry == null) return "";
+		return entry.host;
+	}
+
+	/**
+	 * Provides the lobby message of the given game, as it is in memory. It may be newer than its
+	 * row in the database.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The lobby message, or null if the game has already concluded or does not exist.
+	 */
+	public @Nullable Message getMessage(long id) {
+		GameEntry entry = games.get(id);
+		if (entry == null) return null;
+		return entry.state.message;
+	}
+
+	public @Nullable GameConfig getConfig(long id) {
+		GameEntry entry = games.get(id);
+		if (entry == null) return null;
+		return entry.config;
 	}
 
 	public long getGameID(String username) {
 		return usernames.getOrDefault(username, 0L);
 	}
 
+	/**
+	 * Provides the cache of resolved session groups of the given game. See {@link FanOutCache}.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The cache of the game, or null if there is no such game.
+	 */
+	public @Nullable FanOutCache getFanOut(long id) {
+		GameEntry entry = games.get(id);
+		if (entry == null) return null;
+		return entry.fanOut;
+	}
+
+	/**
+	 * Drops the resolved session groups of the game the given user participates in, if any. Must
+	 * be called whenever the sessions or subscriptions of the user change.
+	 *
+	 * @param username The username of the user.
+	 */
+	public void invalidateFanOut(String username) {
+		FanOutCache fanOut = getFanOut(getGameID(username));
+		if (fanOut != null) fanOut.invalidate();
+	}
+
+	/**
+	 * Provides the delta encoder of the broadcasts of the given game. See {@link DeltaEncoder}.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The encoder of the game, or null if there is no such game or delta compression is
+	 * disabled.
+	 */
+	public @Nullable DeltaEncoder getDelta(long id) {
+		GameEntry entry = games.get(id);
+		if (entry == null) return null;
+		return entry.delta;
+	}
+
+	/**
+	 * Forgets the broadcast frames acknowledged by a session of the given user in the game it
+	 * participates in, if any, so that the session is sent a keyframe next.
+	 *
+	 * @param username  The username of the user.
+	 * @param sessionID The websocket session of the user.
+	 */
+	public void resetDelta(String username, String sessionID) {
+		DeltaEncoder delta = getDelta(getGameID(username));
+		if (delta != null) delta.reset(sessionID);
+	}
+
 	public long getRoomID(long id) {
-		if (!games.containsKey(id)) return 0L;
-		return games.get(id).roomID;
+		GameEntry entry = games.get(id);
+		if (entry == null) return 0L;
+		return entry.roomID;
 	}
 
 	public record GameEntry(
@@ -125,14 +294,22 @@ public class GameRepository {
 		Set<String> participants,
 		GameType type,
 		GameConfig config,
-		GameState state
+		GameState state,
+		FanOutCache fanOut,
+		@Nullable DeltaEncoder delta
 	) {
-		public GameEntry(long roomID, String sender, GameType type, GameConfig config) {
-			this(roomID, sender, new HashSet<>(List.of(sender)), type, config, new GameState());
+		public GameEntry(long roomID, String sender, GameType type, GameConfig config, @Nullable DeltaEncoder delta) {
+			this(roomID, sender, new CopyOnWriteArraySet<>(List.of(sender)), type, config, new GameState(), new FanOutCache(), delta);
 		}
 	}
 
+	/**
+	 * Mutable state of a game. Written only while holding the monitor of the owning
+	 * {@link GameEntry}, read without locking.
+	 */
 	private static class GameState {
-		boolean isPending = true;
+		volatile boolean isPending = true;
+		volatile boolean isClosed = false;
+		volatile Message message; // The latest lobby message
 	}
 }
@@ -1,30 +1,39 @@
 package net.rooms.RoomsServer.game;
 
 import lombok.AllArgsConstructor;
-import net.rooms.RoomsServer.JSON;
 import net.rooms.RoomsServer.game.config.GameType;
 import net.rooms.RoomsServer.game.config.PongConfig;
 import net.rooms.RoomsServer.game.config.SnakesConfig;
-import net.rooms.RoomsServer.game.notifications.GameUpdate;
+import net.rooms.RoomsServer.game.delta.DeltaEncoder;
 import net.rooms.RoomsServer.game.requests.BroadcastRequest;
 import net.rooms.RoomsServer.game.requests.ParticipationRequest;
 import net.rooms.RoomsServer.message.Message;
-import net.rooms.RoomsServer.message.MessageRepository;
 import net.rooms.RoomsServer.message.MessageType;
 import net.rooms.RoomsServer.room.RoomRepository;
 import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.websocket.FanOutCache;
+import net.rooms.RoomsServer.websocket.SessionFanOut;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 @Service
 @AllArgsConstructor
 public class GameService {
 
+	public static final String GUEST_CHANNEL = "/queue/game/guest-channel";
+	public static final String HOST_CHANNEL = "/queue/game/host-channel";
+	public static final String STATE_CHANNEL = "/queue/game/state";
+	public static final String CHANGES_CHANNEL = "/queue/game/changes";
+
 	private final GameRepository gameRepository;
 	private final RoomRepository roomRepository;
-	private final MessageRepository messageRepository;
+	private final GameStateWriter gameStateWriter;
+	private final SessionFanOut sessionFanOut;
 
 	public boolean handle(Message message) {
 		switch (message.type()) {
@@ -42,67 +51,72 @@ public class GameService {
 	}
 
 	public Message join(ParticipationRequest request, User user) {
-		Message message = messageRepository.get(request.id());
-		if (!roomRepository.isParticipant(message.roomID(), user.username())) return Message.EMPTY;
-		GameUpdate update = gameRepository.join(message.id(), user.username());
-		if (update == null) return Message.EMPTY;
-
-		Message updatedMessage = new Message(message.id(), message.roomID(), message.type(), message.sender(), JSON.toJson(update), message.sendDate());
-		if (!messageRepository.update(updatedMessage)) {
-			gameRepository.leave(user.username()); // Undo the operation in the unlikely case of failure
-			return Message.EMPTY;
-		}
-		return updatedMessage;
+		if (!roomRepository.isParticipant(gameRepository.getRoomID(request.id()), user.username())) return Message.EMPTY;
+		Message message = gameRepository.join(request.id(), user.username());
+		if (message == null) return Message.EMPTY;
+		return message;
 	}
 
 	public Message leave(String username) {
-		long id = getGameID(username);
-		GameUpdate update = gameRepository.leave(username);
-		if (update == null) return Message.EMPTY;
-
-		Message message = messageRepository.get(id);
-		MessageType messageType = message.type();
-		if (update.participants().isEmpty())
-			switch (messageType) {
-				case PONG_GAME_OPEN, PONG_GAME_ONGOING -> messageType = MessageType.PONG_GAME_ABORT;
-				case SNAKES_GAME_OPEN, SNAKES_GAME_ONGOING -> messageType = MessageType.SNAKES_GAME_ABORT;
-			}
-		Message updatedMessage = new Message(message.id(), message.roomID(), messageType, message.sender(), JSON.toJson(update), message.sendDate());
-		if (!messageRepository.update(updatedMessage)) {
-			gameRepository.join(message.id(), username); // Undo the operation in the unlikely case of failure
-			return Message.EMPTY;
-		}
-		return updatedMessage;
+		Message message = gameRepository.leave(username);
+		if (message == null) return Message.EMPTY;
+		return message;
 	}
 
 	public Message start(ParticipationRequest request, User user) {
-		if (!gameRepository.getHost(request.id()).equals(user.username())) return Message.EMPTY;
-		GameUpdate update = gameRepository.startGame(request.id(), user.username());
-		if (update == null) return null;
-
-		Message message = messageRepository.get(request.id());
-		MessageType messageType = message.type();
-		switch (messageType) {
-			case PONG_GAME_OPEN -> messageType = MessageType.PONG_GAME_ONGOING;
-			case SNAKES_GAME_OPEN -> messageType = MessageType.SNAKES_GAME_ONGOING;
-		}
-		Message updatedMessage = new Message(message.id(), message.roomID(), messageType, message.sender(), JSON.toJson(update), message.sendDate());
-		messageRepository.update(updatedMessage);
-		return updatedMessage;
+		Message message = gameRepository.startGame(request.id(), user.username());
+		if (message == null) return Message.EMPTY;
+
+		// Resolve the sessions of the participants before the first game packet is relayed
+		guestFanOut(request.id());
+		hostFanOut(request.id());
+		return message;
 	}
 
 	public Message submit(BroadcastRequest request, User user) {
-		if (!gameRepository.closeGame(request.id(), user.username())) return Message.EMPTY;
+		return submit(request.id(), user.username(), request.payload());
+	}
 
-		Message message = messageRepository.get(request.id());
-		MessageType messageType = message.type();
-		switch (messageType) {
-			case PONG_GAME_ONGOING -> messageType = MessageType.PONG_GAME_RESULT;
-			case SNAKES_GAME_ONGOING -> messageType = MessageType.SNAKES_GAME_RESULT;
-		}
-		Message updatedMessage = new Message(message.id(), message.roomID(), messageType, message.sender(), request.payload(), message.sendDate());
-		messageRepository.update(updatedMessage);
-		return updatedMessage;
+	/**
+	 * Concludes a game with the given result.
+	 *
+	 * @param id       The identifier of the game.
+	 * @param username The user submitting the result, must be the host of the game.
+	 * @param payload  The result of the game.
+	 * @return The updated game message, or {@link Message#EMPTY} if the game could not be closed.
+	 */
+	public Message submit(long id, String username, String payload) {
+		Message message = gameRepository.closeGame(id, username, payload);
+		if (message == null) return Message.EMPTY;
+		return message;
+	}
+
+	/**
+	 * Replaces the game messages in the given list with their latest lobby state, which may not
+	 * have been written to the database yet. See {@link GameStateWriter}.
+	 *
+	 * @param messages Messages as read from the database.
+	 * @return The messages, with game messages in their latest state.
+	 */
+	public List<Message> overlay(List<Message> messages) {
+		List<Message> overlaid = new ArrayList<>(messages.size());
+		for (Message message : messages)
+			overlaid.add(overlay(message));
+		return overlaid;
+	}
+
+	/**
+	 * Replaces a single game message with its latest lobby state, see {@link #overlay(List)}.
+	 *
+	 * @param message A message as read from the database.
+	 * @return The message, in its latest state if it is a game message.
+	 */
+	public Message overlay(Message message) {
+		if (message.type() == MessageType.MESSAGE) return message;
+
+		Message latest = gameRepository.getMessage(message.id());
+		if (latest == null) latest = gameStateWriter.pending(message.id());
+		return latest != null ? latest : message;
 	}
 
 	public long getGameID(String username) {
@@ -113,14 +127,124 @@ public class GameService {
 		return gameRepository.getRoomID(id);
 	}
 
-	public Set<String> processBroadcastRequest(BroadcastRequest request, User user) {
-		if (!gameRepository.getHost(request.id()).equals(user.username())) return Collections.emptySet();
-		return gameRepository.getGameParticipants(request.id());
+	/**
+	 * Resolves the recipients of a broadcast from the host of a game to its participants.
+	 *
+	 * @param id   The identifier of the game.
+	 * @param user The user attempting the broadcast.
+	 * @return The participants of the game if the given user is its host. Otherwise, an empty set.
+	 */
+	public Set<String> processBroadcastRequest(long id, User user) {
+		if (!gameRepository.getHost(id).equals(user.username())) return Collections.emptySet();
+		return gameRepository.getGameParticipants(id);
 	}
 
-	public String processUnicastRequest(BroadcastRequest request, User user) {
-		if (!gameRepository.getGameParticipants(request.id()).contains(user.username()))
+	/**
+	 * Resolves the recipient of a transmission from a participant of a game to its host.
+	 *
+	 * @param id   The identifier of the game.
+	 * @param user The user attempting the transmission.
+	 * @return The username of the host if the given user participates in the game. Otherwise, an
+	 * empty string.
+	 */
+	public String processUnicastRequest(long id, User user) {
+		if (!gameRepository.getGameParticipants(id).contains(user.username()))
 			return ""; // Not a game participant
-		return gameRepository.getHost(request.id());
+		return gameRepository.getHost(id);
+	}
+
+	/**
+	 * Provides the sessions of all game participants except the host, subscribed to
+	 * {@link #GUEST_CHANNEL}. The group is resolved once and cached on the game until its
+	 * participants, or their sessions, change.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The resolved group, empty if there is no such game.
+	 */
+	public SessionFanOut.Group guestFanOut(long id) {
+		FanOutCache fanOut = gameRepository.getFanOut(id);
+		if (fanOut == null) return SessionFanOut.Group.EMPTY;
+		return fanOut.get(GUEST_CHANNEL, () ->
+				sessionFanOut.resolve(gameRepository.getGameParticipants(id), gameRepository.getHost(id), GUEST_CHANNEL));
+	}
+
+	/**
+	 * Provides the sessions of the game host subscribed to {@link #HOST_CHANNEL}. The group is
+	 * resolved once and cached on the game until the sessions of its participants change.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The resolved group, empty if there is no such game.
+	 */
+	public SessionFanOut.Group hostFanOut(long id) {
+		FanOutCache fanOut = gameRepository.getFanOut(id);
+		if (fanOut == null) return SessionFanOut.Group.EMPTY;
+		return fanOut.get(HOST_CHANNEL, () ->
+				sessionFanOut.resolve(List.of(gameRepository.getHost(id)), null, HOST_CHANNEL));
+	}
+
+	/**
+	 * Provides the sessions of all game participants, including the host, subscribed to
+	 * {@link #STATE_CHANNEL}. Used to push the state of games simulated by the server.
+	 *
+	 * @param id The identifier of the game.
+	 * @return The resolved group, empty if there is no such game.
+	 */
+	public SessionFanOut.Group playerFanOut(long id) {
+		return playerFanOut(id, STATE_CHANNEL);
+	}
+
+	/**
+	 * Provides the sessions of all game participants, including the host, subscribed to the given
+	 * destination, such as {@link #STATE_CHANNEL} or {@link #CHANGES_CHANNEL}.
+	 *
+	 * @param id          The identifier of the game.
+	 * @param destination The user destination to send to.
+	 * @return The resolved group, empty if there is no such game.
+	 */
+	public SessionFanOut.Group playerFanOut(long id, String destination) {
+		FanOutCache fanOut = gameRepository.getFanOut(id);
+		if (fanOut == null) return SessionFanOut.Group.EMPTY;
+		return fanOut.get(destination, () ->
+				sessionFanOut.resolve(gameRepository.getGameParticipants(id), null, destination));
+	}
+
+	/**
+	 * Numbers a packet broadcast by the host of the given game as its next delta compressed frame.
+	 *
+	 * @param id      The identifier of the game.
+	 * @param payload The packet broadcast by the host.
+	 * @return The frame, or null if delta compression is disabled or there is no such game.
+	 */
+	public DeltaEncoder.Frame nextFrame(long id, String payload) {
+		DeltaEncoder delta = gameRepository.getDelta(id);
+		if (delta == null) return null;
+		return delta.next(payload);
+	}
+
+	/**
+	 * Records that a session of a participant of the given game has received a broadcast frame.
+	 *
+	 * @param id        The identifier of the game.
+	 * @param user      The user acknowledging the frame.
+	 * @param sessionID The websocket session that received the frame.
+	 * @param seq       The number of the frame.
+	 */
+	public void ack(long id, User user, String sessionID, long seq) {
+		if (!gameRepository.getGameParticipants(id).contains(user.username())) return;
+		DeltaEncoder delta = gameRepository.getDelta(id);
+		if (delta != null) delta.ack(sessionID, seq);
+	}
+
+	/**
+	 * Drops the cached session groups of the game the given user participates in, and makes sure
+	 * the given session is sent a keyframe next. Called whenever a session of the user subscribes,
+	 * unsubscribes or disconnects.
+	 *
+	 * @param username  The username of the user.
+	 * @param sessionID The websocket session that changed, if known.
+	 */
+	public void sessionsChanged(String username, @Nullable String sessionID) {
+		gameRepository.invalidateFanOut(username);
+		if (sessionID != null) gameRepository.resetDelta(username, sessionID);
 	}
 }
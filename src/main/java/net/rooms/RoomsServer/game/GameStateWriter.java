@@ -0,0 +1,95 @@
+package net.rooms.RoomsServer.game;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageRepository;
+import net.rooms.RoomsServer.message.RecentMessages;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the lobby state of games to their message rows in the background.
+ * <br>
+ * The live state of a game lobby is held by the {@link GameRepository}, which hands every new
+ * lobby message to the writer. Changes within a stage of the game, such as players joining and
+ * leaving an open lobby, are coalesced and written once after a short delay. Changes of stage,
+ * such as a game starting, concluding or being aborted, are written right away. All writes happen
+ * on a single thread in the order they were requested, so a newer lobby state is never overwritten
+ * by an older one.
+ */
+@Slf4j
+@Component
+public class GameStateWriter {
+	private final MessageRepository messageRepository;
+	private final RecentMessages recentMessages;
+	private final long delay;
+	private final Map<Long, Message> pending = new ConcurrentHashMap<>(); // Game ID and unwritten lobby message
+	private final ScheduledThreadPoolExecutor executor;
+
+	public GameStateWriter(MessageRepository messageRepository, RecentMessages recentMessages,
+						   @Value("${rooms.game.state.flush-delay-ms:1000}") long delay) {
+		this.messageRepository = messageRepository;
+		this.recentMessages = recentMessages;
+		this.delay = delay;
+		this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "game-state-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Requests the given lobby message to be written. Replaces any unwritten message of the same
+	 * game, and the message held in the {@link RecentMessages} of its room.
+	 *
+	 * @param message    The new lobby message of a game.
+	 * @param transition True if the game moved to another stage, in which case the message is
+	 *                   written right away.
+	 */
+	public void write(Message message, boolean transition) {
+		recentMessages.put(message);
+		Message previous = pending.put(message.id(), message);
+		if (transition) executor.execute(() -> flush(message.id()));
+		else if (previous == null) executor.schedule(() -> flush(message.id()), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param id The identifier of a game.
+	 * @return The lobby message of the game that was not written yet, or null if there is none.
+	 */
+	public @Nullable Message pending(long id) {
+		return pending.get(id);
+	}
+
+	private void flush(long id) {
+		Message message = pending.remove(id);
+		if (message == null) return; // Already written along with an earlier request
+
+		try {
+			if (!messageRepository.update(message))
+				log.warn("Game message {} no longer exists, lobby state was not written", id);
+		} catch (RuntimeException e) {
+			log.error("Failed to write lobby state of game {}", id, e);
+		}
+	}
+
+	/**
+	 * Writes everything still pending before shutting down.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		for (long id : List.copyOf(pending.keySet()))
+			flush(id);
+	}
+}
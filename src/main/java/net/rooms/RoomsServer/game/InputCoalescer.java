@@ -0,0 +1,92 @@
+package net.rooms.RoomsServer.game;
+
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.notifications.BatchNotification;
+import net.rooms.RoomsServer.websocket.SessionFanOut;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the packets that the participants of a game send to its host.
+ * <br>
+ * The first packet of a game opens a window of a configurable length, and every packet received
+ * until the window closes is sent to the host as a single {@link BatchNotification}. A game only
+ * has a batch while packets are pending, so nothing is kept for idle or closed games.
+ * <br>
+ * Batches are flushed by a thread of their own, so that sending them never delays the ticks of
+ * server simulated games.
+ */
+@Component
+public class InputCoalescer {
+	private final GameService gameService;
+	private final SessionFanOut sessionFanOut;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "game-coalesce");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final long window; // Milliseconds, zero when coalescing is disabled
+	private final Map<Long, Batch> batches = new ConcurrentHashMap<>(); // Game ID and pending packets
+
+	public InputCoalescer(GameService gameService, SessionFanOut sessionFanOut,
+						  @Value("${rooms.game.coalesce.window-ms:0}") long window) {
+		this.gameService = gameService;
+		this.sessionFanOut = sessionFanOut;
+		this.window = window;
+	}
+
+	/**
+	 * Queues a packet for the host of the given game.
+	 *
+	 * @param id      The identifier of the game.
+	 * @param payload The packet sent by a participant.
+	 * @return True if the packet was queued, false if coalescing is disabled and the packet should
+	 * be sent right away.
+	 */
+	public boolean add(long id, String payload) {
+		if (window <= 0) return false;
+
+		while (true) {
+			Batch batch = batches.computeIfAbsent(id, key -> new Batch());
+			synchronized (batch) {
+				if (batch.flushed) continue; // Lost a race with the flush, start a new batch
+				batch.payloads.add(payload);
+				if (batch.payloads.size() == 1)
+					scheduler.schedule(() -> flush(id, batch), window, TimeUnit.MILLISECONDS);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Sends the pending packets of a game. The packets are sent while holding the batch, so a
+	 * following batch of the same game can never overtake it.
+	 */
+	private void flush(long id, Batch batch) {
+		synchronized (batch) {
+			batch.flushed = true;
+			batches.remove(id, batch);
+			String notification = JSON.toJson(new BatchNotification(batch.payloads));
+			sessionFanOut.send(gameService.hostFanOut(id), notification);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private static class Batch {
+		final List<String> payloads = new ArrayList<>();
+		boolean flushed;
+	}
+}
@@ -6,4 +6,9 @@ public interface GameConfig {
 	GameType type();
 	boolean verify();
 	boolean verify(GameRepository.GameEntry entry);
+
+	/**
+	 * @return True if the game is simulated by the server rather than by the host.
+	 */
+	boolean serverSimulated();
 }
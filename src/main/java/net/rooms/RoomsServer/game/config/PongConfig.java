@@ -5,7 +5,8 @@ import net.rooms.RoomsServer.game.GameRepository;
 public record PongConfig(
 		GameType type,
 		int maxPlayers,
-		int winScore
+		int winScore,
+		boolean serverSimulated
 ) implements GameConfig {
 	public static final int MAX_PLAYERS = 4;
 	public static final int MIN_PLAYERS = 2;
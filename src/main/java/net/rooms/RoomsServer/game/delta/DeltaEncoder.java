@@ -0,0 +1,138 @@
+package net.rooms.RoomsServer.game.delta;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.notifications.DeltaNotification;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta compresses the packets a game host broadcasts to the guests.
+ * <br>
+ * Every broadcast packet becomes a numbered frame. Every websocket session of a guest acknowledges
+ * the frames it received, and is sent the next frame as a {@link JsonMergePatch} against the last
+ * frame it acknowledged. Sessions are tracked separately, since a guest connected from several
+ * devices or tabs may receive a different set of frames on each.
+ * <br>
+ * A session is sent the full frame, a keyframe, when it has not acknowledged any frame yet, when
+ * the frame it acknowledged is too old to diff against, when the frame cannot be described by a
+ * merge patch, when the patch would not be smaller, and on every n-th frame so that a session that
+ * lost track recovers within a bounded number of frames.
+ */
+public class DeltaEncoder {
+	private final int keyframeInterval;
+	private final long[] historySeqs; // Ring buffer of recent frames, by seq % keyframeInterval
+	private final JsonElement[] history;
+	private final Map<String, Long> acks = new ConcurrentHashMap<>(); // Session ID and last acknowledged seq
+	private long seq;
+
+	/**
+	 * @param keyframeInterval The number of frames between keyframes, which is also the number of
+	 *                         recent frames kept to diff against.
+	 */
+	public DeltaEncoder(int keyframeInterval) {
+		this.keyframeInterval = Math.max(1, keyframeInterval);
+		this.historySeqs = new long[this.keyframeInterval];
+		this.history = new JsonElement[this.keyframeInterval];
+	}
+
+	/**
+	 * Numbers the given packet as the next frame of the game.
+	 *
+	 * @param payload The packet broadcast by the host.
+	 * @return The frame, to be encoded for every session of the guests.
+	 */
+	public Frame next(String payload) {
+		JsonElement document;
+		try {
+			document = JsonParser.parseString(payload);
+		} catch (JsonParseException e) {
+			document = null; // Not json, can only be sent as a keyframe
+		}
+
+		synchronized (this) {
+			long frameSeq = ++seq;
+			int slot = (int) (frameSeq % keyframeInterval);
+			historySeqs[slot] = frameSeq;
+			history[slot] = document;
+			return new Frame(frameSeq, payload, document, frameSeq % keyframeInterval == 0);
+		}
+	}
+
+	/**
+	 * Records that the given session has received the given frame. Acknowledgements of older
+	 * frames than already acknowledged are ignored.
+	 *
+	 * @param sessionID The websocket session of the guest.
+	 * @param ackSeq    The number of the received frame.
+	 */
+	public void ack(String sessionID, long ackSeq) {
+		synchronized (this) {
+			if (ackSeq <= 0 || ackSeq > seq) return;
+		}
+		acks.merge(sessionID, ackSeq, Math::max);
+	}
+
+	/**
+	 * Forgets the frames acknowledged by the given session, so that it is sent a keyframe next.
+	 * Used when the session resubscribes and may have lost its state, or disconnects.
+	 *
+	 * @param sessionID The websocket session of the guest.
+	 */
+	public void reset(String sessionID) {
+		acks.remove(sessionID);
+	}
+
+	private synchronized @Nullable JsonElement base(long baseSeq) {
+		int slot = (int) (baseSeq % keyframeInterval);
+		return historySeqs[slot] == baseSeq ? history[slot] : null;
+	}
+
+	/**
+	 * A single broadcast packet, encoded lazily for every session. Sessions that acknowledged the
+	 * same frame share the same encoded notification.
+	 */
+	public class Frame {
+		private final long seq;
+		private final String payload;
+		private final @Nullable JsonElement document;
+		private final boolean keyframe;
+		private final Map<Long, byte[]> encoded = new HashMap<>(); // By base seq, 0 for the keyframe
+
+		private Frame(long seq, String payload, @Nullable JsonElement document, boolean keyframe) {
+			this.seq = seq;
+			this.payload = payload;
+			this.document = document;
+			this.keyframe = keyframe;
+		}
+
+		/**
+		 * Encodes the frame for the given session. Not thread safe, a frame is meant to be sent by
+		 * the thread that created it.
+		 *
+		 * @param sessionID The websocket session of the guest.
+		 * @return Json of a {@link DeltaNotification}.
+		 */
+		public byte[] encodeFor(String sessionID) {
+			Long acked = acks.get(sessionID);
+			long baseSeq = keyframe || document == null || acked == null || acked >= seq ? 0 : acked;
+			return encoded.computeIfAbsent(baseSeq, this::encode);
+		}
+
+		private byte[] encode(long baseSeq) {
+			JsonElement base = baseSeq == 0 ? null : base(baseSeq);
+			JsonObject patch = base == null ? null : JsonMergePatch.diff(base, document);
+			String delta = patch == null ? null : patch.toString(); // Keeps the nulls that mark removals
+			if (delta == null || delta.length() >= payload.length())
+				return JSON.toJson(new DeltaNotification(seq, null, payload)).getBytes(StandardCharsets.UTF_8);
+			return JSON.toJson(new DeltaNotification(seq, baseSeq, delta)).getBytes(StandardCharsets.UTF_8);
+		}
+	}
+}
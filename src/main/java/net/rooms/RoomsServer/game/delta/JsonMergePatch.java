@@ -0,0 +1,68 @@
+package net.rooms.RoomsServer.game.delta;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+
+/**
+ * Computes JSON Merge Patches (RFC 7396) between two documents.
+ * <br>
+ * A merge patch is an object holding only the members that changed, removed members are set to
+ * null and nested objects are patched recursively. Arrays and primitives are replaced as a whole.
+ * Since null marks a removal, documents with members explicitly set to null cannot be described
+ * by a merge patch.
+ */
+public final class JsonMergePatch {
+
+	private JsonMergePatch() {
+	}
+
+	/**
+	 * Computes the merge patch that turns the base document into the target document.
+	 *
+	 * @param base   The document the patch would be applied to.
+	 * @param target The document the patch should produce.
+	 * @return The merge patch, or null if the two documents are not both objects or the target
+	 * has members set to null.
+	 */
+	public static @Nullable JsonObject diff(JsonElement base, JsonElement target) {
+		if (!base.isJsonObject() || !target.isJsonObject()) return null;
+		return diff(base.getAsJsonObject(), target.getAsJsonObject());
+	}
+
+	private static @Nullable JsonObject diff(JsonObject base, JsonObject target) {
+		JsonObject patch = new JsonObject();
+		for (String key : base.keySet())
+			if (!target.has(key)) patch.add(key, JsonNull.INSTANCE);
+
+		for (Map.Entry<String, JsonElement> member : target.entrySet()) {
+			JsonElement value = member.getValue();
+			JsonElement previous = base.get(member.getKey());
+			if (value.equals(previous)) continue;
+
+			JsonElement change;
+			if (value.isJsonObject() && previous != null && previous.isJsonObject())
+				change = diff(previous.getAsJsonObject(), value.getAsJsonObject());
+			else
+				change = hasNullMember(value) ? null : value;
+			if (change == null) return null;
+			patch.add(member.getKey(), change);
+		}
+		return patch;
+	}
+
+	/**
+	 * Checks whether the given value is null or is an object with a member set to null at any
+	 * depth. Nulls inside arrays are fine, as arrays are replaced as a whole.
+	 */
+	private static boolean hasNullMember(JsonElement value) {
+		if (value.isJsonNull()) return true;
+		if (!value.isJsonObject()) return false;
+		for (Map.Entry<String, JsonElement> member : value.getAsJsonObject().entrySet())
+			if (hasNullMember(member.getValue())) return true;
+		return false;
+	}
+}
@@ -0,0 +1,34 @@
+package net.rooms.RoomsServer.game.engine;
+
+/**
+ * A game simulated by the server. Simulations are advanced by the {@link TickScheduler} on one of
+ * its threads, while inputs and leaving players may arrive concurrently from any thread.
+ */
+public interface Simulation {
+	/**
+	 * Advances the simulation by a single tick.
+	 *
+	 * @return False once the simulation has ended and should no longer be ticked.
+	 */
+	boolean tick();
+
+	/**
+	 * Applies an input packet sent by a player. Malformed packets are ignored.
+	 *
+	 * @param username The username of the player.
+	 * @param payload  The input packet sent by the player.
+	 */
+	void input(String username, String payload);
+
+	/**
+	 * Removes a player that left the game.
+	 *
+	 * @param username The username of the player.
+	 */
+	void leave(String username);
+
+	/**
+	 * Ends the simulation without a result. The simulation would not be ticked again.
+	 */
+	void stop();
+}
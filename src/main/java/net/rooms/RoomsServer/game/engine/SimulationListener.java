@@ -0,0 +1,41 @@
+package net.rooms.RoomsServer.game.engine;
+
+/**
+ * Receives the output of a {@link Simulation}.
+ */
+public interface SimulationListener {
+	/**
+	 * Called on the tick thread with the state of the game, to be pushed to all players.
+	 *
+	 * @param id    The identifier of the game.
+	 * @param state Json of the game state.
+	 */
+	void state(long id, String state);
+
+	/**
+	 * Called on the tick thread with the changes to the game since the previous call, to be pushed
+	 * to all players. Unlike states, changes build on each other and must all be delivered.
+	 *
+	 * @param id      The identifier of the game.
+	 * @param changes Json of the changes.
+	 */
+	void changes(long id, String changes);
+
+	/**
+	 * Called once when the game has concluded, outside the tick thread.
+	 *
+	 * @param id     The identifier of the game.
+	 * @param host   The username of the host of the game.
+	 * @param result Json of the game result.
+	 */
+	void result(long id, String host, String result);
+
+	/**
+	 * Called once, outside the tick thread, when the simulation failed before the game concluded.
+	 * The game should be aborted, as it will not produce a result.
+	 *
+	 * @param id   The identifier of the game.
+	 * @param host The username of the host of the game.
+	 */
+	void aborted(long id, String host);
+}
@@ -0,0 +1,150 @@
+package net.rooms.RoomsServer.game.engine;
+
+import net.rooms.RoomsServer.game.GameRepository;
+import net.rooms.RoomsServer.game.config.GameConfig;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.game.engine.pong.PongSimulation;
+import net.rooms.RoomsServer.game.engine.snakes.SnakesSimulation;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the games that are simulated by the server, see {@link GameConfig#serverSimulated()}.
+ * <br>
+ * A simulation is started once its game starts, receives the inputs of the players in place of
+ * the host, and reports the result of the game once it concludes. A simulation that fails, or
+ * that cannot start with the players left in the game, is forgotten, and its game is reported as
+ * aborted.
+ * <br>
+ * Results and aborted games are reported on a thread of their own, since reporting them touches
+ * the database and must not delay the ticks of other games.
+ */
+@Service
+public class SimulationService {
+	private final GameRepository gameRepository;
+	private final TickScheduler scheduler;
+	private final Map<Long, Simulation> simulations = new ConcurrentHashMap<>();
+	private final ExecutorService reporter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "game-results");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public SimulationService(GameRepository gameRepository, TickScheduler scheduler) {
+		this.gameRepository = gameRepository;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Starts simulating the given game if its configuration asks for it.
+	 *
+	 * @param id       The identifier of a game that has just started.
+	 * @param listener Receives the state and the result of the game.
+	 * @return True if a simulation was started.
+	 */
+	public boolean start(long id, SimulationListener listener) {
+		GameConfig config = gameRepository.getConfig(id);
+		if (config == null || !config.serverSimulated()) return false;
+
+		String host = gameRepository.getHost(id);
+		List<String> players = List.copyOf(gameRepository.getGameParticipants(id));
+		Dispatcher dispatcher = new Dispatcher(listener);
+		Simulation simulation;
+		try {
+			simulation = switch (config.type()) {
+				case PONG -> new PongSimulation(id, host, players, (PongConfig) config, scheduler.rate(), dispatcher);
+				case SNAKES -> new SnakesSimulation(id, host, players, (SnakesConfig) config, scheduler.rate(), dispatcher);
+			};
+		} catch (IllegalArgumentException e) {
+			// A player left between starting the game and starting its simulation
+			reporter.execute(() -> listener.aborted(id, host));
+			return false;
+		}
+		if (simulations.putIfAbsent(id, simulation) != null) return false;
+
+		scheduler.register(simulation, e -> {
+			if (simulations.remove(id, simulation)) reporter.execute(() -> listener.aborted(id, host));
+		});
+		return true;
+	}
+
+	/**
+	 * Checks whether the given game is simulated by the server.
+	 */
+	public boolean isSimulated(long id) {
+		return simulations.containsKey(id);
+	}
+
+	/**
+	 * Forwards an input packet of a player to the simulation of the given game.
+	 *
+	 * @return True if the game is simulated by the server and the input was forwarded.
+	 */
+	public boolean input(long id, String username, String payload) {
+		Simulation simulation = simulations.get(id);
+		if (simulation == null) return false;
+		simulation.input(username, payload);
+		return true;
+	}
+
+	/**
+	 * Removes a player that left the given game from its simulation, if any.
+	 */
+	public void leave(long id, String username) {
+		Simulation simulation = simulations.get(id);
+		if (simulation != null) simulation.leave(username);
+	}
+
+	/**
+	 * Ends the simulation of the given game without reporting a result, if any.
+	 */
+	public void stop(long id) {
+		Simulation simulation = simulations.remove(id);
+		if (simulation != null) simulation.stop();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		reporter.shutdownNow();
+	}
+
+	/**
+	 * Moves results off the tick thread, since reporting a result touches the database, and
+	 * forgets the simulation once it concludes.
+	 */
+	private class Dispatcher implements SimulationListener {
+		private final SimulationListener listener;
+
+		Dispatcher(SimulationListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void state(long id, String state) {
+			listener.state(id, state);
+		}
+
+		@Override
+		public void changes(long id, String changes) {
+			listener.changes(id, changes);
+		}
+
+		@Override
+		public void result(long id, String host, String result) {
+			if (simulations.remove(id) == null) return; // Stopped meanwhile
+			reporter.execute(() -> listener.result(id, host, result));
+		}
+
+		@Override
+		public void aborted(long id, String host) {
+			listener.aborted(id, host);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package net.rooms.RoomsServer.game.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Advances all server simulated games at a fixed rate.
+ * <br>
+ * Rather than scheduling a task per game, the scheduler runs a small, fixed number of lanes, one
+ * per thread. Every lane is a fixed rate task that ticks all the simulations assigned to it, and
+ * new simulations are assigned to the least loaded lane. This keeps the number of threads and
+ * scheduled tasks constant regardless of how many games are running.
+ * <br>
+ * A simulation that throws is no longer ticked, and its failure is handed to the callback it was
+ * registered with, on the tick thread.
+ */
+@Slf4j
+@Component
+public class TickScheduler {
+
+	private final ScheduledExecutorService executor;
+	private final List<Lane> lanes;
+	private final int rate;
+
+	public TickScheduler(@Value("${rooms.game.tick.threads:2}") int threads,
+						 @Value("${rooms.game.tick.rate:60}") int rate) {
+		this.rate = rate;
+		this.executor = Executors.newScheduledThreadPool(threads, new TickThreadFactory());
+		this.lanes = new ArrayList<>(threads);
+
+		long period = TimeUnit.SECONDS.toNanos(1) / rate;
+		for (int i = 0; i < threads; i++) {
+			Lane lane = new Lane();
+			lanes.add(lane);
+			executor.scheduleAtFixedRate(lane::tick, period, period, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * @return The number of ticks per second.
+	 */
+	public int rate() {
+		return rate;
+	}
+
+	/**
+	 * Starts ticking the given simulation on the least loaded lane. The simulation is ticked until
+	 * {@link Simulation#tick()} returns false or throws.
+	 *
+	 * @param simulation The simulation to tick.
+	 * @param failed     Called on the tick thread if the simulation throws, must not block.
+	 */
+	public void register(Simulation simulation, Consumer<RuntimeException> failed) {
+		lanes.stream()
+				.min(Comparator.comparingInt(lane -> lane.simulations.size()))
+				.orElseThrow()
+				.simulations.add(new Ticked(simulation, failed));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static class Lane {
+		final List<Ticked> simulations = new CopyOnWriteArrayList<>();
+
+		void tick() {
+			for (Ticked ticked : simulations) {
+				boolean running;
+				try {
+					running = ticked.simulation.tick();
+				} catch (RuntimeException e) {
+					// An exception escaping the lane would cancel it along with all of its games
+					log.error("Simulation failed and was stopped", e);
+					running = false;
+					failed(ticked, e);
+				}
+				if (!running) simulations.remove(ticked);
+			}
+		}
+
+		private static void failed(Ticked ticked, RuntimeException e) {
+			try {
+				ticked.failed.accept(e);
+			} catch (RuntimeException callback) {
+				log.error("Failed to report a failed simulation", callback);
+			}
+		}
+	}
+
+	private record Ticked(Simulation simulation, Consumer<RuntimeException> failed) {
+	}
+
+	private static class TickThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "game-tick-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+/**
+ * An input packet sent by a player of a server simulated pong game through "/game/unicast".
+ *
+ * @param direction The direction the paddle of the player moves in: -1 towards the start of its
+ *                  side (up or left), 1 towards the end of its side (down or right) and 0 to stop.
+ */
+public record PongInput(
+		int direction
+) {
+}
@@ -0,0 +1,16 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+import java.util.Map;
+
+/**
+ * The result of a server simulated pong game, submitted as the content of the game message once
+ * the game concludes.
+ *
+ * @param winner The username of the winning player.
+ * @param scores The final score of every player by username.
+ */
+public record PongResult(
+		String winner,
+		Map<String, Integer> scores
+) {
+}
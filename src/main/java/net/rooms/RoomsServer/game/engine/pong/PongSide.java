@@ -0,0 +1,12 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+/**
+ * The sides of the pong field. Players are assigned sides in the order they joined the game, the
+ * host is always {@link #LEFT}. Sides without a player act as walls.
+ */
+public enum PongSide {
+	LEFT,
+	RIGHT,
+	TOP,
+	BOTTOM
+}
@@ -0,0 +1,337 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+import com.google.gson.JsonParseException;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.engine.Simulation;
+import net.rooms.RoomsServer.game.engine.SimulationListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A server authoritative pong game for up to four players, one per side of a square field.
+ * <br>
+ * The field, the paddles and the ball are measured in fractions of the field size. A player
+ * scores when the ball leaves the field through the side of another player after the scoring
+ * player was the last to hit it. In a game of two players the opponent scores on any miss. The
+ * first player to reach {@link PongConfig#winScore()} wins.
+ */
+public class PongSimulation implements Simulation {
+	static final double PADDLE_LENGTH = 0.2;
+	static final double PADDLE_SPEED = 1.0; // Field lengths per second
+	static final double SERVE_SPEED = 0.5; // Field lengths per second
+	static final double MAX_BALL_SPEED = 1.5; // Field lengths per second
+	static final double SPEEDUP = 1.05; // Multiplier applied to the speed of the ball on every hit
+	static final double MAX_BOUNCE_ANGLE = Math.toRadians(60);
+	static final double SERVE_DELAY = 1.0; // Seconds
+
+	private final long id;
+	private final String host;
+	private final int winScore;
+	private final double dt;
+	private final int serveDelayTicks;
+	private final SimulationListener listener;
+	private final Paddle[] paddles = new Paddle[PongSide.values().length]; // By side, null for walls
+	private final SplittableRandom random = new SplittableRandom();
+
+	private double ballX, ballY, velocityX, velocityY;
+	private long tick;
+	private int serveTicks;
+	private PongSide lastHit;
+	private volatile boolean stopped;
+
+	/**
+	 * @param id       The identifier of the game.
+	 * @param host     The username of the host.
+	 * @param players  The usernames of the players, in the order they joined the game, between
+	 *                 {@link PongConfig#MIN_PLAYERS} and one per side of the field.
+	 * @param config   The configuration of the game.
+	 * @param rate     The number of ticks per second.
+	 * @param listener Receives the state and the result of the game.
+	 */
+	public PongSimulation(long id, String host, List<String> players, PongConfig config, int rate, SimulationListener listener) {
+		if (players.size() < PongConfig.MIN_PLAYERS || players.size() > PongSide.values().length)
+			throw new IllegalArgumentException("Pong is played by " + PongConfig.MIN_PLAYERS + " to "
+					+ PongSide.values().length + " players, not " + players.size());
+		this.id = id;
+		this.host = host;
+		this.winScore = config.winScore();
+		this.dt = 1.0 / rate;
+		this.serveDelayTicks = (int) (SERVE_DELAY * rate);
+		this.listener = listener;
+
+		PongSide[] sides = PongSide.values();
+		for (int i = 0; i < players.size(); i++)
+			paddles[i] = new Paddle(players.get(i), sides[i]);
+		serve();
+	}
+
+	@Override
+	public boolean tick() {
+		if (stopped) return false;
+		tick++;
+
+		for (Paddle paddle : paddles)
+			if (paddle != null && paddle.active) paddle.move(dt);
+
+		Paddle survivor = soleActivePaddle();
+		if (survivor != null) return finish(survivor.username);
+
+		if (serveTicks > 0) serveTicks--;
+		else if (moveBall()) return false;
+
+		listener.state(id, JSON.toJson(state()));
+		return true;
+	}
+
+	@Override
+	public void input(String username, String payload) {
+		Paddle paddle = paddle(username);
+		if (paddle == null) return;
+
+		PongInput input;
+		try {
+			input = JSON.fromJson(payload, PongInput.class);
+		} catch (JsonParseException e) {
+			return;
+		}
+		if (input == null) return;
+		paddle.direction = Integer.signum(input.direction());
+	}
+
+	@Override
+	public void leave(String username) {
+		Paddle paddle = paddle(username);
+		if (paddle != null) paddle.active = false;
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Moves the ball by a single tick and resolves collisions with the sides of the field.
+	 *
+	 * @return True if the game has concluded.
+	 */
+	private boolean moveBall() {
+		ballX += velocityX * dt;
+		ballY += velocityY * dt;
+
+		if (ballX <= 0) return reachSide(PongSide.LEFT, ballY);
+		if (ballX >= 1) return reachSide(PongSide.RIGHT, ballY);
+		if (ballY <= 0) return reachSide(PongSide.TOP, ballX);
+		if (ballY >= 1) return reachSide(PongSide.BOTTOM, ballX);
+		return false;
+	}
+
+	/**
+	 * Resolves the ball reaching the given side, either by bouncing it off a wall or a paddle or
+	 * by scoring a point.
+	 *
+	 * @param side  The side the ball has reached.
+	 * @param along The position of the ball along the side.
+	 * @return True if the game has concluded.
+	 */
+	private boolean reachSide(PongSide side, double along) {
+		Paddle paddle = paddles[side.ordinal()];
+		if (paddle == null || !paddle.active) {
+			bounceOffWall(side);
+			return false;
+		}
+
+		double offset = (along - paddle.position) / (PADDLE_LENGTH / 2);
+		if (Math.abs(offset) <= 1) {
+			bounceOffPaddle(side, offset);
+			lastHit = side;
+			return false;
+		}
+
+		Paddle scorer = scorer(side);
+		if (scorer != null && ++scorer.score >= winScore) return finish(scorer.username);
+		serve();
+		return false;
+	}
+
+	private void bounceOffWall(PongSide side) {
+		switch (side) {
+			case LEFT -> {
+				ballX = -ballX;
+				velocityX = -velocityX;
+			}
+			case RIGHT -> {
+				ballX = 2 - ballX;
+				velocityX = -velocityX;
+			}
+			case TOP -> {
+				ballY = -ballY;
+				velocityY = -velocityY;
+			}
+			case BOTTOM -> {
+				ballY = 2 - ballY;
+				velocityY = -velocityY;
+			}
+		}
+	}
+
+	/**
+	 * Sends the ball back into the field. The further from the center of the paddle the ball
+	 * hits, the steeper the angle it leaves at.
+	 */
+	private void bounceOffPaddle(PongSide side, double offset) {
+		double speed = Math.min(Math.hypot(velocityX, velocityY) * SPEEDUP, MAX_BALL_SPEED);
+		double across = speed * Math.cos(offset * MAX_BOUNCE_ANGLE);
+		double along = speed * Math.sin(offset * MAX_BOUNCE_ANGLE);
+		switch (side) {
+			case LEFT -> {
+				ballX = 0;
+				velocityX = across;
+				velocityY = along;
+			}
+			case RIGHT -> {
+				ballX = 1;
+				velocityX = -across;
+				velocityY = along;
+			}
+			case TOP -> {
+				ballY = 0;
+				velocityX = along;
+				velocityY = across;
+			}
+			case BOTTOM -> {
+				ballY = 1;
+				velocityX = along;
+				velocityY = -across;
+			}
+		}
+	}
+
+	/**
+	 * Determines who scores when the player of the given side misses the ball: the last player to
+	 * hit the ball, or the only opponent if nobody else could have.
+	 */
+	private Paddle scorer(PongSide missed) {
+		if (lastHit != null && lastHit != missed) {
+			Paddle paddle = paddles[lastHit.ordinal()];
+			if (paddle != null && paddle.active) return paddle;
+		}
+
+		Paddle opponent = null;
+		for (Paddle paddle : paddles) {
+			if (paddle == null || !paddle.active || paddle.side == missed) continue;
+			if (opponent != null) return null; // More than one opponent, nobody earned the point
+			opponent = paddle;
+		}
+		return opponent;
+	}
+
+	/**
+	 * Places the ball at the center of the field, aimed at a random player.
+	 */
+	private void serve() {
+		ballX = 0.5;
+		ballY = 0.5;
+		lastHit = null;
+		serveTicks = serveDelayTicks;
+
+		List<PongSide> targets = new ArrayList<>();
+		for (Paddle paddle : paddles)
+			if (paddle != null && paddle.active) targets.add(paddle.side);
+		PongSide target = targets.isEmpty() ? PongSide.LEFT : targets.get(random.nextInt(targets.size()));
+
+		double angle = (random.nextDouble() * 2 - 1) * Math.toRadians(30);
+		double across = SERVE_SPEED * Math.cos(angle);
+		double along = SERVE_SPEED * Math.sin(angle);
+		switch (target) {
+			case LEFT -> {
+				velocityX = -across;
+				velocityY = along;
+			}
+			case RIGHT -> {
+				velocityX = across;
+				velocityY = along;
+			}
+			case TOP -> {
+				velocityX = along;
+				velocityY = -across;
+			}
+			case BOTTOM -> {
+				velocityX = along;
+				velocityY = across;
+			}
+		}
+	}
+
+	/**
+	 * @return The paddle of the only player still in the game, or null if there are more players.
+	 * The host is considered the winner in the unlikely case nobody is left.
+	 */
+	private Paddle soleActivePaddle() {
+		Paddle sole = null;
+		int active = 0;
+		for (Paddle paddle : paddles) {
+			if (paddle == null || !paddle.active) continue;
+			sole = paddle;
+			active++;
+		}
+		if (active >= 2) return null;
+		return sole != null ? sole : paddle(host);
+	}
+
+	private boolean finish(String winner) {
+		stopped = true;
+		listener.state(id, JSON.toJson(state()));
+
+		Map<String, Integer> scores = new LinkedHashMap<>();
+		for (Paddle paddle : paddles)
+			if (paddle != null) scores.put(paddle.username, paddle.score);
+		listener.result(id, host, JSON.toJson(new PongResult(winner, scores)));
+		return false;
+	}
+
+	private PongState state() {
+		List<PongState.Paddle> states = new ArrayList<>(paddles.length);
+		for (Paddle paddle : paddles)
+			if (paddle != null && paddle.active)
+				states.add(new PongState.Paddle(paddle.username, paddle.side, round(paddle.position), paddle.score));
+		return new PongState(tick, round(ballX), round(ballY), states);
+	}
+
+	private Paddle paddle(String username) {
+		for (Paddle paddle : paddles)
+			if (paddle != null && paddle.username.equals(username)) return paddle;
+		return null;
+	}
+
+	/**
+	 * Rounds coordinates to keep state packets short, four decimal places are far more precise
+	 * than any screen.
+	 */
+	private static double round(double value) {
+		return Math.round(value * 10_000) / 10_000.0;
+	}
+
+	private static class Paddle {
+		final String username;
+		final PongSide side;
+		volatile int direction; // Written by input threads, read by the tick thread
+		volatile boolean active = true; // Written by leaving players, read by the tick thread
+		double position = 0.5;
+		int score;
+
+		Paddle(String username, PongSide side) {
+			this.username = username;
+			this.side = side;
+		}
+
+		void move(double dt) {
+			position += direction * PADDLE_SPEED * dt;
+			position = Math.max(PADDLE_LENGTH / 2, Math.min(1 - PADDLE_LENGTH / 2, position));
+		}
+	}
+}
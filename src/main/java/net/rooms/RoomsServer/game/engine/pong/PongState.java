@@ -0,0 +1,34 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+import java.util.List;
+
+/**
+ * The state of a server simulated pong game, pushed to all players on every tick at
+ * "/queue/game/state". Coordinates are fractions of the field size, where (0, 0) is the
+ * top left corner.
+ *
+ * @param tick    The number of the tick this state was produced at.
+ * @param ballX   The horizontal position of the ball.
+ * @param ballY   The vertical position of the ball.
+ * @param paddles The paddles of the players still in the game.
+ */
+public record PongState(
+		long tick,
+		double ballX,
+		double ballY,
+		List<Paddle> paddles
+) {
+	/**
+	 * @param username The username of the player controlling the paddle.
+	 * @param side     The side of the field the paddle guards.
+	 * @param position The position of the center of the paddle along its side.
+	 * @param score    The score of the player.
+	 */
+	public record Paddle(
+			String username,
+			PongSide side,
+			double position,
+			int score
+	) {
+	}
+}
@@ -0,0 +1,12 @@
+package net.rooms.RoomsServer.game.engine.snakes;
+
+/**
+ * The directions a snake may move in, in clockwise order so that opposite directions are two
+ * steps apart.
+ */
+public enum SnakesDirection {
+	UP,
+	RIGHT,
+	DOWN,
+	LEFT
+}
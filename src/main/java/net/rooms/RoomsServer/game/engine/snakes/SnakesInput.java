@@ -0,0 +1,12 @@
+package net.rooms.RoomsServer.game.engine.snakes;
+
+/**
+ * An input packet sent by a player of a server simulated snakes game through "/game/unicast".
+ *
+ * @param direction The direction the snake of the player should turn to. Turning back onto itself
+ *                  is ignored.
+ */
+public record SnakesInput(
+		SnakesDirection direction
+) {
+}
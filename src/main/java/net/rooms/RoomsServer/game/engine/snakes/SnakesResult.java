@@ -0,0 +1,16 @@
+package net.rooms.RoomsServer.game.engine.snakes;
+
+import java.util.Map;
+
+/**
+ * The result of a server simulated snakes game, submitted as the content of the game message once
+ * the game concludes.
+ *
+ * @param winner The username of the winning player.
+ * @param scores The amount of food eaten by every player by username.
+ */
+public record SnakesResult(
+		String winner,
+		Map<String, Integer> scores
+) {
+}
@@ -0,0 +1,324 @@
+package net.rooms.RoomsServer.game.engine.snakes;
+
+import com.google.gson.JsonParseException;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.game.engine.Simulation;
+import net.rooms.RoomsServer.game.engine.SimulationListener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A server authoritative snakes game for up to four players on a fixed grid.
+ * <br>
+ * Occupied cells are tracked in a bitset, so checking whether a snake ran into another, or into
+ * itself, is a single bit test per move. The body of every snake is a ring buffer of cell indices
+ * sized to the whole board, so moving, growing and dying never allocate. Every move produces a
+ * frame with only the cells that changed since the previous one, pushed to all players at
+ * "/queue/game/changes". The first frame holds the initial board:
+ * <pre>
+ * {"tick":42,"cells":[cell,value,cell,value,...],"scores":[3,1]}
+ * </pre>
+ * where a cell is {@code y * WIDTH + x} and its value is {@link #EMPTY}, {@link #FOOD}, or the
+ * number of the player whose snake occupies it, counting from 1 in the order the players joined
+ * the game. Changes are listed in the order they happened and should be applied in that order.
+ * <br>
+ * A player scores by eating food, and wins by reaching {@link SnakesConfig#winScore()} or by
+ * being the last player alive. Snakes die when they hit a wall or any occupied cell.
+ */
+public class SnakesSimulation implements Simulation {
+	public static final int WIDTH = 32;
+	public static final int HEIGHT = 32;
+	public static final int EMPTY = 0;
+	public static final int FOOD = -1;
+
+	static final int CELLS = WIDTH * HEIGHT;
+	static final int INITIAL_LENGTH = 3;
+	static final int MOVES_PER_SECOND = 10;
+
+	private static final int NO_FOOD = -1;
+	private static final int[] DX = {0, 1, 0, -1}; // By SnakesDirection ordinal
+	private static final int[] DY = {-1, 0, 1, 0};
+	private static final int[][] STARTS = { // Head x, head y and direction of every player
+			{6, 8, SnakesDirection.RIGHT.ordinal()},
+			{WIDTH - 7, HEIGHT - 9, SnakesDirection.LEFT.ordinal()},
+			{WIDTH - 9, 6, SnakesDirection.DOWN.ordinal()},
+			{8, HEIGHT - 7, SnakesDirection.UP.ordinal()},
+	};
+
+	private final long id;
+	private final String host;
+	private final int winScore;
+	private final int ticksPerMove;
+	private final SimulationListener listener;
+	private final Snake[] snakes;
+	private final long[] occupied = new long[(CELLS + 63) >>> 6];
+	private final int[] changes = new int[2 * (CELLS + 4 * STARTS.length)]; // Cell and value pairs
+	private final StringBuilder frame = new StringBuilder(16 * CELLS);
+	private final SplittableRandom random = new SplittableRandom();
+
+	private int changeCount;
+	private int food = NO_FOOD;
+	private long tick;
+	private int moveCountdown;
+	private volatile boolean stopped;
+
+	/**
+	 * @param id       The identifier of the game.
+	 * @param host     The username of the host.
+	 * @param players  The usernames of the players, in the order they joined the game, between
+	 *                 {@link SnakesConfig#MIN_PLAYERS} and one per starting position.
+	 * @param config   The configuration of the game.
+	 * @param rate     The number of ticks per second.
+	 * @param listener Receives the state and the result of the game.
+	 */
+	public SnakesSimulation(long id, String host, List<String> players, SnakesConfig config, int rate, SimulationListener listener) {
+		if (players.size() < SnakesConfig.MIN_PLAYERS || players.size() > STARTS.length)
+			throw new IllegalArgumentException("Snakes is played by " + SnakesConfig.MIN_PLAYERS + " to "
+					+ STARTS.length + " players, not " + players.size());
+		this.id = id;
+		this.host = host;
+		this.winScore = config.winScore();
+		this.ticksPerMove = Math.max(1, rate / MOVES_PER_SECOND);
+		this.listener = listener;
+		this.snakes = new Snake[players.size()];
+
+		for (int i = 0; i < snakes.length; i++) {
+			Snake snake = new Snake(players.get(i), i + 1, STARTS[i][2]);
+			int x = STARTS[i][0] - DX[snake.heading] * (INITIAL_LENGTH - 1);
+			int y = STARTS[i][1] - DY[snake.heading] * (INITIAL_LENGTH - 1);
+			for (int k = 0; k < INITIAL_LENGTH; k++) {
+				int cell = y * WIDTH + x;
+				snake.head = k;
+				snake.body[k] = cell;
+				snake.length++;
+				occupy(cell, snake.number);
+				x += DX[snake.heading];
+				y += DY[snake.heading];
+			}
+			snakes[i] = snake;
+		}
+		spawnFood();
+	}
+
+	@Override
+	public boolean tick() {
+		if (stopped) return false;
+		tick++;
+
+		if (moveCountdown-- > 0) return true;
+		moveCountdown = ticksPerMove - 1;
+
+		for (Snake snake : snakes)
+			if (snake.alive && snake.left) kill(snake);
+
+		Snake winner = null;
+		for (Snake snake : snakes)
+			if (snake.alive && move(snake) && winner == null) winner = snake;
+
+		if (winner == null) winner = soleSurvivor();
+		if (winner != null) return finish(winner.username);
+
+		flush();
+		return true;
+	}
+
+	@Override
+	public void input(String username, String payload) {
+		Snake snake = snake(username);
+		if (snake == null) return;
+
+		SnakesInput input;
+		try {
+			input = JSON.fromJson(payload, SnakesInput.class);
+		} catch (JsonParseException e) {
+			return;
+		}
+		if (input == null || input.direction() == null) return;
+		snake.requested = input.direction().ordinal();
+	}
+
+	@Override
+	public void leave(String username) {
+		Snake snake = snake(username);
+		if (snake != null) snake.left = true;
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Moves the given snake by a single cell, killing it if it collides.
+	 *
+	 * @return True if the snake has reached the winning score.
+	 */
+	private boolean move(Snake snake) {
+		int requested = snake.requested;
+		if (requested != (snake.heading + 2) % 4) snake.heading = requested; // Ignore turning back
+
+		int head = snake.body[snake.head];
+		int x = head % WIDTH + DX[snake.heading];
+		int y = head / WIDTH + DY[snake.heading];
+		if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT) {
+			kill(snake);
+			return false;
+		}
+
+		int next = y * WIDTH + x;
+		boolean growing = next == food;
+		if (!growing) { // The tail moves out of the way first, so a snake may follow its own tail
+			vacate(snake.body[(snake.head - snake.length + 1 + CELLS) % CELLS]);
+			snake.length--;
+		}
+		if (isOccupied(next)) {
+			kill(snake);
+			return false;
+		}
+
+		snake.head = (snake.head + 1) % CELLS;
+		snake.body[snake.head] = next;
+		snake.length++;
+		occupy(next, snake.number);
+		if (!growing) return false;
+
+		snake.score++;
+		spawnFood();
+		return snake.score >= winScore;
+	}
+
+	/**
+	 * Removes the given snake from the board.
+	 */
+	private void kill(Snake snake) {
+		for (int k = 0; k < snake.length; k++)
+			vacate(snake.body[(snake.head - k + CELLS) % CELLS]);
+		snake.length = 0;
+		snake.alive = false;
+	}
+
+	/**
+	 * Places food on a random empty cell. The board is scanned a word at a time from a random
+	 * starting point, so finding an empty cell takes at most a few dozen steps even on a crowded
+	 * board.
+	 */
+	private void spawnFood() {
+		food = nextEmpty(random.nextInt(CELLS));
+		if (food == NO_FOOD) food = nextEmpty(0);
+		if (food != NO_FOOD) record(food, FOOD);
+	}
+
+	private int nextEmpty(int from) {
+		int index = from >>> 6;
+		long word = ~occupied[index] & (-1L << (from & 63));
+		while (true) {
+			if (word != 0) {
+				int cell = (index << 6) + Long.numberOfTrailingZeros(word);
+				return cell < CELLS ? cell : NO_FOOD;
+			}
+			if (++index == occupied.length) return NO_FOOD;
+			word = ~occupied[index];
+		}
+	}
+
+	private boolean isOccupied(int cell) {
+		return (occupied[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	private void occupy(int cell, int value) {
+		occupied[cell >>> 6] |= 1L << cell;
+		record(cell, value);
+	}
+
+	private void vacate(int cell) {
+		occupied[cell >>> 6] &= ~(1L << cell);
+		record(cell, EMPTY);
+	}
+
+	private void record(int cell, int value) {
+		changes[changeCount++] = cell;
+		changes[changeCount++] = value;
+	}
+
+	/**
+	 * Sends the cells changed since the previous frame, along with the scores of all players.
+	 */
+	private void flush() {
+		frame.setLength(0);
+		frame.append("{\"tick\":").append(tick).append(",\"cells\":[");
+		for (int i = 0; i < changeCount; i++) {
+			if (i > 0) frame.append(',');
+			frame.append(changes[i]);
+		}
+		frame.append("],\"scores\":[");
+		for (int i = 0; i < snakes.length; i++) {
+			if (i > 0) frame.append(',');
+			frame.append(snakes[i].score);
+		}
+		frame.append("]}");
+		changeCount = 0;
+		listener.changes(id, frame.toString());
+	}
+
+	/**
+	 * @return The only snake still alive if there is exactly one, or the highest scoring snake if
+	 * none are left, preferring earlier players on ties. Null while two or more are alive.
+	 */
+	private Snake soleSurvivor() {
+		Snake survivor = null;
+		int alive = 0;
+		for (Snake snake : snakes) {
+			if (!snake.alive) continue;
+			survivor = snake;
+			alive++;
+		}
+		if (alive >= 2) return null;
+		if (survivor != null) return survivor;
+
+		Snake best = null;
+		for (Snake snake : snakes)
+			if (best == null || snake.score > best.score) best = snake;
+		return best;
+	}
+
+	private boolean finish(String winner) {
+		stopped = true;
+		flush();
+
+		Map<String, Integer> scores = new LinkedHashMap<>();
+		for (Snake snake : snakes)
+			scores.put(snake.username, snake.score);
+		listener.result(id, host, JSON.toJson(new SnakesResult(winner, scores)));
+		return false;
+	}
+
+	private Snake snake(String username) {
+		for (Snake snake : snakes)
+			if (snake.username.equals(username)) return snake;
+		return null;
+	}
+
+	private static class Snake {
+		final String username;
+		final int number;
+		final int[] body = new int[CELLS]; // Ring buffer of cells, the head is at body[head]
+		volatile int requested; // Written by input threads, read by the tick thread
+		volatile boolean left; // Written by leaving players, read by the tick thread
+		int head;
+		int length;
+		int heading;
+		int score;
+		boolean alive = true;
+
+		Snake(String username, int number, int heading) {
+			this.username = username;
+			this.number = number;
+			this.heading = heading;
+			this.requested = heading;
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package net.rooms.RoomsServer.game.notifications;
+
+import java.util.List;
+
+/**
+ * Several game packets sent by the participants of a game to its host within a short window,
+ * sent in place of a {@link BroadcastNotification} per packet when input coalescing is enabled.
+ */
+public record BatchNotification(
+		List<String> payloads // Json payloads containing the game packets, in the order received
+) {
+}
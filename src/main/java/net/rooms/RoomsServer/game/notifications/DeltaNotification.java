@@ -0,0 +1,17 @@
+package net.rooms.RoomsServer.game.notifications;
+
+/**
+ * A delta compressed game packet, sent in place of {@link BroadcastNotification} when delta
+ * compression is enabled.
+ *
+ * @param seq     The number of the frame, to be acknowledged through "/game/ack".
+ * @param base    The number of the frame the payload is a patch against. Absent for keyframes.
+ * @param payload The full game packet for keyframes. Otherwise, a JSON Merge Patch (RFC 7396) to
+ *                apply on the packet of the base frame.
+ */
+public record DeltaNotification(
+		long seq,
+		Long base,
+		String payload
+) {
+}
@@ -0,0 +1,10 @@
+package net.rooms.RoomsServer.game.requests;
+
+import net.rooms.RoomsServer.websocket.util.WSRequest;
+
+public record AckRequest(
+		long id, // Game ID
+		long seq, // Number of the last frame received
+		String jSessionID
+) implements WSRequest {
+}
@@ -0,0 +1,107 @@
+package net.rooms.RoomsServer.message;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Converts the content of messages to and from the form it is stored in, in the 'content' column
+ * of the 'message' table.
+ * <br>
+ * Content longer than a threshold is compressed with deflate and stored as Base64 after the
+ * marker "\u0001D", if that makes it shorter. Content that happens to start with "\u0001" is
+ * stored after the marker "\u0001R", so that it is never mistaken for compressed content. All
+ * other content is stored as is, which keeps rows written before compression was enabled
+ * readable, and compressed rows stay readable after it is disabled again.
+ */
+public class ContentCodec {
+	private static final char MARKER = '\u0001';
+	private static final char DEFLATED = 'D';
+	private static final char RAW = 'R';
+
+	private final int threshold;
+
+	/**
+	 * @param threshold Content longer than this many characters is compressed. Zero disables
+	 *                  compression.
+	 */
+	public ContentCodec(int threshold) {
+		if (threshold < 0) throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return The given content in the form it should be stored in.
+	 */
+	public String encode(String content) {
+		if (content == null) return null;
+
+		if (threshold > 0 && content.length() > threshold) {
+			String compressed = MARKER + "" + DEFLATED + Base64.getEncoder().encodeToString(deflate(content));
+			if (compressed.length() < content.length()) return compressed;
+		}
+		if (!content.isEmpty() && content.charAt(0) == MARKER) return MARKER + "" + RAW + content;
+		return content;
+	}
+
+	/**
+	 * @return The content stored in the given form.
+	 */
+	public String decode(String stored) {
+		if (stored == null || stored.length() < 2 || stored.charAt(0) != MARKER) return stored;
+
+		return switch (stored.charAt(1)) {
+			case DEFLATED -> inflate(Base64.getDecoder().decode(stored.substring(2)));
+			case RAW -> stored.substring(2);
+			default -> stored; // Written before markers existed
+		};
+	}
+
+	/**
+	 * @return The given message with its content decoded, or the message itself if its content
+	 * is stored as is.
+	 */
+	public Message decode(Message message) {
+		String content = decode(message.content());
+		if (content == message.content()) return message;
+		return new Message(message.id(), message.roomID(), message.type(), message.sender(), content, message.sendDate());
+	}
+
+	private static byte[] deflate(String content) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(content.getBytes(StandardCharsets.UTF_8));
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(content.length() / 2);
+			byte[] buffer = new byte[1024];
+			while (!deflater.finished())
+				out.write(buffer, 0, deflater.deflate(buffer));
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static String inflate(byte[] compressed) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+			byte[] buffer = new byte[1024];
+			while (!inflater.finished()) {
+				int inflated = inflater.inflate(buffer);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IllegalStateException("Compressed message content is truncated");
+				out.write(buffer, 0, inflated);
+			}
+			return out.toString(StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Compressed message content is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
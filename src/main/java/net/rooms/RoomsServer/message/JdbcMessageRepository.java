@@ -1,31 +1,82 @@
 package net.rooms.RoomsServer.message;
 
-import lombok.AllArgsConstructor;
+import io.micrometer.core.annotation.Timed;
+import net.rooms.RoomsServer.HiLoIdAllocator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.DataClassRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 @Repository
-@AllArgsConstructor
+@Timed(value = "rooms.stage.repository", description = "Time spent in database queries")
 public class JdbcMessageRepository implements MessageRepository {
 
+	private static final String INSERT = "INSERT INTO message(id,rid,type,sender,content,send_date) VALUES(?,?,?,?,?,?)";
+	private static final RowMapper<Message> MAPPER = new DataClassRowMapper<>(Message.class);
+
 	private final JdbcClient jdbcClient;
+	private final JdbcTemplate jdbcTemplate; // For batches, which the JdbcClient does not support
+	private final HiLoIdAllocator ids;
+	private final int blockSize;
+	private final int pageSize;
+	private final ContentCodec codec;
+	private final RowMapper<Message> mapper;
+
+	public JdbcMessageRepository(JdbcClient jdbcClient, JdbcTemplate jdbcTemplate,
+								 @Value("${rooms.id.message-block-size:50}") int blockSize,
+								 @Value("${rooms.messages.export.page-size:500}") int pageSize,
+								 @Value("${rooms.messages.compression.threshold:0}") int compressionThreshold) {
+		this.jdbcClient = jdbcClient;
+		this.jdbcTemplate = jdbcTemplate;
+		this.pageSize = pageSize;
+		this.blockSize = blockSize;
+		this.ids = new HiLoIdAllocator(this::nextSequenceValue, blockSize);
+		this.codec = new ContentCodec(compressionThreshold);
+		this.mapper = (resultSet, row) -> codec.decode(MAPPER.mapRow(resultSet, row));
+	}
 
 	@Override
 	public boolean create(Message message) {
-		int updated = jdbcClient.sql("INSERT INTO message(id,rid,type,sender,content,send_date) VALUES(?,?,?,?,?,?)")
-				.params(message.id(), message.roomID(), message.type().ordinal(), message.sender(), message.content(), message.sendDate())
+		int updated = jdbcClient.sql(INSERT)
+				.params(message.id(), message.roomID(), message.type().ordinal(), message.sender(), codec.encode(message.content()), message.sendDate())
 				.update();
 		return updated == 1;
 	}
 
+	@Override
+	@Transactional
+	public List<Message> createAll(List<Message> messages) {
+		List<Object[]> rows = new ArrayList<>(messages.size());
+		for (Message message : messages)
+			rows.add(new Object[]{message.id(), message.roomID(), message.type().ordinal(), message.sender(), codec.encode(message.content()), message.sendDate()});
+
+		int[] updated = jdbcTemplate.batchUpdate(INSERT, rows);
+		List<Message> failed = new ArrayList<>(0);
+		for (int i = 0; i < messages.size(); i++) {
+			// Drivers may execute a batch without counting the rows of every statement
+			boolean inserted = i < updated.length && (updated[i] == 1 || updated[i] == Statement.SUCCESS_NO_INFO);
+			if (!inserted) failed.add(messages.get(i));
+		}
+		return failed;
+	}
+
 	@Override
 	public boolean update(Message message) {
 		int updated = jdbcClient.sql("UPDATE message " +
 									 "SET rid = ?, type = ?, sender = ?, content = ?, send_date = ? " +
 									 "WHERE id = ?")
-				.params(message.roomID(), message.type().ordinal(), message.sender(), message.content(), message.sendDate(), message.id())
+				.params(message.roomID(), message.type().ordinal(), message.sender(), codec.encode(message.content()), message.sendDate(), message.id())
 				.update();
 		return updated == 1;
 	}
@@ -36,12 +87,19 @@ public class JdbcMessageRepository implements MessageRepository {
 							  "FROM message " +
 							  "WHERE id = ?")
 				.params(id)
-				.query(Message.class)
+				.query(mapper)
 				.single();
 	}
 
 	@Override
 	public long lastID() {
+		return ids.next();
+	}
+
+	/**
+	 * Reserves the next block of message IDs, see {@link HiLoIdAllocator}.
+	 */
+	private long nextSequenceValue() {
 		Object result = jdbcClient.sql("SELECT NEXT VALUE FOR msg_id").query().singleValue();
 		//noinspection ConstantValue
 		if (result == null) return 0L;
@@ -54,7 +112,113 @@ public class JdbcMessageRepository implements MessageRepository {
 							  "FROM message " +
 							  "WHERE rid = ?")
 				.params(roomID)
-				.query(Message.class)
+				.query(mapper)
+				.list();
+	}
+
+	@Override
+	public List<Message> listBefore(long roomID, long before, int limit) {
+		// Walks the (rid, id) index backwards from the cursor, then restores ascending order
+		List<Message> messages = new ArrayList<>(jdbcClient.sql("SELECT id, rid AS room_i_d, type, sender, content, send_date " +
+																"FROM message " +
+																"WHERE rid = ? AND id < ? " +
+																"ORDER BY id DESC " +
+																"LIMIT ?")
+				.params(roomID, before, limit)
+				.query(mapper)
+				.list());
+		Collections.reverse(messages);
+		return messages;
+	}
+
+	@Override
+	public List<Message> listAfter(long roomID, long after, int limit) {
+		return jdbcClient.sql("SELECT id, rid AS room_i_d, type, sender, content, send_date " +
+							  "FROM message " +
+							  "WHERE rid = ? AND id > ? " +
+							  "ORDER BY id " +
+							  "LIMIT ?")
+				.params(roomID, after, limit)
+				.query(mapper)
 				.list();
 	}
+
+	@Override
+	public void forEachInRoom(long roomID, Consumer<Message> consumer) {
+		forEachInRoom(roomID, pageSize, consumer);
+	}
+
+	/**
+	 * @return The IDs of the rooms that have messages sent before the given date.
+	 */
+	public List<Long> listRoomsWithMessagesBefore(LocalDateTime date) {
+		return jdbcClient.sql("SELECT DISTINCT rid FROM message WHERE send_date < ?")
+				.params(date)
+				.query(Long.class)
+				.list();
+	}
+
+	/**
+	 * Lists the oldest messages of a room after the given ID, stopping at the first message that
+	 * was sent on or after the given date. Used to move old messages to the archive.
+	 *
+	 * @param roomID The room to list messages from.
+	 * @param after  Only messages with a greater ID are listed.
+	 * @param date   Only messages older than the first message sent on or after it are listed.
+	 * @param limit  The maximum number of messages to list.
+	 * @return The messages, in ascending ID order.
+	 */
+	public List<Message> listOlderThan(long roomID, long after, LocalDateTime date, int limit) {
+		return jdbcClient.sql("SELECT id, rid AS room_i_d, type, sender, content, send_date " +
+							  "FROM message " +
+							  "WHERE rid = ? AND id > ? AND id < COALESCE(" +
+							  "(SELECT MIN(id) FROM message WHERE rid = ? AND send_date >= ?), " + Long.MAX_VALUE + ") " +
+							  "ORDER BY id " +
+							  "LIMIT ?")
+				.params(roomID, after, roomID, date, limit)
+				.query(mapper)
+				.list();
+	}
+
+	/**
+	 * Deletes the messages of a room with the given IDs.
+	 *
+	 * @return The number of messages deleted.
+	 */
+	@Transactional
+	public int deleteAll(long roomID, List<Long> ids) {
+		List<Object[]> rows = new ArrayList<>(ids.size());
+		for (long id : ids)
+			rows.add(new Object[]{roomID, id});
+
+		int deleted = 0;
+		for (int count : jdbcTemplate.batchUpdate("DELETE FROM message WHERE rid = ? AND id = ?", rows))
+			if (count > 0) deleted += count;
+		return deleted;
+	}
+
+	/**
+	 * @return An ID greater than every message ID handed out so far, by any server sharing the
+	 * database, see {@link HiLoIdAllocator}.
+	 */
+	public long idCeiling() {
+		long next = jdbcClient.sql("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'MSG_ID'")
+				.query(Long.class)
+				.single();
+		return Math.multiplyExact(next, blockSize);
+	}
+
+	/**
+	 * @return An identifier of the database, which is chosen at random the first time it is asked
+	 * for, and stays the same for as long as the database exists.
+	 */
+	public String databaseID() {
+		jdbcClient.sql("INSERT INTO database_identity(id) SELECT CAST(? AS VARCHAR(36)) WHERE NOT EXISTS (SELECT 1 FROM database_identity)")
+				.params(UUID.randomUUID().toString())
+				.update();
+		// Servers starting at once may each insert their own, all of them agree on the least
+		return jdbcClient.sql("SELECT MIN(id) FROM database_identity")
+				.query(String.class)
+				.single();
+	}
 }
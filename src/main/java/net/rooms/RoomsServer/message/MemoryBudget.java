@@ -0,0 +1,94 @@
+package net.rooms.RoomsServer.message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-room state held in memory within a shared budget, see {@link RecentMessages} and
+ * {@link MessageIndex}.
+ * <br>
+ * Every entry reports the change of its estimated size through {@link #account}. Once the total
+ * exceeds the budget, the entries that were least recently accounted for are dropped until it no
+ * longer does. A dropped entry is marked as evicted while holding its monitor, so that its owner
+ * can tell that it is no longer part of the map or of the total.
+ *
+ * @param <E> The type of the entries.
+ */
+class MemoryBudget<E extends MemoryBudget.Entry> {
+	private final long budget;
+	private final Map<Long, E> entries = new ConcurrentHashMap<>(); // Room ID and its entry
+	private final AtomicLong bytes = new AtomicLong();
+	private final Object evictionLock = new Object();
+
+	/**
+	 * @param budget The maximum estimated size of all entries, in bytes.
+	 */
+	MemoryBudget(long budget) {
+		this.budget = budget;
+	}
+
+	E get(long roomID) {
+		return entries.get(roomID);
+	}
+
+	E computeIfAbsent(long roomID, Function<Long, E> create) {
+		return entries.computeIfAbsent(roomID, create);
+	}
+
+	/**
+	 * Marks the given entry as used, and adds the change of its size to the total.
+	 *
+	 * @param delta The change in size since the entry was last accounted for, zero if unchanged.
+	 */
+	void account(E entry, long delta) {
+		entry.lastAccess = System.nanoTime();
+		if (delta != 0 && bytes.addAndGet(delta) > budget) evict();
+	}
+
+	/**
+	 * @return The estimated size of all entries, in bytes.
+	 */
+	long bytes() {
+		return bytes.get();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Drops the least recently used entries until all entries fit in the budget.
+	 */
+	private void evict() {
+		synchronized (evictionLock) {
+			while (bytes.get() > budget && !entries.isEmpty()) {
+				Map.Entry<Long, E> idlest = null;
+				for (Map.Entry<Long, E> entry : entries.entrySet())
+					if (idlest == null || entry.getValue().lastAccess < idlest.getValue().lastAccess)
+						idlest = entry;
+				if (idlest == null || !entries.remove(idlest.getKey(), idlest.getValue())) continue;
+
+				E entry = idlest.getValue();
+				synchronized (entry) {
+					entry.evicted = true; // Threads holding it may still finish with it
+					bytes.addAndGet(-entry.counted());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The state of a single room. Subclasses guard their state with the monitor of the entry.
+	 */
+	abstract static class Entry {
+		volatile long lastAccess = System.nanoTime();
+		boolean evicted; // Dropped from the map, no longer counted against the budget
+
+		/**
+		 * @return The part of the size of the entry already added to the total.
+		 */
+		abstract long counted();
+	}
+}
@@ -3,29 +3,38 @@ package net.rooms.RoomsServer.message;
 import lombok.AllArgsConstructor;
 import net.rooms.RoomsServer.JSON;
 import net.rooms.RoomsServer.message.requests.MessageRequest;
+import net.rooms.RoomsServer.metrics.RelayMetrics;
 import net.rooms.RoomsServer.user.Participant;
 import net.rooms.RoomsServer.user.User;
 import net.rooms.RoomsServer.websocket.util.WSAuth;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @Controller
 @AllArgsConstructor
 public class MessageController {
+	private static final String NDJSON = "application/x-ndjson";
+
 	private final SimpMessagingTemplate template;
 	private final MessageService messageService;
 
 	/**
 	 * Accepts WS requests for posting a new message in a room.
-	 * Only requests with a valid session id that is associated with a user who is a participant in
+	 * Only requests from an authenticated user who is a participant in
 	 * the specified room would be honored.
 	 * <br>
 	 * The posted message may also represent a game lobby, in which case {@link Message#type()}
@@ -35,32 +44,95 @@ public class MessageController {
 	 * Sends a notification with the newly created message to all participants of the room, if the
 	 * request was successful, at "/queue/messages".
 	 *
-	 * @param json The payload containing the message and various other details. See
-	 *             {@link MessageRequest}.
+	 * @param json    The payload containing the message and various other details. See
+	 *                {@link MessageRequest}.
+	 * @param headers The headers of the frame, see {@link WSAuth}.
 	 */
 	@MessageMapping("/message")
-	public void processMessage(@Payload String json) {
+	public void processMessage(@Payload String json, SimpMessageHeaderAccessor headers) {
 		MessageRequest request = JSON.fromJson(json, MessageRequest.class);
-		User user = WSAuth.getUser(request);
+		User user = WSAuth.getUser(headers, request);
 
 		Message message = messageService.create(request, user);
 		if (message == Message.EMPTY) return;
 
 		String parsedMessage = JSON.toJson(message);
-		for (Participant participant : messageService.participants(request.roomID(), user.username()))
+		List<Participant> participants = messageService.participants(request.roomID(), user.username());
+		RelayMetrics.brokerFanOut(participants.size());
+		for (Participant participant : participants)
 			template.convertAndSendToUser(participant.username(), "/queue/messages", parsedMessage);
 	}
 
 	/**
 	 * Accepts REST API GET requests for the list of message of a given room.
 	 * Only logged-in users who are participants in the room may receive such a list.
+	 * <br>
+	 * The history is served in pages, ordered by message ID. Without a cursor the most recent
+	 * messages are returned. Older messages are requested with the ID of the first message of a
+	 * page as "before", and newer ones with the ID of the last message as "after".
+	 * For example: "messages/7?before=1024&limit=50".
 	 *
 	 * @param roomID The ID of the room from which the list is requested.
+	 * @param before Lists messages sent before the message with this ID, optional.
+	 * @param after  Lists messages sent after the message with this ID, optional.
+	 * @param limit  The maximum number of messages to list, see {@link MessageService#MAX_PAGE_SIZE}.
 	 * @param user   The currently logged-in user.
 	 * @return A list of the messages from the specified room.
 	 */
 	@GetMapping(path = "messages/{roomID}")
-	public ResponseEntity<List<Message>> list(@PathVariable("roomID") long roomID, @AuthenticationPrincipal User user) {
-		return ResponseEntity.ok(messageService.list(roomID, user));
+	public ResponseEntity<List<Message>> list(@PathVariable("roomID") long roomID,
+											  @RequestParam(name = "before", required = false) Long before,
+											  @RequestParam(name = "after", required = false) Long after,
+											  @RequestParam(name = "limit", required = false) Integer limit,
+											  @AuthenticationPrincipal User user) {
+		if (before != null && after != null) return ResponseEntity.badRequest().build();
+		int size = limit != null ? limit : MessageService.DEFAULT_PAGE_SIZE;
+		return ResponseEntity.ok(messageService.list(roomID, user, before, after, size));
+	}
+
+	/**
+	 * Accepts REST API GET requests to search the chat messages of a room.
+	 * Only logged-in users who are participants in the room may search it.
+	 * <br>
+	 * Finds the messages containing every word of the query, ignoring case, newest first. Older
+	 * matches are requested with the last ID of a page as "before".
+	 * For example: "messages/7/search?q=snakes%20tonight&before=1024&limit=50".
+	 *
+	 * @param roomID The ID of the room to search.
+	 * @param query  The words to search for.
+	 * @param before Finds messages sent before the message with this ID, optional.
+	 * @param limit  The maximum number of IDs to return, see {@link MessageService#MAX_PAGE_SIZE}.
+	 * @param user   The currently logged-in user.
+	 * @return The IDs of the matching messages, or 400 if the query is blank.
+	 */
+	@GetMapping(path = "messages/{roomID}/search")
+	public ResponseEntity<List<Long>> search(@PathVariable("roomID") long roomID,
+											 @RequestParam(name = "q") String query,
+											 @RequestParam(name = "before", required = false) Long before,
+											 @RequestParam(name = "limit", required = false) Integer limit,
+											 @AuthenticationPrincipal User user) {
+		if (query.isBlank()) return ResponseEntity.badRequest().build();
+		int size = limit != null ? limit : MessageService.DEFAULT_PAGE_SIZE;
+		return ResponseEntity.ok(messageService.search(roomID, user, query, before, size));
+	}
+
+	/**
+	 * Accepts REST API GET requests for the whole history of a room, for moderation and
+	 * analytics. Only participants in the room and admins may export it.
+	 * <br>
+	 * The history is streamed as newline delimited JSON (NDJSON), one {@link Message} per line in
+	 * ascending ID order, while it is read from the database.
+	 *
+	 * @param roomID The ID of the room to export.
+	 * @param user   The currently logged-in user.
+	 * @return The NDJSON stream, or 403 if the user may not export the room.
+	 */
+	@GetMapping(path = "messages/{roomID}/export", produces = NDJSON)
+	public ResponseEntity<StreamingResponseBody> export(@PathVariable("roomID") long roomID, @AuthenticationPrincipal User user) {
+		if (!messageService.canExport(roomID, user)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+		return ResponseEntity.ok()
+				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"room-" + roomID + ".ndjson\"")
+				.contentType(MediaType.parseMediaType(NDJSON))
+				.body(out -> messageService.export(roomID, out));
 	}
 }
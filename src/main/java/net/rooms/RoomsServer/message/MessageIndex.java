@@ -0,0 +1,415 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A full-text index of the chat messages of every room that was searched, held in memory.
+ * <br>
+ * The content of every {@link MessageType#MESSAGE} is split into terms, which are runs of letters
+ * and digits in lower case. Every term of a room maps to the IDs of the messages containing it, in
+ * ascending order. The IDs are stored as the differences between consecutive IDs, each written
+ * with as few bytes as it needs, so that a message usually costs a single byte per term. Every
+ * {@link Postings#BLOCK} IDs, the position of the next one is noted, so that a search decodes only
+ * the blocks it walks through, newest first, and stops once its page is full.
+ * <br>
+ * The index of a room is built from the database the first time the room is searched, and from
+ * then on new messages are added to it as they are created. Messages created while it is built are
+ * held back and added once it is done, so building does not block the relay.
+ * <br>
+ * All indexes share a memory budget. Once their estimated size exceeds it, the indexes of the
+ * rooms that were least recently used are dropped until it no longer does, see
+ * {@link MemoryBudget}.
+ */
+@Component
+public class MessageIndex {
+	private static final int MAX_TERM_LENGTH = 32; // Longer terms are cut, in messages and queries alike
+	private static final int TERM_OVERHEAD = 96; // Estimated bytes of a term besides its characters and postings
+
+	private final MessageRepository messageRepository;
+	private final MemoryBudget<RoomIndex> indexes;
+
+	public MessageIndex(MessageRepository messageRepository, MeterRegistry registry,
+						@Value("${rooms.messages.search.budget-bytes:33554432}") long budget) {
+		this.messageRepository = messageRepository;
+		this.indexes = new MemoryBudget<>(budget);
+
+		Gauge.builder("rooms.messages.search.bytes", indexes, MemoryBudget::bytes)
+				.description("Estimated memory held by the search indexes of all rooms")
+				.baseUnit("bytes")
+				.register(registry);
+		Gauge.builder("rooms.messages.search.rooms", indexes, MemoryBudget::size)
+				.description("Rooms whose search index is held in memory")
+				.register(registry);
+	}
+
+	/**
+	 * Finds the messages of a room that contain every term of the given query, newest first.
+	 * Builds the index of the room first if it is not held yet.
+	 *
+	 * @param roomID The room to search.
+	 * @param query  The terms to search for.
+	 * @param before Only messages with a smaller ID are found.
+	 * @param limit  The maximum number of IDs to return.
+	 * @return The IDs of the matching messages in descending order.
+	 */
+	public List<Long> search(long roomID, String query, long before, int limit) {
+		Set<String> terms = terms(query);
+		if (terms.isEmpty()) return new ArrayList<>();
+
+		RoomIndex index = indexes.computeIfAbsent(roomID, id -> new RoomIndex());
+		load(roomID, index);
+
+		List<Postings> postings = new ArrayList<>(terms.size());
+		List<Long> found;
+		long delta;
+		synchronized (index) {
+			for (String term : terms) {
+				Postings termPostings = index.terms.get(term);
+				if (termPostings == null) return new ArrayList<>();
+				postings.add(termPostings);
+			}
+			found = intersect(postings, before, limit);
+			delta = index.takeDelta();
+		}
+		indexes.account(index, delta);
+		return found;
+	}
+
+	/**
+	 * Adds a new message to the index of its room, unless it is held already. Has no effect if the
+	 * room was not searched yet, or if the message is not a chat message.
+	 */
+	public void add(Message message) {
+		if (message.type() != MessageType.MESSAGE) return;
+		RoomIndex index = indexes.get(message.roomID());
+		if (index == null) return;
+
+		long delta;
+		synchronized (index) {
+			if (index.loaded) index.add(message);
+			else index.pending.add(message);
+			delta = index.takeDelta();
+		}
+		indexes.account(index, delta);
+	}
+
+	/**
+	 * Removes a message that turned out not to be written to the database.
+	 */
+	public void remove(Message message) {
+		if (message.type() != MessageType.MESSAGE) return;
+		RoomIndex index = indexes.get(message.roomID());
+		if (index == null) return;
+
+		long delta;
+		synchronized (index) {
+			if (index.loaded) index.remove(message);
+			else index.pending.remove(message);
+			delta = index.takeDelta();
+		}
+		indexes.account(index, delta);
+	}
+
+	/**
+	 * Builds the index of a room from its history, unless it is built already. Other searches of
+	 * the room wait for the first one to build it, but new messages do not.
+	 */
+	private void load(long roomID, RoomIndex index) {
+		synchronized (index.loadLock) {
+			if (index.loaded) return;
+
+			RoomIndex built = new RoomIndex();
+			messageRepository.forEachInRoom(roomID, message -> {
+				if (message.type() == MessageType.MESSAGE) built.add(message);
+			});
+
+			long delta;
+			synchronized (index) {
+				index.terms = built.terms;
+				index.bytes += built.bytes;
+				for (Message message : index.pending)
+					index.add(message);
+				index.pending = null;
+				index.loaded = true;
+				delta = index.takeDelta();
+			}
+			indexes.account(index, delta);
+		}
+	}
+
+	/**
+	 * Intersects the given postings, walking the shortest one from the newest ID backwards a
+	 * block at a time, until the page is full.
+	 */
+	private static List<Long> intersect(List<Postings> postings, long before, int limit) {
+		postings.sort(Comparator.comparingInt(termPostings -> termPostings.count));
+		Postings shortest = postings.getFirst();
+
+		List<Long> found = new ArrayList<>(Math.min(limit, shortest.count));
+		long[] block = new long[Postings.BLOCK];
+		for (int b = shortest.blockOf(before); b >= 0 && found.size() < limit; b--) {
+			for (int i = shortest.decodeBlock(b, block) - 1; i >= 0 && found.size() < limit; i--) {
+				long id = block[i];
+				if (id >= before) continue;
+				boolean everywhere = true;
+				for (int j = 1; j < postings.size() && everywhere; j++)
+					everywhere = postings.get(j).contains(id);
+				if (everywhere) found.add(id);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Splits the given text into distinct terms, see {@link MessageIndex}.
+	 */
+	static Set<String> terms(String text) {
+		Set<String> terms = new LinkedHashSet<>();
+		if (text == null) return terms;
+
+		StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+		for (int i = 0; i <= text.length(); ) {
+			int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+			if (Character.isLetterOrDigit(codePoint)) {
+				if (term.length() < MAX_TERM_LENGTH) term.appendCodePoint(Character.toLowerCase(codePoint));
+			} else if (!term.isEmpty()) {
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+			i += Character.charCount(codePoint);
+		}
+		return terms;
+	}
+
+	/**
+	 * The terms of a single room and the messages containing them.
+	 */
+	private static class RoomIndex extends MemoryBudget.Entry {
+		final Object loadLock = new Object();
+		Map<String, Postings> terms = new HashMap<>();
+		List<Message> pending = new ArrayList<>(); // Created while the index is built
+		long bytes;
+		long counted; // The part of bytes already added to the total
+		boolean loaded;
+
+		@Override
+		long counted() {
+			return counted;
+		}
+
+		void add(Message message) {
+			for (String term : terms(message.content())) {
+				Postings postings = terms.get(term);
+				if (postings == null) {
+					postings = new Postings();
+					terms.put(term, postings);
+					bytes += TERM_OVERHEAD + 2L * term.length();
+				}
+				bytes -= postings.bytes();
+				postings.add(message.id());
+				bytes += postings.bytes();
+			}
+		}
+
+		void remove(Message message) {
+			for (String term : terms(message.content())) {
+				Postings postings = terms.get(term);
+				if (postings == null) continue;
+
+				bytes -= postings.bytes();
+				postings.remove(message.id());
+				bytes += postings.bytes();
+				if (postings.count == 0) {
+					terms.remove(term);
+					bytes -= TERM_OVERHEAD + 2L * term.length();
+				}
+			}
+		}
+
+		/**
+		 * @return The change in size since the last call, which is yet to be added to the total.
+		 * Evicted indexes are no longer part of the total.
+		 */
+		long takeDelta() {
+			if (evicted) return 0;
+			long delta = bytes - counted;
+			counted = bytes;
+			return delta;
+		}
+	}
+
+	/**
+	 * The ascending IDs of the messages containing a term, stored as variable length differences.
+	 * Every byte holds seven bits of a difference, and its high bit is set if more bytes follow.
+	 * <br>
+	 * The IDs are split into blocks of {@link #BLOCK} IDs. For every block, the ID before its
+	 * first one and the position of its first byte are kept, so that any block can be decoded on
+	 * its own.
+	 */
+	static class Postings {
+		static final int BLOCK = 64;
+
+		byte[] data = new byte[4];
+		int length;
+		int count;
+		long last; // The greatest ID held
+		long[] blockBases = new long[1]; // The ID before the first ID of every block
+		int[] blockStarts = new int[1]; // The position of the first byte of every block
+
+		void add(long id) {
+			if (count > 0 && id <= last) { // Messages are almost always indexed in ID order
+				if (contains(id)) return; // Added again once written, see MessageWriter
+				long[] ids = decode();
+				int position = -Arrays.binarySearch(ids, id) - 1;
+
+				long[] inserted = new long[ids.length + 1];
+				System.arraycopy(ids, 0, inserted, 0, position);
+				inserted[position] = id;
+				System.arraycopy(ids, position, inserted, position + 1, ids.length - position);
+				encode(inserted, inserted.length);
+				return;
+			}
+			append(id);
+		}
+
+		void remove(long id) {
+			long[] ids = decode();
+			int index = Arrays.binarySearch(ids, id);
+			if (index < 0) return;
+
+			System.arraycopy(ids, index + 1, ids, index, ids.length - index - 1);
+			encode(ids, ids.length - 1);
+		}
+
+		boolean contains(long id) {
+			if (count == 0 || id > last) return false;
+
+			// Decodes the block that may hold the ID up to the ID, without copying it out
+			int block = blockOf(id);
+			int position = blockStarts[block];
+			long current = blockBases[block];
+			for (int i = Math.min(BLOCK, count - block * BLOCK); i > 0; i--) {
+				long difference = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					difference |= (long) (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				current += difference;
+				if (current >= id) return current == id;
+			}
+			return false;
+		}
+
+		/**
+		 * @return The block that holds the given ID if it is held, or the last block with smaller
+		 * IDs otherwise. Zero if there are no blocks.
+		 */
+		int blockOf(long id) {
+			int blocks = blocks();
+			int low = 1;
+			int high = blocks - 1;
+			while (low <= high) { // Finds the last block whose base is smaller than the ID
+				int middle = (low + high) >>> 1;
+				if (blockBases[middle] < id) low = middle + 1;
+				else high = middle - 1;
+			}
+			return low - 1;
+		}
+
+		/**
+		 * Decodes a single block.
+		 *
+		 * @param block The number of the block, see {@link #blockOf}.
+		 * @param into  Receives the IDs of the block, must hold {@link #BLOCK} IDs.
+		 * @return The number of IDs decoded.
+		 */
+		int decodeBlock(int block, long[] into) {
+			if (block >= blocks()) return 0;
+			int size = Math.min(BLOCK, count - block * BLOCK);
+			decode(blockStarts[block], blockBases[block], size, into);
+			return size;
+		}
+
+		long[] decode() {
+			long[] ids = new long[count];
+			decode(0, 0, count, ids);
+			return ids;
+		}
+
+		/**
+		 * @return The estimated memory held, in bytes.
+		 */
+		long bytes() {
+			return data.length + (long) blockBases.length * (Long.BYTES + Integer.BYTES);
+		}
+
+		private int blocks() {
+			return (count + BLOCK - 1) / BLOCK;
+		}
+
+		private void decode(int position, long id, int size, long[] into) {
+			for (int i = 0; i < size; i++) {
+				long difference = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					difference |= (long) (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				id += difference;
+				into[i] = id;
+			}
+		}
+
+		private void encode(long[] ids, int size) {
+			data = new byte[Math.max(4, size * 2)];
+			length = 0;
+			count = 0;
+			last = 0;
+			int blocks = Math.max(1, (size + BLOCK - 1) / BLOCK);
+			blockBases = new long[blocks];
+			blockStarts = new int[blocks];
+			for (int i = 0; i < size; i++)
+				append(ids[i]);
+		}
+
+		private void append(long id) {
+			if (count % BLOCK == 0) {
+				int block = count / BLOCK;
+				if (block == blockBases.length) {
+					blockBases = Arrays.copyOf(blockBases, block * 2);
+					blockStarts = Arrays.copyOf(blockStarts, block * 2);
+				}
+				blockBases[block] = last;
+				blockStarts[block] = length;
+			}
+
+			long difference = id - last;
+			int size = (64 - Long.numberOfLeadingZeros(difference | 1) + 6) / 7;
+			if (length + size > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + size));
+			while ((difference & ~0x7FL) != 0) {
+				data[length++] = (byte) ((difference & 0x7F) | 0x80);
+				difference >>>= 7;
+			}
+			data[length++] = (byte) difference;
+			last = id;
+			count++;
+		}
+	}
+}
@@ -1,11 +1,70 @@
 package net.rooms.RoomsServer.message;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MessageRepository {
 	boolean create(Message message);
+
+	/**
+	 * Inserts all given messages in a single batch, within one transaction. If any of them cannot
+	 * be inserted, the batch fails with an exception and none of them are. Messages the database
+	 * reports as not inserted without failing the batch are returned.
+	 *
+	 * @return The messages that were not inserted, empty if every message was inserted.
+	 */
+	List<Message> createAll(List<Message> messages);
 	boolean update(Message message);
 	Message get(long id);
 	long lastID();
 	List<Message> listByRoom(long roomID);
+
+	/**
+	 * Lists the most recent messages of a room that were sent before the given message.
+	 *
+	 * @param roomID The room to list messages from.
+	 * @param before Only messages with a smaller ID are listed.
+	 * @param limit  The maximum number of messages to list.
+	 * @return The messages, in ascending ID order.
+	 */
+	List<Message> listBefore(long roomID, long before, int limit);
+
+	/**
+	 * Lists the earliest messages of a room that were sent after the given message.
+	 *
+	 * @param roomID The room to list messages from.
+	 * @param after  Only messages with a greater ID are listed.
+	 * @param limit  The maximum number of messages to list.
+	 * @return The messages, in ascending ID order.
+	 */
+	List<Message> listAfter(long roomID, long after, int limit);
+
+	/**
+	 * Reads every message of a room in ascending ID order, one page at a time, without holding
+	 * them all in memory. See {@link #forEachInRoom(long, int, Consumer)}.
+	 *
+	 * @param roomID   The room to read messages from.
+	 * @param consumer Called with every message, in order.
+	 */
+	void forEachInRoom(long roomID, Consumer<Message> consumer);
+
+	/**
+	 * Reads every message of a room in ascending ID order, one page at a time through
+	 * {@link #listAfter}. Every page is a query of its own, so no database connection is held
+	 * while the consumer runs, however slow it is.
+	 *
+	 * @param roomID   The room to read messages from.
+	 * @param pageSize The number of messages read with every query.
+	 * @param consumer Called with every message, in order.
+	 */
+	default void forEachInRoom(long roomID, int pageSize, Consumer<Message> consumer) {
+		long after = Long.MIN_VALUE;
+		while (true) {
+			List<Message> page = listAfter(roomID, after, pageSize);
+			for (Message message : page)
+				consumer.accept(message);
+			if (page.size() < pageSize) return;
+			after = page.get(page.size() - 1).id();
+		}
+	}
 }
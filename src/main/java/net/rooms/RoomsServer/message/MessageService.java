@@ -1,13 +1,23 @@
 package net.rooms.RoomsServer.message;
 
 import lombok.AllArgsConstructor;
+import net.rooms.RoomsServer.JSON;
 import net.rooms.RoomsServer.game.GameService;
 import net.rooms.RoomsServer.message.requests.MessageRequest;
 import net.rooms.RoomsServer.room.RoomRepository;
 import net.rooms.RoomsServer.user.Participant;
 import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.user.UserRole;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,10 +25,15 @@ import java.util.List;
 @Service
 @AllArgsConstructor
 public class MessageService {
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	public static final int MAX_PAGE_SIZE = 200;
 
 	private final MessageRepository messageRepository;
 	private final RoomRepository roomRepository;
 	private final GameService gameService;
+	private final MessageWriter messageWriter;
+	private final RecentMessages recentMessages;
+	private final MessageIndex messageIndex;
 
 	public Message create(MessageRequest request, User user) {
 		if (!roomRepository.isParticipant(request.roomID(), user.username())) return Message.EMPTY;
@@ -26,7 +41,11 @@ public class MessageService {
 		long id = messageRepository.lastID();
 		Message message = new Message(id, request.roomID(), request.type(), user.username(), request.content(), LocalDateTime.now());
 		if (!gameService.handle(message)) return Message.EMPTY;
-		if (!messageRepository.create(message)) return Message.EMPTY;
+		if (message.type() != MessageType.MESSAGE || !messageWriter.isEnabled() || !messageWriter.write(message)) {
+			if (!messageRepository.create(message)) return Message.EMPTY;
+		} // Otherwise, written in the background and the sender is notified once it is
+		recentMessages.put(message);
+		messageIndex.add(message);
 		return message;
 	}
 
@@ -36,9 +55,82 @@ public class MessageService {
 		return roomRepository.listParticipants(roomID);
 	}
 
-	public List<Message> list(long roomID, User user) {
+	/**
+	 * Lists a page of the message history of a room. Without a cursor, the most recent messages
+	 * are listed.
+	 *
+	 * @param roomID The room to list messages from.
+	 * @param user   The user requesting the list, must be a participant in the room.
+	 * @param before A message ID, only messages sent before it are listed. May be null.
+	 * @param after  A message ID, only messages sent after it are listed. Ignored if before is
+	 *               set. May be null.
+	 * @param limit  The requested page size, clamped to {@link #MAX_PAGE_SIZE}.
+	 * @return The messages in ascending ID order, with game messages in their latest state.
+	 */
+	public List<Message> list(long roomID, User user, @Nullable Long before, @Nullable Long after, int limit) {
 		if (!roomRepository.isParticipant(roomID, user.username())) return new ArrayList<>();
 
-		return messageRepository.listByRoom(roomID);
+		int size = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+		List<Message> messages = recentMessages.list(roomID, before, after, size);
+		if (messages == null) {
+			messages = before == null && after != null
+					? messageRepository.listAfter(roomID, after, size)
+					: messageRepository.listBefore(roomID, before != null ? before : Long.MAX_VALUE, size);
+		}
+		return gameService.overlay(messages);
+	}
+
+	/**
+	 * Searches the chat messages of a room for the given terms, see {@link MessageIndex}.
+	 *
+	 * @param roomID The room to search.
+	 * @param user   The user searching, must be a participant in the room.
+	 * @param query  The terms every message found must contain.
+	 * @param before A message ID, only messages sent before it are found. May be null.
+	 * @param limit  The requested page size, clamped to {@link #MAX_PAGE_SIZE}.
+	 * @return The IDs of the matching messages, newest first.
+	 */
+	public List<Long> search(long roomID, User user, String query, @Nullable Long before, int limit) {
+		if (!roomRepository.isParticipant(roomID, user.username())) return new ArrayList<>();
+
+		int size = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+		return messageIndex.search(roomID, query, before != null ? before : Long.MAX_VALUE, size);
+	}
+
+	/**
+	 * @return True if the given user may export the whole history of the room, which is the case
+	 * for its participants and for admins.
+	 */
+	public boolean canExport(long roomID, User user) {
+		return user.role() == UserRole.ADMIN || roomRepository.isParticipant(roomID, user.username());
+	}
+
+	/**
+	 * Writes every message of a room as newline delimited JSON, one message per line in ascending
+	 * ID order. Messages are read from the database a page at a time and written one at a time,
+	 * so memory use does not depend on the size of the room, and no connection is held while
+	 * writing to a slow client.
+	 *
+	 * @param roomID The room to export.
+	 * @param out    The stream to write to. It is flushed, but not closed.
+	 */
+	public void export(long roomID, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		StringBuilder line = new StringBuilder(256);
+		try {
+			messageRepository.forEachInRoom(roomID, message -> {
+				line.setLength(0);
+				JSON.toJson(gameService.overlay(message), line);
+				line.append('\n');
+				try {
+					writer.append(line);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause(); // The client went away, no more pages are read
+		}
+		writer.flush();
 	}
 }
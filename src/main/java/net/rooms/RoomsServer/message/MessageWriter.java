@@ -0,0 +1,167 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.message.notifications.PersistedNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes chat messages to the database in batches, off the thread that relays them.
+ * <br>
+ * When enabled, {@link MessageService} notifies the participants of a room about a new chat
+ * message right away and queues it here. A single writer thread collects queued messages until
+ * either the batch is full or the first message of the batch has waited for the flush interval,
+ * and inserts the whole batch in one transaction. Once the batch is written, the sender of every
+ * message is notified at "/queue/messages/ack" with a {@link PersistedNotification}.
+ * <br>
+ * Queued messages are already part of the {@link RecentMessages} and the {@link MessageIndex} of
+ * their room. Written messages are added again, in case either was loaded from the database
+ * before the message was written, and messages that cannot be written are removed again.
+ * <br>
+ * If a batch fails, its messages are retried one by one so that a single bad message does not
+ * take the others with it. Game lobby messages are always written right away, since their rows
+ * are updated by the {@link net.rooms.RoomsServer.game.GameStateWriter} later on.
+ */
+@Slf4j
+@Component
+public class MessageWriter {
+	public static final String ACK_DESTINATION = "/queue/messages/ack";
+
+	private final MessageRepository messageRepository;
+	private final RecentMessages recentMessages;
+	private final MessageIndex messageIndex;
+	private final SimpMessagingTemplate template;
+	private final boolean enabled;
+	private final long flushNanos;
+	private final int batchSize;
+	private final BlockingQueue<Message> queue;
+	private final DistributionSummary batches;
+	private final Thread writer;
+	private volatile boolean running = true;
+
+	public MessageWriter(MessageRepository messageRepository, RecentMessages recentMessages,
+						 MessageIndex messageIndex, SimpMessagingTemplate template, MeterRegistry registry,
+						 @Value("${rooms.messages.async.enabled:false}") boolean enabled,
+						 @Value("${rooms.messages.async.flush-ms:5}") long flushMs,
+						 @Value("${rooms.messages.async.batch-size:64}") int batchSize,
+						 @Value("${rooms.messages.async.capacity:8192}") int capacity) {
+		this.messageRepository = messageRepository;
+		this.recentMessages = recentMessages;
+		this.messageIndex = messageIndex;
+		this.template = template;
+		this.enabled = enabled;
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMs);
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batches = DistributionSummary.builder("rooms.messages.batch")
+				.description("Chat messages written to the database in a single batch")
+				.register(registry);
+
+		writer = new Thread(this::run, "message-writer");
+		writer.setDaemon(true);
+		if (enabled) writer.start();
+	}
+
+	/**
+	 * @return True if chat messages are written asynchronously.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Queues the given message to be written with the next batch.
+	 *
+	 * @return False if the queue is full, in which case the caller should write the message
+	 * itself.
+	 */
+	public boolean write(Message message) {
+		return running && queue.offer(message);
+	}
+
+	private void run() {
+		List<Message> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) continue;
+				batch.add(first);
+
+				long deadline = System.nanoTime() + flushNanos;
+				while (batch.size() < batchSize) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) break;
+					Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) break;
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				running = false; // Write what is left, then stop
+			}
+
+			if (!batch.isEmpty()) flush(batch);
+			batch.clear();
+		}
+	}
+
+	private void flush(List<Message> batch) {
+		batches.record(batch.size());
+		try {
+			List<Message> failed = messageRepository.createAll(batch);
+			if (!failed.isEmpty()) log.error("Failed to write {} of a batch of {} messages", failed.size(), batch.size());
+			for (Message message : batch)
+				acknowledge(message, !failed.contains(message));
+		} catch (RuntimeException e) {
+			log.warn("Failed to write a batch of {} messages, writing them one by one", batch.size(), e);
+			for (Message message : batch)
+				acknowledge(message, createOne(message));
+		}
+	}
+
+	private boolean createOne(Message message) {
+		try {
+			return messageRepository.create(message);
+		} catch (RuntimeException e) {
+			log.error("Failed to write message {}", message.id(), e);
+			return false;
+		}
+	}
+
+	private void acknowledge(Message message, boolean persisted) {
+		// The recent messages of the room may have been reloaded while the message was queued
+		if (persisted) {
+			recentMessages.put(message);
+			messageIndex.add(message); // The index may have been built from the database meanwhile
+		} else {
+			recentMessages.remove(message);
+			messageIndex.remove(message);
+		}
+
+		String notification = JSON.toJson(new PersistedNotification(message.id(), message.roomID(), persisted));
+		try {
+			template.convertAndSendToUser(message.sender(), ACK_DESTINATION, notification);
+		} catch (RuntimeException e) {
+			log.debug("Failed to acknowledge message {}", message.id(), e); // The broker may be stopping
+		}
+	}
+
+	/**
+	 * Writes everything still queued before shutting down.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		if (enabled) writer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+}
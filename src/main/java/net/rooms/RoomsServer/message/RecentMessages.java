@@ -0,0 +1,260 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent messages of every active room in memory, so that the history most clients
+ * ask for is served without a query.
+ * <br>
+ * Every room has a ring of up to a fixed number of messages, ordered by ID. A ring is loaded from
+ * the database the first time the history of its room is read, and from then on new messages are
+ * added to it as they are created, and game messages are replaced as their lobby changes. A ring
+ * holds every message of its room from its oldest message onward, so any page that lies within
+ * the ring is served from it. Pages reaching further back are read from the database.
+ * <br>
+ * All rings share a memory budget. Once the estimated size of all rings exceeds it, the rings of
+ * the rooms that were least recently used are dropped until it no longer does, see
+ * {@link MemoryBudget}.
+ */
+@Component
+public class RecentMessages {
+	private static final int MESSAGE_OVERHEAD = 160; // Estimated bytes of a message besides its strings
+
+	private final MessageRepository messageRepository;
+	private final int capacity;
+	private final MemoryBudget<Ring> rings;
+	private final Counter hits;
+	private final Counter misses;
+
+	public RecentMessages(MessageRepository messageRepository, MeterRegistry registry,
+						  @Value("${rooms.messages.recent.capacity:100}") int capacity,
+						  @Value("${rooms.messages.recent.budget-bytes:33554432}") long budget) {
+		this.messageRepository = messageRepository;
+		this.capacity = capacity;
+		this.rings = new MemoryBudget<>(budget);
+
+		Gauge.builder("rooms.messages.recent.bytes", rings, MemoryBudget::bytes)
+				.description("Estimated memory held by the recent messages of all rooms")
+				.baseUnit("bytes")
+				.register(registry);
+		Gauge.builder("rooms.messages.recent.rooms", rings, MemoryBudget::size)
+				.description("Rooms whose recent messages are held in memory")
+				.register(registry);
+		hits = Counter.builder("rooms.messages.recent.reads").tag("result", "hit").register(registry);
+		misses = Counter.builder("rooms.messages.recent.reads").tag("result", "miss").register(registry);
+	}
+
+	/**
+	 * Lists a page of the history of a room from memory, loading the recent messages of the room
+	 * first if they are not held yet. See {@link MessageRepository#listBefore} and
+	 * {@link MessageRepository#listAfter}.
+	 *
+	 * @param roomID The room to list messages from.
+	 * @param before Only messages with a smaller ID are listed. Ignored if null.
+	 * @param after  Only messages with a greater ID are listed, if before is null.
+	 * @param limit  The maximum number of messages to list.
+	 * @return The messages in ascending ID order, or null if the page is not held in memory.
+	 */
+	public @Nullable List<Message> list(long roomID, @Nullable Long before, @Nullable Long after, int limit) {
+		if (capacity == 0) return null;
+
+		Ring ring = rings.computeIfAbsent(roomID, id -> new Ring());
+		boolean loaded;
+		synchronized (ring) {
+			if (ring.evicted) return null; // Dropped while this thread was getting it
+			loaded = ring.loaded;
+		}
+		// Queried outside the ring, so that new messages of the room do not wait for the database
+		List<Message> recent = loaded ? null : messageRepository.listBefore(roomID, Long.MAX_VALUE, capacity);
+
+		List<Message> messages;
+		long delta;
+		synchronized (ring) {
+			if (ring.evicted) return null;
+			long size = ring.bytes;
+			if (recent != null && !ring.loaded) ring.load(recent); // Unless another thread was first
+			messages = ring.page(before, after, limit);
+			delta = ring.bytes - size;
+		}
+		rings.account(ring, delta);
+
+		(messages != null ? hits : misses).increment();
+		return messages;
+	}
+
+	/**
+	 * Adds a new message to the recent messages of its room, or replaces the message with the
+	 * same ID. Has no effect if the recent messages of the room are not held.
+	 */
+	public void put(Message message) {
+		Ring ring = rings.get(message.roomID());
+		if (ring == null) return;
+
+		long delta;
+		synchronized (ring) {
+			long size = ring.bytes;
+			ring.put(message);
+			delta = ring.bytes - size;
+		}
+		rings.account(ring, delta);
+	}
+
+	/**
+	 * Removes a message that turned out not to be written to the database.
+	 */
+	public void remove(Message message) {
+		Ring ring = rings.get(message.roomID());
+		if (ring == null) return;
+
+		long delta;
+		synchronized (ring) {
+			long size = ring.bytes;
+			ring.remove(message.id());
+			delta = ring.bytes - size;
+		}
+		rings.account(ring, delta);
+	}
+
+	private static long estimate(Message message) {
+		return MESSAGE_OVERHEAD + 2L * (message.content().length() + message.sender().length());
+	}
+
+	/**
+	 * The recent messages of a single room, in ascending ID order.
+	 */
+	private class Ring extends MemoryBudget.Entry {
+		final Message[] messages = new Message[capacity];
+		int head; // Index of the oldest message
+		int size;
+		long bytes;
+		boolean loaded;
+		boolean complete; // True if the ring holds every message of the room
+
+		@Override
+		long counted() {
+			return bytes; // Accounted for after every change
+		}
+
+		Message get(int index) {
+			return messages[(head + index) % capacity];
+		}
+
+		void set(int index, Message message) {
+			messages[(head + index) % capacity] = message;
+		}
+
+		/**
+		 * Merges the most recent messages of the room, as read from the database, with whatever
+		 * was added or replaced while they were read. Messages already held are newer than the
+		 * ones read and are kept. The ring was full if the database returned as many messages as
+		 * it can hold, so older ones may exist.
+		 */
+		void load(List<Message> recent) {
+			for (Message message : recent)
+				if (indexOf(message.id()) < 0) put(message);
+			complete = recent.size() < capacity && size < capacity;
+			loaded = true;
+		}
+
+		void put(Message message) {
+			if (evicted) return;
+
+			int index = indexOf(message.id());
+			if (index >= 0) {
+				bytes += estimate(message) - estimate(get(index));
+				set(index, message);
+				return;
+			}
+
+			if (size == capacity) {
+				if (message.id() < get(0).id()) return; // Older than anything held
+				bytes -= estimate(get(0));
+				messages[head] = null;
+				head = (head + 1) % capacity;
+				size--;
+				complete = false;
+			}
+
+			// Messages are created in ID order, so the new message almost always goes last
+			int position = size;
+			while (position > 0 && get(position - 1).id() > message.id()) {
+				set(position, get(position - 1));
+				position--;
+			}
+			set(position, message);
+			size++;
+			bytes += estimate(message);
+		}
+
+		void remove(long id) {
+			int index = indexOf(id);
+			if (index < 0 || evicted) return;
+
+			bytes -= estimate(get(index));
+			for (int i = index; i < size - 1; i++)
+				set(i, get(i + 1));
+			set(size - 1, null);
+			size--;
+		}
+
+		/**
+		 * Finds the message with the given ID by binary search.
+		 *
+		 * @return The index of the message, or -1 if it is not held.
+		 */
+		int indexOf(long id) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				long middleID = get(middle).id();
+				if (middleID < id) low = middle + 1;
+				else if (middleID > id) high = middle - 1;
+				else return middle;
+			}
+			return -1;
+		}
+
+		/**
+		 * @return The index of the first message with an ID greater than the given one.
+		 */
+		int firstAfter(long id) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (get(middle).id() <= id) low = middle + 1;
+				else high = middle;
+			}
+			return low;
+		}
+
+		@Nullable List<Message> page(@Nullable Long before, @Nullable Long after, int limit) {
+			int from;
+			int to;
+			if (before != null || after == null) {
+				to = before != null ? firstAfter(before - 1) : size; // Exclusive
+				from = Math.max(0, to - limit);
+				// Older messages than the oldest held may exist in the database
+				if (to - from < limit && !complete) return null;
+			} else {
+				if (!complete && (size == 0 || after < get(0).id())) return null;
+				from = firstAfter(after);
+				to = Math.min(size, from + limit);
+			}
+
+			List<Message> page = new ArrayList<>(to - from);
+			for (int i = from; i < to; i++)
+				page.add(get(i));
+			return page;
+		}
+	}
+}
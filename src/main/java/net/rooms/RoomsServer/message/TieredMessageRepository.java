@@ -0,0 +1,136 @@
+package net.rooms.RoomsServer.message;
+
+import net.rooms.RoomsServer.message.archive.MessageArchive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * The message repository the rest of the server uses, which stitches the archived history of a
+ * room together with the messages still in the database.
+ * <br>
+ * Every message of a room up to {@link MessageArchive#archivedThrough} is read from the archive,
+ * and every message after it from the database. Messages are only ever written to the database,
+ * see {@link net.rooms.RoomsServer.message.archive.MessageArchiver}. Archived messages can no
+ * longer be updated. A read that races with archiving is retried, so it neither misses nor
+ * repeats the messages that were moved.
+ */
+@Primary
+@Repository
+public class TieredMessageRepository implements MessageRepository {
+	private final JdbcMessageRepository database;
+	private final MessageArchive archive;
+	private final int pageSize;
+
+	public TieredMessageRepository(JdbcMessageRepository database, MessageArchive archive,
+								   @Value("${rooms.messages.export.page-size:500}") int pageSize) {
+		this.database = database;
+		this.archive = archive;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public boolean create(Message message) {
+		return database.create(message);
+	}
+
+	@Override
+	public List<Message> createAll(List<Message> messages) {
+		return database.createAll(messages);
+	}
+
+	@Override
+	public boolean update(Message message) {
+		return database.update(message);
+	}
+
+	@Override
+	public Message get(long id) {
+		try {
+			return database.get(id);
+		} catch (EmptyResultDataAccessException e) {
+			Message message = archive.find(id);
+			if (message == null) throw e;
+			return message;
+		}
+	}
+
+	@Override
+	public long lastID() {
+		return database.lastID();
+	}
+
+	@Override
+	public List<Message> listByRoom(long roomID) {
+		return consistent(roomID, through -> {
+			if (through < 0) return database.listByRoom(roomID);
+
+			List<Message> messages = new ArrayList<>();
+			archive.forEachInRoom(roomID, messages::add);
+			for (Message message : database.listByRoom(roomID))
+				if (message.id() > through) messages.add(message);
+			return messages;
+		});
+	}
+
+	@Override
+	public List<Message> listBefore(long roomID, long before, int limit) {
+		return consistent(roomID, through -> {
+			if (through < 0) return database.listBefore(roomID, before, limit);
+
+			List<Message> messages = new ArrayList<>(limit);
+			if (before > through + 1) {
+				for (Message message : database.listBefore(roomID, before, limit))
+					if (message.id() > through) messages.add(message); // Not deleted yet after archiving
+			}
+			if (messages.size() < limit) {
+				long archivedBefore = Math.min(before, through + 1);
+				messages.addAll(0, archive.listBefore(roomID, archivedBefore, limit - messages.size()));
+			}
+			return messages;
+		});
+	}
+
+	@Override
+	public List<Message> listAfter(long roomID, long after, int limit) {
+		return consistent(roomID, through -> {
+			if (through < 0 || after >= through) return database.listAfter(roomID, after, limit);
+
+			List<Message> messages = new ArrayList<>(archive.listAfter(roomID, after, limit));
+			if (messages.size() < limit) messages.addAll(database.listAfter(roomID, through, limit - messages.size()));
+			return messages;
+		});
+	}
+
+	@Override
+	public void forEachInRoom(long roomID, Consumer<Message> consumer) {
+		// Pages through listAfter, so that only the queries are timed by the database repository
+		forEachInRoom(roomID, pageSize, consumer);
+	}
+
+	/**
+	 * Reads the messages of a room split at {@link MessageArchive#archivedThrough}, and reads them
+	 * again if messages of the room were archived in the meantime. Those may have been deleted from
+	 * the database before it was read, or may have been read from both places.
+	 * <br>
+	 * Messages are only deleted from the database after they are archived, so the read is
+	 * consistent if nothing was archived from before it started until after it was done.
+	 *
+	 * @param read Reads the messages given the greatest archived ID, or -1 if none is archived.
+	 */
+	private <T> T consistent(long roomID, LongFunction<T> read) {
+		long through = archive.archivedThrough(roomID);
+		while (true) {
+			T result = read.apply(through);
+			long now = archive.archivedThrough(roomID);
+			if (now == through) return result;
+			through = now;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package net.rooms.RoomsServer.message.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import net.rooms.RoomsServer.message.JdbcMessageRepository;
+import net.rooms.RoomsServer.message.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Holds old messages outside the database, in append-only segment files with a directory per
+ * room. See {@link MessageArchiver} for how messages get there, and
+ * {@link net.rooms.RoomsServer.message.TieredMessageRepository} for how they are read back.
+ * <br>
+ * The messages of a room are always archived from its oldest message onward, so everything up to
+ * {@link #archivedThrough(long)} is archived, and everything after it is in the database.
+ * <br>
+ * The archive outlives the database when the database is not kept on disk, and IDs of rooms and
+ * messages start over with a new database. Every room directory therefore holds a
+ * {@link #DATABASE_FILE} naming the database its messages came from. The archive of a room is set
+ * aside, renamed but kept on disk, when it is opened and was written for another database, or when
+ * it holds IDs the database has not handed out yet.
+ */
+@Slf4j
+@Component
+public class MessageArchive {
+	static final String DATABASE_FILE = "database";
+
+	private final JdbcMessageRepository database;
+	private final Path root;
+	private final int segmentSize;
+	private final Map<Long, RoomArchive> rooms = new ConcurrentHashMap<>(); // Room ID and its archive
+	private volatile String databaseID; // Null until read
+
+	public MessageArchive(JdbcMessageRepository database,
+						  @Value("${rooms.messages.archive.directory:archive}") Path root,
+						  @Value("${rooms.messages.archive.segment-bytes:16777216}") int segmentSize) {
+		this.database = database;
+		this.root = root;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * @return The greatest archived message ID of the given room, or -1 if none of its messages
+	 * are archived.
+	 */
+	public long archivedThrough(long roomID) {
+		return room(roomID).archivedThrough();
+	}
+
+	/**
+	 * Appends messages to the archive of a room, and forces them to the disk.
+	 *
+	 * @param roomID   The room the messages belong to.
+	 * @param messages Messages in ascending ID order, all greater than {@link #archivedThrough}.
+	 */
+	public void append(long roomID, List<Message> messages) throws IOException {
+		RoomArchive archive = room(roomID);
+		Path marker = root.resolve(Long.toString(roomID)).resolve(DATABASE_FILE);
+		if (!Files.exists(marker)) {
+			Files.createDirectories(marker.getParent());
+			Files.writeString(marker, databaseID(), StandardCharsets.UTF_8);
+		}
+		archive.append(messages, segmentSize);
+	}
+
+	/**
+	 * See {@link net.rooms.RoomsServer.message.MessageRepository#listBefore}.
+	 */
+	public List<Message> listBefore(long roomID, long before, int limit) {
+		return room(roomID).listBefore(before, limit);
+	}
+
+	/**
+	 * See {@link net.rooms.RoomsServer.message.MessageRepository#listAfter}.
+	 */
+	public List<Message> listAfter(long roomID, long after, int limit) {
+		return room(roomID).listAfter(after, limit);
+	}
+
+	/**
+	 * See {@link net.rooms.RoomsServer.message.MessageRepository#forEachInRoom}.
+	 */
+	public void forEachInRoom(long roomID, Consumer<Message> consumer) {
+		room(roomID).forEach(consumer);
+	}
+
+	/**
+	 * @return The archived message of the given room with the given ID, or null if it is not
+	 * archived.
+	 */
+	public @Nullable Message find(long roomID, long id) {
+		return room(roomID).find(id);
+	}
+
+	/**
+	 * Finds an archived message without knowing its room, by looking through the archive of
+	 * every room. Meant for rare lookups only.
+	 *
+	 * @return The message, or null if it is not archived.
+	 */
+	public @Nullable Message find(long id) {
+		if (!Files.isDirectory(root)) return null;
+
+		List<Path> directories;
+		try (Stream<Path> files = Files.list(root)) {
+			directories = files.filter(Files::isDirectory).toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (Path directory : directories) {
+			long roomID;
+			try {
+				roomID = Long.parseLong(directory.getFileName().toString());
+			} catch (NumberFormatException e) {
+				continue; // Not a room
+			}
+			Message message = room(roomID).find(id);
+			if (message != null) return message;
+		}
+		return null;
+	}
+
+	private RoomArchive room(long roomID) {
+		RoomArchive archive = rooms.get(roomID);
+		if (archive != null) return archive;
+
+		return rooms.computeIfAbsent(roomID, id -> {
+			try {
+				return open(id);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to open the archive of room " + id, e);
+			}
+		});
+	}
+
+	/**
+	 * Opens the archive of a room, after setting it aside if it does not belong to the database.
+	 */
+	private RoomArchive open(long roomID) throws IOException {
+		Path directory = root.resolve(Long.toString(roomID));
+		if (!Files.isDirectory(directory)) return RoomArchive.open(directory, roomID);
+
+		Path marker = directory.resolve(DATABASE_FILE);
+		String reason = null;
+		if (!Files.exists(marker) || !Files.readString(marker, StandardCharsets.UTF_8).equals(databaseID())) {
+			reason = "it was written for another database";
+		} else {
+			RoomArchive archive = RoomArchive.open(directory, roomID);
+			if (archive.archivedThrough() < database.idCeiling()) return archive;
+			reason = "it holds message IDs the database has not handed out yet";
+		}
+
+		Path aside = root.resolve(roomID + ".stale-" + System.currentTimeMillis());
+		log.warn("Setting the archive of room {} aside as {}, since {}", roomID, aside, reason);
+		Files.move(directory, aside);
+		return RoomArchive.open(directory, roomID);
+	}
+
+	private String databaseID() {
+		String databaseID = this.databaseID;
+		if (databaseID == null) this.databaseID = databaseID = database.databaseID();
+		return databaseID;
+	}
+}
@@ -0,0 +1,116 @@
+package net.rooms.RoomsServer.message.archive;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.rooms.RoomsServer.message.JdbcMessageRepository;
+import net.rooms.RoomsServer.message.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves messages older than a configurable age from the database to the {@link MessageArchive},
+ * periodically and in the background.
+ * <br>
+ * Every room is archived from its oldest message up to the first message that is not old enough,
+ * in batches. A batch is first appended to the archive and forced to the disk, and only then its
+ * messages are deleted from the database, by ID. If the server stops in between, the messages are
+ * in both places, and are deleted from the database on the next run, once they are found in the
+ * archive as they are in the database. Until then, reads ignore them there.
+ * <br>
+ * Game lobby messages are archived like any other message once they are old enough. A lobby
+ * that is still open by then can no longer be updated.
+ */
+@Slf4j
+@Component
+public class MessageArchiver {
+	private final JdbcMessageRepository messageRepository;
+	private final MessageArchive archive;
+	private final Duration maxAge;
+	private final int batchSize;
+	private final Counter archived;
+	private final ScheduledThreadPoolExecutor executor;
+
+	public MessageArchiver(JdbcMessageRepository messageRepository, MessageArchive archive, MeterRegistry registry,
+						   @Value("${rooms.messages.archive.enabled:false}") boolean enabled,
+						   @Value("${rooms.messages.archive.max-age:30d}") Duration maxAge,
+						   @Value("${rooms.messages.archive.interval-ms:3600000}") long interval,
+						   @Value("${rooms.messages.archive.batch-size:1000}") int batchSize) {
+		this.messageRepository = messageRepository;
+		this.archive = archive;
+		this.maxAge = maxAge;
+		this.batchSize = batchSize;
+		this.archived = Counter.builder("rooms.messages.archived")
+				.description("Messages moved from the database to the archive")
+				.register(registry);
+		this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "message-archiver");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (enabled) executor.scheduleWithFixedDelay(this::archive, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Archives the old messages of every room.
+	 */
+	public void archive() {
+		LocalDateTime cutoff = LocalDateTime.now().minus(maxAge);
+		try {
+			for (long roomID : messageRepository.listRoomsWithMessagesBefore(cutoff))
+				archive(roomID, cutoff);
+		} catch (RuntimeException | IOException e) {
+			log.error("Failed to archive messages", e); // Retried with the next run
+		}
+	}
+
+	private void archive(long roomID, LocalDateTime cutoff) throws IOException {
+		long through = archive.archivedThrough(roomID);
+		if (through >= 0) deleteArchived(roomID, through); // Left over from an earlier run
+
+		List<Message> batch;
+		do {
+			batch = messageRepository.listOlderThan(roomID, through, cutoff, batchSize);
+			if (batch.isEmpty()) break;
+
+			archive.append(roomID, batch);
+			through = batch.getLast().id();
+			messageRepository.deleteAll(roomID, batch.stream().map(Message::id).toList());
+			archived.increment(batch.size());
+		} while (batch.size() == batchSize);
+	}
+
+	/**
+	 * Deletes the messages of a room up to the given ID from the database, if they are archived.
+	 */
+	private void deleteArchived(long roomID, long through) {
+		List<Long> archivedIDs = new ArrayList<>();
+		long after = Long.MIN_VALUE;
+		List<Message> page;
+		do {
+			page = messageRepository.listAfter(roomID, after, batchSize);
+			for (Message message : page) {
+				if (message.id() > through) break;
+				if (message.equals(archive.find(roomID, message.id()))) archivedIDs.add(message.id());
+				else log.warn("Message {} of room {} is not archived as it is stored, keeping it", message.id(), roomID);
+			}
+			if (!page.isEmpty()) after = page.getLast().id();
+		} while (page.size() == batchSize && after < through);
+
+		if (!archivedIDs.isEmpty()) messageRepository.deleteAll(roomID, archivedIDs);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,167 @@
+package net.rooms.RoomsServer.message.archive;
+
+import net.rooms.RoomsServer.message.Message;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The archived messages of a single room, kept as a directory of {@link Segment}s named after the
+ * ID of their first message. Only the last segment is ever appended to, until it grows past the
+ * segment size, at which point a new one is started.
+ * <br>
+ * Any number of threads may read the archive at once, while appending excludes all of them. Files
+ * in the directory whose names are not a message ID are ignored.
+ */
+class RoomArchive {
+	private static final int FOR_EACH_PAGE = 256;
+
+	private final Path directory;
+	private final long roomID;
+	private final List<Segment> segments = new ArrayList<>(); // In ascending ID order
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile long archivedThrough = -1;
+
+	private RoomArchive(Path directory, long roomID) {
+		this.directory = directory;
+		this.roomID = roomID;
+	}
+
+	/**
+	 * Opens the archive in the given directory, which does not have to exist yet.
+	 */
+	static RoomArchive open(Path directory, long roomID) throws IOException {
+		RoomArchive archive = new RoomArchive(directory, roomID);
+		if (!Files.isDirectory(directory)) return archive;
+
+		List<Path> paths;
+		try (Stream<Path> files = Files.list(directory)) {
+			paths = files.filter(path -> path.getFileName().toString().endsWith(Segment.EXTENSION)).toList();
+		}
+		for (Path path : paths) {
+			String name = path.getFileName().toString();
+			long firstID;
+			try {
+				firstID = Long.parseLong(name.substring(0, name.length() - Segment.EXTENSION.length()));
+			} catch (NumberFormatException e) {
+				continue; // Not a segment
+			}
+			archive.segments.add(Segment.open(path, roomID, firstID));
+		}
+		archive.segments.sort(Comparator.comparingLong(segment -> segment.firstID));
+		for (Segment segment : archive.segments)
+			archive.archivedThrough = Math.max(archive.archivedThrough, segment.lastID());
+		return archive;
+	}
+
+	/**
+	 * @return The greatest ID archived, or -1 if nothing is. Every message of the room up to this
+	 * ID is in the archive.
+	 */
+	long archivedThrough() {
+		return archivedThrough;
+	}
+
+	/**
+	 * Appends the given messages, which must have greater IDs than all archived messages.
+	 *
+	 * @param segmentSize The size in bytes after which a new segment is started.
+	 */
+	void append(List<Message> messages, int segmentSize) throws IOException {
+		if (messages.isEmpty()) return;
+
+		lock.writeLock().lock();
+		try {
+			Segment last = segments.isEmpty() ? null : segments.getLast();
+			if (last == null || last.size() >= segmentSize) {
+				Files.createDirectories(directory);
+				long firstID = messages.getFirst().id();
+				last = Segment.open(directory.resolve(String.format("%020d", firstID) + Segment.EXTENSION), roomID, firstID);
+				segments.add(last);
+			}
+			last.append(messages);
+			archivedThrough = messages.getLast().id();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Up to the given number of the archived messages right before the given ID, in
+	 * ascending order.
+	 */
+	List<Message> listBefore(long before, int limit) {
+		lock.readLock().lock();
+		try {
+			List<Message> messages = new ArrayList<>();
+			for (int i = segments.size() - 1; i >= 0 && messages.size() < limit; i--) {
+				Segment segment = segments.get(i);
+				if (segment.firstID >= before) continue;
+				messages.addAll(0, segment.listBefore(before, limit - messages.size()));
+			}
+			return messages;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Up to the given number of the archived messages right after the given ID, in
+	 * ascending order.
+	 */
+	List<Message> listAfter(long after, int limit) {
+		lock.readLock().lock();
+		try {
+			List<Message> messages = new ArrayList<>();
+			for (Segment segment : segments) {
+				if (messages.size() >= limit) break;
+				if (segment.lastID() <= after) continue;
+				messages.addAll(segment.listAfter(after, limit - messages.size()));
+			}
+			return messages;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Passes every archived message to the given consumer, in ascending order. The messages are
+	 * read a page at a time, and the lock is not held while the consumer runs, so that a slow
+	 * consumer does not hold up appending.
+	 */
+	void forEach(Consumer<Message> consumer) {
+		long after = Long.MIN_VALUE;
+		List<Message> page;
+		do {
+			page = listAfter(after, FOR_EACH_PAGE);
+			for (Message message : page)
+				consumer.accept(message);
+			if (!page.isEmpty()) after = page.getLast().id();
+		} while (page.size() == FOR_EACH_PAGE);
+	}
+
+	/**
+	 * @return The archived message with the given ID, or null if it is not archived.
+	 */
+	@Nullable Message find(long id) {
+		lock.readLock().lock();
+		try {
+			for (int i = segments.size() - 1; i >= 0; i--) {
+				Segment segment = segments.get(i);
+				if (segment.firstID <= id) return segment.find(id);
+			}
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
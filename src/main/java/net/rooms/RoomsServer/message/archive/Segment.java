@@ -0,0 +1,261 @@
+package net.rooms.RoomsServer.message.archive;
+
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single append-only file of archived messages of a room, in ascending ID order.
+ * <br>
+ * Every record is the length of the message, the message itself and the length once more, so
+ * that the file can be walked in both directions. A message is its ID, the ordinal of its type,
+ * its send date as seconds and nanoseconds, and its sender and content as UTF-8.
+ * <br>
+ * The file is read and written through a memory mapping, which is doubled in size whenever an
+ * append does not fit, rather than mapped again with every append. The file is extended with the
+ * mapping, so it ends in zeros until it is opened again. Every {@link #INDEX_INTERVAL}th record is
+ * noted in a sparse index of IDs and offsets, which is rebuilt whenever the file is opened, so a
+ * message is found by a binary search followed by a short scan. A record that was only partly
+ * written when the server stopped is cut off when the file is opened, and so are the zeros.
+ * <br>
+ * Segments are not thread safe, see {@link RoomArchive}.
+ */
+class Segment {
+	static final String EXTENSION = ".seg";
+	private static final int INDEX_INTERVAL = 64;
+	private static final int MIN_CAPACITY = 64 * 1024;
+	private static final int NO_DATE = -1;
+
+	final Path path;
+	final long roomID;
+	final long firstID;
+	private long lastID = -1;
+	private int size; // Bytes of complete records, the mapping may be larger
+	private int records;
+	private long[] indexIDs = new long[16];
+	private int[] indexOffsets = new int[16];
+	private int indexSize;
+	private MappedByteBuffer map;
+
+	private Segment(Path path, long roomID, long firstID) {
+		this.path = path;
+		this.roomID = roomID;
+		this.firstID = firstID;
+	}
+
+	/**
+	 * Opens an existing segment, or creates an empty one.
+	 */
+	static Segment open(Path path, long roomID, long firstID) throws IOException {
+		Segment segment = new Segment(path, roomID, firstID);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) throw new IOException("Segment is too large to be mapped: " + path);
+			segment.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			segment.scan((int) length);
+			if (segment.size < length) {
+				// Cut off a partly written record and the unused end of the mapping, then map the rest
+				channel.truncate(segment.size);
+				segment.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segment.size);
+			}
+		}
+		return segment;
+	}
+
+	/**
+	 * @return The greatest ID in the segment, or -1 if it is empty.
+	 */
+	long lastID() {
+		return lastID;
+	}
+
+	/**
+	 * @return The size of the segment in bytes.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Appends the given messages to the end of the segment, and forces them to the disk. All of
+	 * them must have greater IDs than the last message in the segment.
+	 */
+	void append(List<Message> messages) throws IOException {
+		List<byte[]> encoded = new ArrayList<>(messages.size());
+		int total = 0;
+		for (Message message : messages) {
+			byte[] record = encode(message);
+			encoded.add(record);
+			total += record.length;
+		}
+		if ((long) size + total > Integer.MAX_VALUE) throw new IOException("Segment would be too large to be mapped: " + path);
+		reserve(size + total);
+
+		int offset = size;
+		for (int i = 0; i < messages.size(); i++) {
+			map.put(offset, encoded.get(i));
+			offset += encoded.get(i).length;
+		}
+		map.force(size, total);
+
+		offset = size;
+		for (int i = 0; i < messages.size(); i++) {
+			note(messages.get(i).id(), offset);
+			offset += encoded.get(i).length;
+		}
+		size = offset;
+	}
+
+	/**
+	 * Maps the file again, at least doubled in size, if the mapping is smaller than the given
+	 * number of bytes.
+	 */
+	private void reserve(int needed) throws IOException {
+		if (map.capacity() >= needed) return;
+
+		long capacity = Math.max(needed, Math.min(Math.max(2L * map.capacity(), MIN_CAPACITY), Integer.MAX_VALUE));
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+	}
+
+	/**
+	 * @return Up to the given number of the messages right before the given ID, in ascending
+	 * order.
+	 */
+	List<Message> listBefore(long before, int limit) {
+		List<Message> messages = new ArrayList<>(Math.min(limit, records));
+		int position = offsetOf(before);
+		while (position > 0 && messages.size() < limit) {
+			int length = map.getInt(position - Integer.BYTES);
+			position -= length + 2 * Integer.BYTES;
+			messages.add(decode(position));
+		}
+		Collections.reverse(messages);
+		return messages;
+	}
+
+	/**
+	 * @return Up to the given number of the messages right after the given ID, in ascending order.
+	 */
+	List<Message> listAfter(long after, int limit) {
+		List<Message> messages = new ArrayList<>(Math.min(limit, records));
+		if (after == Long.MAX_VALUE) return messages;
+
+		int position = offsetOf(after + 1);
+		while (position < size && messages.size() < limit) {
+			messages.add(decode(position));
+			position += map.getInt(position) + 2 * Integer.BYTES;
+		}
+		return messages;
+	}
+
+	/**
+	 * @return The message with the given ID, or null if it is not in the segment.
+	 */
+	@Nullable Message find(long id) {
+		int position = offsetOf(id);
+		if (position == size) return null;
+		Message message = decode(position);
+		return message.id() == id ? message : null;
+	}
+
+	/**
+	 * @return The offset of the first record with an ID greater than or equal to the given one,
+	 * or the size of the segment if there is none.
+	 */
+	private int offsetOf(long id) {
+		int entry = Arrays.binarySearch(indexIDs, 0, indexSize, id);
+		if (entry < 0) entry = -entry - 2; // The last entry with a smaller ID
+		int position = entry >= 0 ? indexOffsets[entry] : 0;
+
+		while (position < size && map.getLong(position + Integer.BYTES) < id)
+			position += map.getInt(position) + 2 * Integer.BYTES;
+		return position;
+	}
+
+	/**
+	 * Walks all complete records from the start of the file, building the sparse index.
+	 */
+	private void scan(int length) {
+		int position = 0;
+		while (position + Integer.BYTES <= length) {
+			int recordLength = map.getInt(position);
+			long end = (long) position + recordLength + 2 * Integer.BYTES;
+			if (recordLength <= 0 || end > length || map.getInt((int) end - Integer.BYTES) != recordLength) break;
+
+			note(map.getLong(position + Integer.BYTES), position);
+			position = (int) end;
+		}
+		size = position;
+	}
+
+	private void note(long id, int offset) {
+		if (records % INDEX_INTERVAL == 0) {
+			if (indexSize == indexIDs.length) {
+				indexIDs = Arrays.copyOf(indexIDs, indexSize * 2);
+				indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+			}
+			indexIDs[indexSize] = id;
+			indexOffsets[indexSize] = offset;
+			indexSize++;
+		}
+		records++;
+		lastID = id;
+	}
+
+	private static byte[] encode(Message message) {
+		byte[] sender = message.sender().getBytes(StandardCharsets.UTF_8);
+		byte[] content = message.content().getBytes(StandardCharsets.UTF_8);
+		int length = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES
+					 + Integer.BYTES + sender.length + Integer.BYTES + content.length;
+
+		ByteBuffer buffer = ByteBuffer.allocate(length + 2 * Integer.BYTES);
+		buffer.putInt(length);
+		buffer.putLong(message.id());
+		buffer.putInt(message.type().ordinal());
+		LocalDateTime sendDate = message.sendDate();
+		buffer.putLong(sendDate != null ? sendDate.toEpochSecond(ZoneOffset.UTC) : 0);
+		buffer.putInt(sendDate != null ? sendDate.getNano() : NO_DATE);
+		buffer.putInt(sender.length).put(sender);
+		buffer.putInt(content.length).put(content);
+		buffer.putInt(length);
+		return buffer.array();
+	}
+
+	private Message decode(int position) {
+		int offset = position + Integer.BYTES;
+		long id = map.getLong(offset);
+		offset += Long.BYTES;
+		MessageType type = MessageType.values()[map.getInt(offset)];
+		offset += Integer.BYTES;
+		long seconds = map.getLong(offset);
+		offset += Long.BYTES;
+		int nanos = map.getInt(offset);
+		offset += Integer.BYTES;
+		LocalDateTime sendDate = nanos == NO_DATE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+
+		byte[] sender = new byte[map.getInt(offset)];
+		map.get(offset + Integer.BYTES, sender);
+		offset += Integer.BYTES + sender.length;
+		byte[] content = new byte[map.getInt(offset)];
+		map.get(offset + Integer.BYTES, content);
+
+		return new Message(id, roomID, type, new String(sender, StandardCharsets.UTF_8),
+				new String(content, StandardCharsets.UTF_8), sendDate);
+	}
+}
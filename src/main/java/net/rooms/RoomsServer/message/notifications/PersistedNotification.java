@@ -0,0 +1,16 @@
+package net.rooms.RoomsServer.message.notifications;
+
+/**
+ * Tells the sender of a chat message whether it was written to the database, when messages are
+ * persisted asynchronously. See {@link net.rooms.RoomsServer.message.MessageWriter}.
+ *
+ * @param id        The identifier of the message, as sent to all participants.
+ * @param roomID    The room the message was posted in.
+ * @param persisted True if the message was written. Otherwise, it is lost and may be sent again.
+ */
+public record PersistedNotification(
+		long id,
+		long roomID,
+		boolean persisted
+) {
+}
@@ -11,7 +11,8 @@ import net.rooms.RoomsServer.websocket.util.WSRequest;
  * @param roomID     A unique identifier for the room on which to post this message.
  * @param type       Indicates how the message properties should be interpreted.
  * @param content    The content of the message.
- * @param jSessionID The session id of the currently logged-in user.
+ * @param jSessionID The session id of the currently logged-in user. Optional if the STOMP
+ *                   session is authenticated, see {@link WSRequest}.
  */
 public record MessageRequest(
 		long roomID,
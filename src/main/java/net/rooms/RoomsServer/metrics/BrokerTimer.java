@@ -0,0 +1,38 @@
+package net.rooms.RoomsServer.metrics;
+
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times sends to the broker channel, see {@link RelayMetrics#brokered(long)}. The broker channel
+ * delivers on the sending thread, so the time covers resolving user destinations, matching
+ * subscriptions and queueing the message for every session.
+ * <br>
+ * User destinations are resolved into new messages sent to the same channel while the original
+ * send is still in progress. Only the outermost send of a thread is recorded.
+ */
+@Component
+public class BrokerTimer implements ChannelInterceptor {
+	private final ThreadLocal<Sends> sends = ThreadLocal.withInitial(Sends::new);
+
+	@Override
+	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		Sends sends = this.sends.get();
+		if (sends.depth++ == 0) sends.start = System.nanoTime();
+		return message;
+	}
+
+	@Override
+	public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, @Nullable Exception ex) {
+		Sends sends = this.sends.get();
+		if (--sends.depth == 0) RelayMetrics.brokered(sends.start);
+	}
+
+	private static class Sends {
+		int depth;
+		long start;
+	}
+}
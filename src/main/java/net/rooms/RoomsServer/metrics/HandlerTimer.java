@@ -0,0 +1,81 @@
+package net.rooms.RoomsServer.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageMappingInfo;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the {@link org.springframework.messaging.handler.annotation.MessageMapping} methods, see
+ * {@link RelayMetrics#HANDLER}. Registered on the client inbound channel, where it wraps every
+ * handler invocation on the thread that runs it.
+ * <br>
+ * Timers are tagged with the mapped destination. Messages sent to destinations without a mapping
+ * share a single timer, so clients cannot create new meters at will.
+ */
+@Component
+public class HandlerTimer implements ExecutorChannelInterceptor {
+	private static final String UNMAPPED = "unmapped";
+
+	private final ThreadLocal<long[]> start = ThreadLocal.withInitial(() -> new long[1]);
+	private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+	private volatile Set<String> mapped;
+
+	@Override
+	public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+		if (handler instanceof SimpAnnotationMethodMessageHandler)
+			start.get()[0] = System.nanoTime();
+		return message;
+	}
+
+	@Override
+	public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, @Nullable Exception ex) {
+		if (!(handler instanceof SimpAnnotationMethodMessageHandler methodHandler)) return;
+		if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return;
+
+		long elapsed = System.nanoTime() - start.get()[0];
+		timers.computeIfAbsent(destination(methodHandler, message), RelayMetrics::handler)
+				.record(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Resolves the mapped destination a message was handled by, in the same way the handler
+	 * strips its application prefixes.
+	 */
+	private String destination(SimpAnnotationMethodMessageHandler handler, Message<?> message) {
+		String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+		if (destination == null) return UNMAPPED;
+
+		Set<String> mapped = mapped(handler);
+		for (String prefix : handler.getDestinationPrefixes()) {
+			if (!destination.startsWith(prefix)) continue;
+			String lookup = destination.substring(prefix.length() - 1);
+			if (mapped.contains(lookup)) return lookup;
+		}
+		return UNMAPPED;
+	}
+
+	private Set<String> mapped(SimpAnnotationMethodMessageHandler handler) {
+		Set<String> mapped = this.mapped;
+		if (mapped == null) {
+			Set<String> patterns = new HashSet<>();
+			for (SimpMessageMappingInfo info : handler.getHandlerMethods().keySet())
+				patterns.addAll(info.getDestinationConditions().getPatterns());
+			mapped = this.mapped = Set.copyOf(patterns);
+		}
+		return mapped;
+	}
+}
@@ -0,0 +1,110 @@
+package net.rooms.RoomsServer.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the WebSocket relay path, split by the stage a message is in.
+ * <br>
+ * A message sent by a client is handled by a {@link org.springframework.messaging.handler.annotation.MessageMapping}
+ * method, timed as a whole by {@link HandlerTimer}. Within the handler, time is spent resolving
+ * the user of the request ("rooms.stage.auth"), reading and writing JSON
+ * ("rooms.stage.serialization"), querying the database ("rooms.stage.repository", see
+ * {@link io.micrometer.core.annotation.Timed} on the repositories) and handing the outcome to the
+ * broker, or directly to the sessions of a game ("rooms.stage.broker", see {@link BrokerTimer}).
+ * The number of recipients of every outgoing message is recorded in "rooms.ws.fanout".
+ * <br>
+ * The meters are registered on the global registry, which Spring Boot links to its own, so that
+ * static utilities such as {@link net.rooms.RoomsServer.JSON} can record them. Percentiles are
+ * configured through the "management.metrics.distribution" properties.
+ */
+public final class RelayMetrics {
+	public static final String HANDLER = "rooms.ws.handler";
+	public static final String FAN_OUT = "rooms.ws.fanout";
+
+	private static final Timer AUTH = Timer.builder("rooms.stage.auth")
+			.description("Time spent resolving the user of a WebSocket request")
+			.register(Metrics.globalRegistry);
+	private static final Timer SERIALIZE = Timer.builder("rooms.stage.serialization")
+			.description("Time spent converting objects to and from JSON")
+			.tag("operation", "write")
+			.register(Metrics.globalRegistry);
+	private static final Timer DESERIALIZE = Timer.builder("rooms.stage.serialization")
+			.description("Time spent converting objects to and from JSON")
+			.tag("operation", "read")
+			.register(Metrics.globalRegistry);
+	private static final Timer BROKER = Timer.builder("rooms.stage.broker")
+			.description("Time spent handing outgoing messages to the broker or directly to sessions, until they are queued")
+			.register(Metrics.globalRegistry);
+	private static final DistributionSummary BROKER_FAN_OUT = DistributionSummary.builder(FAN_OUT)
+			.description("Recipients of a single outgoing message")
+			.tag("path", "broker")
+			.register(Metrics.globalRegistry);
+	private static final DistributionSummary DIRECT_FAN_OUT = DistributionSummary.builder(FAN_OUT)
+			.description("Recipients of a single outgoing message")
+			.tag("path", "direct")
+			.register(Metrics.globalRegistry);
+
+	private RelayMetrics() {
+	}
+
+	/**
+	 * Provides the handler timer of the given destination. Callers are expected to cache it.
+	 *
+	 * @param destination The destination of the handler without the application prefix, for
+	 *                    example "/game/broadcast".
+	 */
+	public static Timer handler(String destination) {
+		return Timer.builder(HANDLER)
+				.description("Time spent in a message handler, from receiving a client message to queueing its outcome")
+				.tag("destination", destination)
+				.register(Metrics.globalRegistry);
+	}
+
+	/**
+	 * Records the time since the given {@link System#nanoTime()} as spent resolving a user.
+	 */
+	public static void auth(long start) {
+		AUTH.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the time since the given {@link System#nanoTime()} as spent writing JSON.
+	 */
+	public static void serialized(long start) {
+		SERIALIZE.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the time since the given {@link System#nanoTime()} as spent reading JSON.
+	 */
+	public static void deserialized(long start) {
+		DESERIALIZE.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the time since the given {@link System#nanoTime()} as spent sending to sessions,
+	 * whether through the broker or directly.
+	 */
+	public static void brokered(long start) {
+		BROKER.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the recipients of a message sent through the broker, one user destination each.
+	 */
+	public static void brokerFanOut(int recipients) {
+		BROKER_FAN_OUT.record(recipients);
+	}
+
+	/**
+	 * Records the recipients of a message sent directly to sessions, see
+	 * {@link net.rooms.RoomsServer.websocket.SessionFanOut}.
+	 */
+	public static void directFanOut(int recipients) {
+		DIRECT_FAN_OUT.record(recipients);
+	}
+}
@@ -0,0 +1,165 @@
+package net.rooms.RoomsServer.room;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.rooms.RoomsServer.BoundedCache;
+import net.rooms.RoomsServer.user.Participant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The room repository the rest of the server uses, which answers membership questions from
+ * memory. Every chat message and game notification checks that its sender is a participant in
+ * the room and lists the participants to notify, so these are by far the most frequent queries.
+ * <br>
+ * The participants of a room are loaded with a single query the first time they are needed, and
+ * kept until they change, for a bounded number of the most recently used rooms. Leaving removes
+ * the participant from the cached room right away, while joining and invitations drop the cached
+ * room, since the repository is only given the username of the new participant. Deleting a room
+ * drops it as well. Rooms without participants are not cached, so that lookups of rooms that do
+ * not exist take no memory.
+ * <br>
+ * Rooms themselves are cached by ID as well. Changes to their title or description are written
+ * through to the cached room. Both caches are disabled with "rooms.cache.enabled". All other operations go
+ * straight to the {@link JdbcRoomRepository}, except for searching public rooms, which is answered
+ * by the {@link PublicRoomIndex}. Every change of the public rooms or their participants is passed
+ * through the index to keep it in sync.
+ */
+@Primary
+@Repository
+public class CachedRoomRepository implements RoomRepository {
+	private final JdbcRoomRepository database;
+	private final BoundedCache<Long, Members> rooms; // Room ID and its participants
+	private final BoundedCache<Long, Room> byID;
+	private final PublicRoomIndex publicRooms;
+
+	public CachedRoomRepository(JdbcRoomRepository database, PublicRoomIndex publicRooms, MeterRegistry registry,
+								@Value("${rooms.cache.enabled:true}") boolean enabled,
+								@Value("${rooms.cache.rooms.capacity:10000}") int capacity,
+								@Value("${rooms.cache.members.capacity:10000}") int membersCapacity) {
+		this.database = database;
+		this.publicRooms = publicRooms;
+		this.byID = new BoundedCache<>("rooms", enabled ? capacity : 0, registry);
+		this.rooms = new BoundedCache<>("members", enabled ? membersCapacity : 0, registry);
+	}
+
+	@Override
+	public boolean create(Room room) {
+		return publicRooms.change(() -> database.create(room), rooms -> rooms.add(room));
+	}
+
+	@Override
+	public Room getByID(long roomID) {
+		return byID.get(roomID, database::getByID);
+	}
+
+	@Override
+	public void delete(long roomID) {
+		publicRooms.change(() -> {
+			database.delete(roomID);
+			return true;
+		}, rooms -> rooms.delete(roomID));
+		byID.invalidate(roomID);
+		rooms.invalidate(roomID);
+	}
+
+	@Override
+	public boolean joinUser(Long roomID, String username) {
+		boolean joined = publicRooms.change(() -> database.joinUser(roomID, username), rooms -> rooms.join(roomID));
+		rooms.invalidate(roomID);
+		return joined;
+	}
+
+	@Override
+	public boolean leaveUser(Long roomID, String username) {
+		boolean left = publicRooms.change(() -> database.leaveUser(roomID, username), rooms -> rooms.leave(roomID));
+		rooms.update(roomID, members -> members.without(username));
+		return left;
+	}
+
+	@Override
+	public long lastID() {
+		return database.lastID();
+	}
+
+	@Override
+	public List<Room> listByUser(String username) {
+		return database.listByUser(username);
+	}
+
+	@Override
+	public boolean updateTitle(long roomID, String title) {
+		boolean updated = publicRooms.change(() -> database.updateTitle(roomID, title),
+				rooms -> rooms.updateTitle(roomID, title));
+		byID.update(roomID, room -> new Room(room.roomID(), title, room.isPrivate(), room.password(),
+				room.owner(), room.creationDate(), room.description()));
+		return updated;
+	}
+
+	@Override
+	public boolean updateDescription(long roomID, String description) {
+		boolean updated = publicRooms.change(() -> database.updateDescription(roomID, description),
+				rooms -> rooms.updateDescription(roomID, description));
+		byID.update(roomID, room -> new Room(room.roomID(), room.title(), room.isPrivate(), room.password(),
+				room.owner(), room.creationDate(), description));
+		return updated;
+	}
+
+	@Override
+	public boolean isParticipant(long roomID, String username) {
+		return members(roomID).byUsername.containsKey(username);
+	}
+
+	/**
+	 * @return The participants of the room. The list must not be modified.
+	 */
+	@Override
+	public List<Participant> listParticipants(long roomID) {
+		return members(roomID).list;
+	}
+
+	@Override
+	public PublicRoomPage searchPublicRooms(String titlePrefix, @Nullable SearchCursor after, int offset, int limit) {
+		return publicRooms.search(titlePrefix, after, offset, limit);
+	}
+
+	private Members members(long roomID) {
+		Members members = rooms.get(roomID, id -> {
+			List<Participant> participants = database.listParticipants(id);
+			return participants.isEmpty() ? null : new Members(participants); // The room may not exist
+		});
+		return members != null ? members : Members.NONE;
+	}
+
+	/**
+	 * An immutable snapshot of the participants of a room.
+	 */
+	private static class Members {
+		static final Members NONE = new Members(List.of());
+
+		final List<Participant> list;
+		final Map<String, Participant> byUsername;
+
+		Members(List<Participant> participants) {
+			Map<String, Participant> byUsername = new LinkedHashMap<>();
+			for (Participant participant : participants)
+				byUsername.put(participant.username(), participant);
+			this.byUsername = Collections.unmodifiableMap(byUsername);
+			this.list = List.copyOf(byUsername.values());
+		}
+
+		Members without(String username) {
+			if (!byUsername.containsKey(username)) return this;
+
+			Map<String, Participant> remaining = new LinkedHashMap<>(byUsername);
+			remaining.remove(username);
+			return new Members(List.copyOf(remaining.values()));
+		}
+	}
+}
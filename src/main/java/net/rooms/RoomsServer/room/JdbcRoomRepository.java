@@ -1,17 +1,42 @@
 package net.rooms.RoomsServer.room;
 
-import lombok.AllArgsConstructor;
+import io.micrometer.core.annotation.Timed;
+import net.rooms.RoomsServer.HiLoIdAllocator;
 import net.rooms.RoomsServer.user.Participant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.ObjIntConsumer;
 
 @Repository
-@AllArgsConstructor
+@Timed(value = "rooms.stage.repository", description = "Time spent in database queries")
 public class JdbcRoomRepository implements RoomRepository {
 
+	private static final String PUBLIC_ROOMS = """
+			SELECT rid, title, CASE\s
+			        WHEN password = '' THEN FALSE
+			        ELSE TRUE
+			    END AS has_password, owner, creation_date, description, \
+			    (SELECT COUNT(*) FROM join_user_room WHERE join_user_room.rid = room.rid) AS members \
+			FROM room \
+			WHERE is_private = FALSE""";
+
 	private final JdbcClient jdbcClient;
+	private final HiLoIdAllocator ids;
+
+	public JdbcRoomRepository(JdbcClient jdbcClient, @Value("${rooms.id.room-block-size:10}") int blockSize) {
+		this.jdbcClient = jdbcClient;
+		this.ids = new HiLoIdAllocator(this::nextSequenceValue, blockSize);
+	}
 
 	/**
 	 * Inserts the given {@link Room} objects into the database as a new row in the 'room' table.
@@ -90,14 +115,20 @@ public class JdbcRoomRepository implements RoomRepository {
 	}
 
 	/**
-	 * Query the 'room' table for the identifier of the most recent room. If the table is empty 0
-	 * is returned.
+	 * Provides an identifier that was not handed out before. Identifiers are reserved from the
+	 * 'room_id' sequence in blocks, so most calls do not query the database.
 	 *
-	 * @return A long representing the identifier of most recent room or zero if no room was
-	 * previously added.
+	 * @return A long representing an unused room identifier.
 	 */
 	@Override
 	public long lastID() {
+		return ids.next();
+	}
+
+	/**
+	 * Reserves the next block of room IDs, see {@link HiLoIdAllocator}.
+	 */
+	private long nextSequenceValue() {
 		Object result = jdbcClient.sql("SELECT NEXT VALUE FOR room_id").query().singleValue();
 		//noinspection ConstantValue
 		if (result == null) return 0L;
@@ -182,24 +213,46 @@ public class JdbcRoomRepository implements RoomRepository {
 	}
 
 	/**
-	 * Searches the entire database and provides a list of rooms where their titles starts with the
-	 * given prefix.
-	 * Only returns public rooms.
-	 *
-	 * @param titlePrefix The prefix used to search the database.
-	 * @return A list of {@link PublicRoom} objects where their titles starts with the given prefix.
+	 * Searches the entire database for public rooms where their titles start with the given
+	 * prefix, ignoring case. See {@link RoomRepository#searchPublicRooms}.
 	 */
 	@Override
-	public List<PublicRoom> searchPublicRooms(String titlePrefix) {
-		return jdbcClient.sql("""
-						SELECT rid AS room_i_d, title, CASE\s
-						        WHEN password = '' THEN FALSE
-						        ELSE TRUE
-						    END AS has_password, owner, creation_date, description \
-						FROM room \
-						WHERE is_private = FALSE AND title LIKE ?""")
-				.params(titlePrefix + "%")
-				.query(PublicRoom.class)
-				.list();
+	public PublicRoomPage searchPublicRooms(String titlePrefix, @Nullable SearchCursor after, int offset, int limit) {
+		SearchCursor cursor = after != null ? after : new SearchCursor(Integer.MAX_VALUE, -1);
+		List<PublicRoom> rooms = new ArrayList<>();
+		int[] members = new int[limit + 1];
+		jdbcClient.sql("SELECT * FROM (" + PUBLIC_ROOMS + " AND LOWER(title) LIKE ? ESCAPE '\\') AS matches " +
+					   "WHERE members < ? OR (members = ? AND rid > ?) " +
+					   "ORDER BY members DESC, rid " +
+					   "LIMIT ? OFFSET ?")
+				.params(escapeLike(titlePrefix.toLowerCase(Locale.ROOT)) + "%",
+						cursor.members(), cursor.members(), cursor.roomID(), limit + 1, offset)
+				.query((RowCallbackHandler) resultSet -> {
+					members[rooms.size()] = resultSet.getInt("members");
+					rooms.add(publicRoom(resultSet));
+				});
+
+		if (rooms.size() <= limit) return new PublicRoomPage(rooms, null);
+		rooms.removeLast();
+		return new PublicRoomPage(rooms, new SearchCursor(members[limit - 1], rooms.getLast().roomID()));
+	}
+
+	/**
+	 * Passes every public room to the given consumer, with its number of participants. Used to
+	 * build the {@link PublicRoomIndex}.
+	 */
+	public void forEachPublicRoom(ObjIntConsumer<PublicRoom> consumer) {
+		jdbcClient.sql(PUBLIC_ROOMS)
+				.query((RowCallbackHandler) resultSet -> consumer.accept(publicRoom(resultSet), resultSet.getInt("members")));
+	}
+
+	private static PublicRoom publicRoom(ResultSet resultSet) throws SQLException {
+		return new PublicRoom(resultSet.getLong("rid"), resultSet.getString("title"),
+				resultSet.getBoolean("has_password"), resultSet.getString("owner"),
+				resultSet.getObject("creation_date", LocalDateTime.class), resultSet.getString("description"));
+	}
+
+	private static String escapeLike(String text) {
+		return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
 	}
 }
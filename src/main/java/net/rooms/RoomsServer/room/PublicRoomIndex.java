@@ -0,0 +1,218 @@
+package net.rooms.RoomsServer.room;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Searches public rooms by title prefix from memory, see {@link RoomRepository#searchPublicRooms}.
+ * <br>
+ * Public rooms are kept sorted by their lower case title, so that the rooms starting with a
+ * prefix are a single range of the index, together with their number of participants. The index
+ * is loaded from the database with the first search, and is kept in sync by the
+ * {@link CachedRoomRepository}, which passes every change of the public rooms or their
+ * participants through {@link #change}.
+ * <br>
+ * The index is only installed if no change was made while it was loaded. A load that races with a
+ * change is retried after a short, growing pause, so that the change can finish first. If changes
+ * keep racing with loading, searches are answered by the database until a load succeeds.
+ */
+@Component
+public class PublicRoomIndex {
+	private static final int LOAD_ATTEMPTS = 3;
+	private static final long LOAD_BACKOFF_MS = 10; // Doubled with every attempt
+	private static final Comparator<Ranked> RANK = Comparator.comparingInt(Ranked::members).reversed()
+			.thenComparingLong(ranked -> ranked.room().roomID());
+
+	private final JdbcRoomRepository database;
+	private final AtomicLong generation = new AtomicLong(); // Incremented with every change that starts
+	private final AtomicInteger inFlight = new AtomicInteger(); // Changes started but not applied yet
+	private volatile @Nullable Rooms rooms; // Null until loaded
+
+	public PublicRoomIndex(JdbcRoomRepository database, MeterRegistry registry) {
+		this.database = database;
+
+		Gauge.builder("rooms.rooms.search.rooms", this, index -> {
+					Rooms rooms = index.rooms;
+					return rooms != null ? rooms.byID.size() : 0;
+				})
+				.description("Public rooms held in the search index")
+				.register(registry);
+	}
+
+	/**
+	 * See {@link RoomRepository#searchPublicRooms}.
+	 */
+	public PublicRoomPage search(String titlePrefix, @Nullable SearchCursor after, int offset, int limit) {
+		Rooms rooms = load();
+		if (rooms == null) return database.searchPublicRooms(titlePrefix, after, offset, limit);
+
+		// Keeps the best ranked matches needed for this page and one more, worst first
+		long needed = (long) offset + limit + 1;
+		PriorityQueue<Ranked> best = new PriorityQueue<>(RANK.reversed());
+		String from = key(titlePrefix);
+		// Titles are not expected to contain the largest character, which bounds the range
+		for (Entry entry : rooms.byTitle.subMap(from, from + Character.MAX_VALUE).values()) {
+			Ranked ranked = new Ranked(entry.room, entry.members.get());
+			if (after != null && !after.precedes(ranked.members, ranked.room.roomID())) continue;
+			best.add(ranked);
+			if (best.size() > needed) best.poll();
+		}
+
+		List<Ranked> ranked = new ArrayList<>(best);
+		ranked.sort(RANK);
+		List<PublicRoom> page = new ArrayList<>(limit);
+		for (int i = offset; i < ranked.size() && page.size() < limit; i++)
+			page.add(ranked.get(i).room);
+		if (ranked.size() < needed) return new PublicRoomPage(page, null);
+
+		Ranked last = ranked.get(offset + limit - 1);
+		return new PublicRoomPage(page, new SearchCursor(last.members, last.room.roomID()));
+	}
+
+	/**
+	 * Makes a change to the public rooms or their participants in the database, and applies it to
+	 * the index if it is loaded and the change was made.
+	 *
+	 * @param write Makes the change in the database, returns false if nothing was changed.
+	 * @param apply Applies the change to the index.
+	 * @return The result of the write.
+	 */
+	boolean change(BooleanSupplier write, Consumer<Rooms> apply) {
+		inFlight.incrementAndGet();
+		generation.incrementAndGet();
+		try {
+			boolean changed = write.getAsBoolean();
+			Rooms rooms = this.rooms;
+			if (changed && rooms != null) apply.accept(rooms);
+			return changed;
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private @Nullable Rooms load() {
+		Rooms rooms = this.rooms;
+		if (rooms != null) return rooms;
+
+		synchronized (this) {
+			for (int attempt = 0; this.rooms == null && attempt < LOAD_ATTEMPTS; attempt++) {
+				if (attempt > 0 && !pause(LOAD_BACKOFF_MS << (attempt - 1))) break;
+
+				long loadedAt = generation.get();
+				if (inFlight.get() > 0) continue;
+
+				Rooms loaded = new Rooms();
+				database.forEachPublicRoom(loaded::add);
+				if (generation.get() == loadedAt) this.rooms = loaded;
+			}
+			return this.rooms;
+		}
+	}
+
+	/**
+	 * @return False if interrupted while pausing.
+	 */
+	private static boolean pause(long ms) {
+		try {
+			Thread.sleep(ms);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @return The key of a title in the index, or of a prefix of it.
+	 */
+	private static String key(String title) {
+		return title.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * The public rooms, by title and by ID.
+	 */
+	static class Rooms {
+		private final NavigableMap<String, Entry> byTitle = new ConcurrentSkipListMap<>(); // By Entry#key
+		private final Map<Long, Entry> byID = new ConcurrentHashMap<>();
+
+		void add(PublicRoom room, int members) {
+			Entry entry = new Entry(room, new AtomicInteger(members));
+			byID.put(room.roomID(), entry);
+			byTitle.put(entry.key, entry);
+		}
+
+		void add(Room room) {
+			if (room.isPrivate()) return;
+			add(new PublicRoom(room.roomID(), room.title(), !"".equals(room.password()), room.owner(),
+					room.creationDate(), room.description()), 0);
+		}
+
+		void updateTitle(long roomID, String title) {
+			Entry entry = byID.get(roomID);
+			if (entry == null) return;
+
+			PublicRoom room = entry.room;
+			Entry renamed = new Entry(new PublicRoom(roomID, title, room.hasPassword(), room.owner(),
+					room.creationDate(), room.description()), entry.members);
+			byID.put(roomID, renamed);
+			byTitle.remove(entry.key);
+			byTitle.put(renamed.key, renamed);
+		}
+
+		void updateDescription(long roomID, String description) {
+			Entry entry = byID.get(roomID);
+			if (entry == null) return;
+
+			PublicRoom room = entry.room;
+			entry.room = new PublicRoom(roomID, room.title(), room.hasPassword(), room.owner(),
+					room.creationDate(), description);
+		}
+
+		void delete(long roomID) {
+			Entry entry = byID.remove(roomID);
+			if (entry != null) byTitle.remove(entry.key);
+		}
+
+		void join(long roomID) {
+			Entry entry = byID.get(roomID);
+			if (entry != null) entry.members.incrementAndGet();
+		}
+
+		void leave(long roomID) {
+			Entry entry = byID.get(roomID);
+			if (entry != null) entry.members.decrementAndGet();
+		}
+	}
+
+	private static class Entry {
+		final String key; // Unique, rooms may share a title
+		final AtomicInteger members; // Shared with the entry this one replaced
+		volatile PublicRoom room;
+
+		Entry(PublicRoom room, AtomicInteger members) {
+			this.key = key(room.title()) + '\u0000' + room.roomID();
+			this.members = members;
+			this.room = room;
+		}
+	}
+
+	private record Ranked(PublicRoom room, int members) {
+	}
+}
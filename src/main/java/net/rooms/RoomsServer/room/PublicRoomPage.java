@@ -0,0 +1,17 @@
+package net.rooms.RoomsServer.room;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * A single page of public room search results.
+ *
+ * @param rooms The rooms on this page, ranked by their number of participants, most first.
+ * @param next  The cursor of the next page, or null if this is the last one.
+ */
+public record PublicRoomPage(
+		List<PublicRoom> rooms,
+		@Nullable SearchCursor next
+) {
+}
@@ -1,6 +1,7 @@
 package net.rooms.RoomsServer.room;
 
 import lombok.AllArgsConstructor;
+import net.rooms.RoomsServer.JSON;
 import net.rooms.RoomsServer.game.GameController;
 import net.rooms.RoomsServer.game.GameService;
 import net.rooms.RoomsServer.room.requests.CreateRequest;
@@ -10,16 +11,19 @@ import net.rooms.RoomsServer.room.requests.LeaveRequest;
 import net.rooms.RoomsServer.room.requests.UpdateDescriptionRequest;
 import net.rooms.RoomsServer.room.requests.UpdateTitleRequest;
 import net.rooms.RoomsServer.user.User;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @AllArgsConstructor
 public class RoomController {
+	private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
 	private final RoomService roomService;
 	private final GameService gameService;
@@ -187,16 +191,37 @@ public class RoomController {
 	}
 
 	/**
-	 * Accepts REST API GET requests for the list of all public rooms where their title starts with
-	 * the specified prefix.
+	 * Accepts REST API GET requests for the list of public rooms where their title starts with
+	 * the specified prefix, ignoring case.
 	 * Any logged-in user may request such a list.
+	 * <br>
+	 * Rooms with more participants are listed first. If there are more results than the limit,
+	 * the next page is requested with the cursor from the "X-Next-Cursor" header of the response.
+	 * For example: "api/v1/room/search/chess?cursor=12.345&limit=20".
 	 *
 	 * @param prefix A string used to search the rooms.
+	 * @param cursor Continues the search after the page the cursor was returned with, optional.
+	 * @param offset The number of results to skip, optional.
+	 * @param limit  The maximum number of rooms to list, see {@link RoomService#MAX_SEARCH_SIZE}.
 	 * @return A json string containing a list of {@link PublicRoom} objects where their title
-	 * starts with the given prefix.
+	 * starts with the given prefix, or 400 if the cursor is not valid.
 	 */
 	@GetMapping(path = "api/v1/room/search/{prefix}")
-	public String searchPublicRooms(@PathVariable("prefix") String prefix) {
-		return roomService.searchPublicRooms(prefix);
+	public ResponseEntity<String> searchPublicRooms(@PathVariable("prefix") String prefix,
+													@RequestParam(name = "cursor", required = false) String cursor,
+													@RequestParam(name = "offset", required = false) Integer offset,
+													@RequestParam(name = "limit", required = false) Integer limit) {
+		SearchCursor after;
+		try {
+			after = cursor != null ? SearchCursor.parse(cursor) : null;
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		PublicRoomPage page = roomService.searchPublicRooms(prefix, after, offset != null ? offset : 0,
+				limit != null ? limit : RoomService.DEFAULT_SEARCH_SIZE);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (page.next() != null) response.header(NEXT_CURSOR_HEADER, page.next().toString());
+		return response.body(JSON.toJson(page.rooms()));
 	}
 }
@@ -1,6 +1,7 @@
 package net.rooms.RoomsServer.room;
 
 import net.rooms.RoomsServer.user.Participant;
+import org.springframework.lang.Nullable;
 
 import java.util.List;
 
@@ -99,12 +100,15 @@ public interface RoomRepository {
 	List<Participant> listParticipants(long roomID);
 
 	/**
-	 * Searches the entire database and provides a list of rooms where their titles starts with the
-	 * given prefix.
-	 * Only returns public rooms.
+	 * Searches for public rooms where their titles start with the given prefix, ignoring case.
+	 * Results are ranked by their number of participants, most first, and then by room ID.
 	 *
-	 * @param titlePrefix The prefix used to search the database.
-	 * @return A list of {@link PublicRoom} objects where their titles starts with the given prefix.
+	 * @param titlePrefix The prefix to search for.
+	 * @param after       Continues the search after the page this cursor was returned with,
+	 *                    optional.
+	 * @param offset      The number of results to skip, after the cursor if there is one.
+	 * @param limit       The maximum number of results to return.
+	 * @return A page of {@link PublicRoom} objects where their titles start with the given prefix.
 	 */
-	List<PublicRoom> searchPublicRooms(String titlePrefix);
+	PublicRoomPage searchPublicRooms(String titlePrefix, @Nullable SearchCursor after, int offset, int limit);
 }
@@ -2,6 +2,7 @@ package net.rooms.RoomsServer.room;
 
 import lombok.AllArgsConstructor;
 import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.metrics.RelayMetrics;
 import net.rooms.RoomsServer.room.requests.CreateRequest;
 import net.rooms.RoomsServer.room.requests.InviteRequest;
 import net.rooms.RoomsServer.room.requests.JoinRequest;
@@ -11,16 +12,21 @@ import net.rooms.RoomsServer.room.requests.UpdateTitleRequest;
 import net.rooms.RoomsServer.user.Participant;
 import net.rooms.RoomsServer.user.User;
 import net.rooms.RoomsServer.user.UserRepository;
+import org.springframework.lang.Nullable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @Service
 @AllArgsConstructor
 public class RoomService {
+	public static final int DEFAULT_SEARCH_SIZE = 20;
+	public static final int MAX_SEARCH_SIZE = 100;
 
 	private final SimpMessagingTemplate template;
 	private final RoomRepository roomRepository;
@@ -42,7 +48,9 @@ public class RoomService {
 		if (request.password().contains("\"")) return "Invalid character: \"";
 
 		long roomID = roomRepository.lastID() + 1;
-		Room room = new Room(roomID, request.title(), request.isPrivate(), request.password(), user.username(), LocalDateTime.now(), request.description());
+		// Truncated to the precision of the database, so the room is the same as it is read back
+		LocalDateTime creationDate = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+		Room room = new Room(roomID, request.title(), request.isPrivate(), request.password(), user.username(), creationDate, request.description());
 		if (!roomRepository.create(room)) return "Room creation failed on create";
 		if (!roomRepository.joinUser(roomID, user.username())) {
 			roomRepository.delete(roomID); // Cleans the room in case the join table could not be updated.
@@ -99,14 +107,13 @@ public class RoomService {
 	public String invite(InviteRequest request, User user) {
 		if (!roomRepository.isParticipant(request.roomID(), user.username()))
 			return "User " + user.username() + " is not a participant at room " + request.roomID();
-		if (userRepository.findByUsername(request.username()).isEmpty())
+		Optional<User> optional = userRepository.findByUsername(request.username());
+		if (optional.isEmpty())
 			return "User " + user.username() + " does not exist";
 		if (roomRepository.isParticipant(request.roomID(), request.username()))
 			return "User " + user.username() + " is already a participant at room " + request.roomID();
 
 		if (!roomRepository.joinUser(request.roomID(), request.username())) return "Invite failed";
-		Optional<User> optional = userRepository.findByUsername(request.username());
-		if (optional.isEmpty()) return "Invite failed";
 
 		Participant participant = new Participant(request.roomID(), optional.get().nickname(), optional.get().username(), optional.get().signupDate());
 		notifyParticipants(request.roomID(), "/queue/join", JSON.toJson(participant));
@@ -183,7 +190,9 @@ public class RoomService {
 	}
 
 	private void notifyParticipants(long roomID, String destination, String payload) {
-		for (Participant participant : roomRepository.listParticipants(roomID))
+		List<Participant> participants = roomRepository.listParticipants(roomID);
+		RelayMetrics.brokerFanOut(participants.size());
+		for (Participant participant : participants)
 			template.convertAndSendToUser(participant.username(), destination, payload);
 	}
 
@@ -206,16 +215,19 @@ public class RoomService {
 	}
 
 	/**
-	 * Prepares a json string with a list of {@link PublicRoom} objects representing all the rooms
-	 * where their {@link PublicRoom#title()} property begins with the given prefix.
-	 * The list would never contain a reference to a private room.
+	 * Searches the public rooms where their {@link PublicRoom#title()} property begins with the
+	 * given prefix, ignoring case, ranked by their number of participants.
+	 * The results would never contain a reference to a private room.
 	 * {@link PublicRoom} only contain some of the fields from {@link Room}.
 	 *
 	 * @param titlePrefix A string representing the title prefix.
-	 * @return A json string containing a list of {@link PublicRoom} objects where their title
-	 * starts with the given prefix.
+	 * @param after       Continues the search after the page this cursor was returned with,
+	 *                    optional.
+	 * @param offset      The number of results to skip.
+	 * @param limit       The requested page size, clamped to {@link #MAX_SEARCH_SIZE}.
+	 * @return A page of {@link PublicRoom} objects where their title starts with the given prefix.
 	 */
-	public String searchPublicRooms(String titlePrefix) {
-		return JSON.toJson(roomRepository.searchPublicRooms(titlePrefix));
+	public PublicRoomPage searchPublicRooms(String titlePrefix, @Nullable SearchCursor after, int offset, int limit) {
+		return roomRepository.searchPublicRooms(titlePrefix, after, Math.max(offset, 0), Math.clamp(limit, 1, MAX_SEARCH_SIZE));
 	}
 }
@@ -0,0 +1,41 @@
+package net.rooms.RoomsServer.room;
+
+/**
+ * Marks where a page of public room search results ended, so that the next page continues right
+ * after it. Search results are ranked by their number of participants, most first, and then by
+ * room ID.
+ * <br>
+ * Cursors are handed to clients as "members.roomID" strings, see {@link #toString()}.
+ *
+ * @param members The number of participants of the last room on the page.
+ * @param roomID  The ID of the last room on the page.
+ */
+public record SearchCursor(int members, long roomID) {
+
+	/**
+	 * @param cursor A cursor as returned by {@link #toString()}.
+	 * @throws IllegalArgumentException If the string is not a valid cursor.
+	 */
+	public static SearchCursor parse(String cursor) {
+		int dot = cursor.indexOf('.');
+		if (dot < 0) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		try {
+			return new SearchCursor(Integer.parseInt(cursor, 0, dot, 10),
+					Long.parseLong(cursor, dot + 1, cursor.length(), 10));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	/**
+	 * @return True if a room with the given number of participants and ID ranks after this cursor.
+	 */
+	public boolean precedes(int members, long roomID) {
+		return members < this.members || (members == this.members && roomID > this.roomID);
+	}
+
+	@Override
+	public String toString() {
+		return members + "." + roomID;
+	}
+}
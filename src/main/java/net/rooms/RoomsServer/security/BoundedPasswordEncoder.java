@@ -0,0 +1,156 @@
+package net.rooms.RoomsServer.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies login passwords and hashes new ones on a small, dedicated pool of threads, so that a
+ * burst of logins or sign ups cannot take more than a few cores away from chat and game traffic.
+ * Verifying or making a BCrypt hash is deliberately slow, tens of milliseconds of CPU time each.
+ * <br>
+ * Hashing that does not fit the queue of the pool, or that is not done in time, fails right away
+ * with an {@link AuthenticationServiceException}, and the login fails as if the password was
+ * wrong. The calling thread still waits for the hash, but it no longer competes for the CPU.
+ * A hash that times out while still queued is dropped from the queue and never runs, but one
+ * that already started runs to the end, since BCrypt does not check for interrupts.
+ * <br>
+ * Passwords hashed with a lower cost factor than the configured one are hashed again on the next
+ * successful login, if enabled with "rooms.security.bcrypt.rehash". New passwords are hashed on
+ * sign up and when rehashing, both through the same pool as verifications.
+ * <br>
+ * Verifications are counted by "rooms.login.verifications", tagged with their result, where
+ * "rejected" also counts new passwords that could not be hashed in time. The time every hash
+ * waited for a thread is recorded by "rooms.login.queue".
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+	private final BCryptPasswordEncoder encoder;
+	private final boolean rehash;
+	private final long timeoutMs;
+	private final ThreadPoolExecutor executor;
+	private final Timer queueWait;
+	private final Counter matched;
+	private final Counter mismatched;
+	private final Counter rejected;
+
+	public BoundedPasswordEncoder(BCryptPasswordEncoder encoder, MeterRegistry registry,
+								  @Value("${rooms.security.bcrypt.rehash:false}") boolean rehash,
+								  @Value("${rooms.security.verify.threads:2}") int threads,
+								  @Value("${rooms.security.verify.queue-capacity:64}") int capacity,
+								  @Value("${rooms.security.verify.timeout-ms:5000}") long timeoutMs) {
+		this.encoder = encoder;
+		this.rehash = rehash;
+		this.timeoutMs = timeoutMs;
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "password-verifier-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		Gauge.builder("rooms.login.queue.depth", executor, pool -> pool.getQueue().size())
+				.description("Password verifications waiting for a thread")
+				.register(registry);
+		queueWait = Timer.builder("rooms.login.queue")
+				.description("Time a password verification waited for a thread")
+				.register(registry);
+		matched = verifications(registry, "match");
+		mismatched = verifications(registry, "mismatch");
+		rejected = verifications(registry, "rejected");
+	}
+
+	private static Counter verifications(MeterRegistry registry, String result) {
+		return Counter.builder("rooms.login.verifications")
+				.description("Login passwords verified")
+				.tag("result", result)
+				.register(registry);
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return bounded(() -> encoder.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		boolean matches = bounded(() -> encoder.matches(rawPassword, encodedPassword));
+		(matches ? matched : mismatched).increment();
+		return matches;
+	}
+
+	/**
+	 * Runs the given hashing on the pool and waits for it. The hashing is skipped if the caller
+	 * gives up on it before it leaves the queue.
+	 *
+	 * @throws AuthenticationServiceException If the pool is full, the hashing is not done in time
+	 *                                        or fails.
+	 */
+	private <T> T bounded(Callable<T> hashing) {
+		long queuedAt = System.nanoTime();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				queueWait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+				return hashing.call();
+			});
+		} catch (RejectedExecutionException e) {
+			throw reject("Too many passwords are being checked, try again later");
+		}
+
+		try {
+			return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			abandon(future);
+			throw reject("Checking the password timed out, try again later");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abandon(future);
+			throw reject("Interrupted while checking the password");
+		} catch (ExecutionException e) {
+			throw new AuthenticationServiceException("Failed to hash the password", e.getCause());
+		}
+	}
+
+	/**
+	 * Cancels a hash nobody waits for anymore. A queued hash gives its slot in the queue back right
+	 * away, instead of holding it until a thread takes it only to skip it.
+	 */
+	private void abandon(Future<?> future) {
+		future.cancel(false);
+		executor.remove((Runnable) future); // The FutureTask made by submit
+	}
+
+	private AuthenticationServiceException reject(String message) {
+		rejected.increment();
+		return new AuthenticationServiceException(message);
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		return rehash && encoder.upgradeEncoding(encodedPassword);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -1,5 +1,6 @@
 package net.rooms.RoomsServer.security;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -7,8 +8,12 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 @Configuration
 public class PasswordEncoder {
 
+	/**
+	 * @param strength The cost factor of new password hashes, see {@link BoundedPasswordEncoder}
+	 *                 for rehashing existing ones.
+	 */
 	@Bean
-	public BCryptPasswordEncoder bCryptPasswordEncoder() {
-		return new BCryptPasswordEncoder();
+	public BCryptPasswordEncoder bCryptPasswordEncoder(@Value("${rooms.security.bcrypt.strength:10}") int strength) {
+		return new BCryptPasswordEncoder(strength);
 	}
 }
@@ -1,6 +1,7 @@
 package net.rooms.RoomsServer.security.config;
 
 import lombok.AllArgsConstructor;
+import net.rooms.RoomsServer.security.BoundedPasswordEncoder;
 import net.rooms.RoomsServer.user.UserService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,7 +11,6 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
@@ -19,7 +19,7 @@ import org.springframework.security.web.SecurityFilterChain;
 public class WebSecurityConfig {
 
 	private final UserService userService;
-	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+	private final BoundedPasswordEncoder passwordEncoder;
 
 	@Bean
 	public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -37,7 +37,8 @@ public class WebSecurityConfig {
 	public AuthenticationProvider authenticationProvider() {
 		DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
 		provider.setUserDetailsService(userService);
-		provider.setPasswordEncoder(bCryptPasswordEncoder);
+		provider.setPasswordEncoder(passwordEncoder);
+		provider.setUserDetailsPasswordService(userService); // Rehashes, see BoundedPasswordEncoder
 		return provider;
 	}
 
@@ -0,0 +1,75 @@
+package net.rooms.RoomsServer.user;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.rooms.RoomsServer.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The user repository the rest of the server uses, which caches users by username, unless
+ * disabled with "rooms.cache.enabled". Users are looked up on every login and invitation.
+ * <br>
+ * Updates are written through to the cached user, and deleting a user or changing its username
+ * drops it. Users that do not exist are not cached, so creating one needs no invalidation. All
+ * other operations go straight to the {@link JdbcUserRepository}.
+ */
+@Primary
+@Repository
+public class CachedUserRepository implements UserRepository {
+	private final JdbcUserRepository database;
+	private final BoundedCache<String, User> byUsername;
+
+	public CachedUserRepository(JdbcUserRepository database, MeterRegistry registry,
+								@Value("${rooms.cache.enabled:true}") boolean enabled,
+								@Value("${rooms.cache.users.capacity:10000}") int capacity) {
+		this.database = database;
+		this.byUsername = new BoundedCache<>("users", enabled ? capacity : 0, registry);
+	}
+
+	@Override
+	public List<User> findAll() {
+		return database.findAll();
+	}
+
+	@Override
+	public Optional<User> findByUsername(String username) {
+		return Optional.ofNullable(byUsername.get(username, key -> database.findByUsername(key).orElse(null)));
+	}
+
+	@Override
+	public String create(User user) {
+		return database.create(user);
+	}
+
+	@Override
+	public void update(User user, String username) {
+		database.update(user, username);
+		if (!user.username().equals(username)) {
+			byUsername.invalidate(username);
+			return;
+		}
+		// The sign-up date is not updated, keep the stored one
+		byUsername.update(username, cached -> new User(user.nickname(), user.username(), user.password(),
+				user.role(), cached.signupDate()));
+	}
+
+	@Override
+	public void delete(String username) {
+		database.delete(username);
+		byUsername.invalidate(username);
+	}
+
+	@Override
+	public int count() {
+		return database.count();
+	}
+
+	@Override
+	public void saveAll(List<User> users) {
+		database.saveAll(users);
+	}
+}
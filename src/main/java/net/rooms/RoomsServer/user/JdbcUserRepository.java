@@ -1,5 +1,6 @@
 package net.rooms.RoomsServer.user;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.AllArgsConstructor;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Repository;
@@ -10,6 +11,7 @@ import java.util.Optional;
 
 @Repository
 @AllArgsConstructor
+@Timed(value = "rooms.stage.repository", description = "Time spent in database queries")
 public class JdbcUserRepository implements UserRepository {
 
 	private final JdbcClient jdbcClient;
@@ -42,7 +44,7 @@ public class JdbcUserRepository implements UserRepository {
 	@Override
 	public void update(User user, String username) {
 		var updated = jdbcClient.sql("UPDATE users SET nickname = ?, username = ?, password = ?, role = ? WHERE username = ?")
-				.params(List.of(user.nickname(), user.username(), user.password(), user.role(), username))
+				.params(List.of(user.nickname(), user.username(), user.password(), user.role().ordinal(), username))
 				.update();
 
 		Assert.state(updated == 1, "Failed to update user " + user.username());
@@ -1,22 +1,24 @@
 package net.rooms.RoomsServer.user;
 
 import lombok.AllArgsConstructor;
+import net.rooms.RoomsServer.security.BoundedPasswordEncoder;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 
 @Service
 @AllArgsConstructor
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
 	private final static String USER_NOT_FOUND_MSG = "user with username %s not found";
 
 	private final UserRepository userRepository;
-	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+	private final BoundedPasswordEncoder passwordEncoder;
 
 	@Override
 	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -26,6 +28,22 @@ public class UserService implements UserDetailsService {
 								String.format(USER_NOT_FOUND_MSG, username)));
 	}
 
+	/**
+	 * Replaces the password hash of a user after a successful login, when the hash was made with
+	 * a lower cost factor than the configured one.
+	 *
+	 * @param user        The user who logged in.
+	 * @param newPassword The password of the user, hashed with the configured cost factor.
+	 * @return The user with the new password hash.
+	 */
+	@Override
+	public UserDetails updatePassword(UserDetails user, String newPassword) {
+		User current = (User) user;
+		User updated = new User(current.nickname(), current.username(), newPassword, current.role(), current.signupDate());
+		userRepository.update(updated, current.username());
+		return updated;
+	}
+
 	public String signupUser(String nickname, String username, String password, UserRole role) {
 		boolean userExists = userRepository
 				.findByUsername(username)
@@ -33,7 +51,11 @@ public class UserService implements UserDetailsService {
 
 		if (userExists) return "username already taken";
 
-		password = bCryptPasswordEncoder.encode(password);
+		try {
+			password = passwordEncoder.encode(password);
+		} catch (AuthenticationServiceException e) {
+			return e.getMessage(); // Too many passwords are hashed at once
+		}
 
 		return userRepository.create(new User(nickname, username, password, role, LocalDateTime.now()));
 	}
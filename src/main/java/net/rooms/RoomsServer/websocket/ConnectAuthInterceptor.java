@@ -0,0 +1,66 @@
+package net.rooms.RoomsServer.websocket;
+
+import net.rooms.RoomsServer.game.GameController;
+import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.websocket.util.WSAuth;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Authenticates a STOMP session once, when it connects, and binds the {@link User} to the
+ * attributes of the session, where {@link WSAuth} finds it for every later frame.
+ * <br>
+ * The user is taken from the principal of the websocket handshake, which is authenticated with
+ * the session cookie. Clients that cannot send the cookie with the handshake may send their
+ * session ID in a "jSessionID" header of the CONNECT frame instead.
+ * <br>
+ * The ID of the HTTP session the user came from is bound along with it, and the user is only
+ * trusted while that session lives, so logging out or letting the session expire cuts the STOMP
+ * session off as well. A user is not bound if its HTTP session is not known.
+ */
+@Component
+public class ConnectAuthInterceptor implements ChannelInterceptor {
+	private static final String SESSION_ID_PREFIX = "JSESSIONID="; // See CustomSessionListener
+
+	@Override
+	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+		if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) return message;
+
+		Map<String, Object> attributes = accessor.getSessionAttributes();
+		if (attributes == null) return message;
+
+		User user = userOf(accessor.getUser());
+		String sessionID = null;
+		if (user != null) {
+			// Copied from the handshake by the HttpSessionHandshakeInterceptor
+			if (attributes.get(HttpSessionHandshakeInterceptor.HTTP_SESSION_ID_ATTR_NAME) instanceof String id)
+				sessionID = SESSION_ID_PREFIX + id;
+		} else {
+			sessionID = accessor.getFirstNativeHeader(GameController.SESSION_ID_HEADER);
+			if (sessionID != null) user = WSAuth.getUser(sessionID);
+		}
+		if (user != null && user != User.EMPTY && sessionID != null) {
+			attributes.put(WSAuth.USER_ATTRIBUTE, user);
+			attributes.put(WSAuth.SESSION_ATTRIBUTE, sessionID);
+		}
+		return message;
+	}
+
+	private static @Nullable User userOf(@Nullable Principal principal) {
+		if (principal instanceof Authentication authentication && authentication.getPrincipal() instanceof User user)
+			return user;
+		return null;
+	}
+}
@@ -0,0 +1,45 @@
+package net.rooms.RoomsServer.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches resolved {@link SessionFanOut.Group}s by destination for a single set of users, for
+ * example the participants of a game.
+ * <br>
+ * The cache must be invalidated whenever the set of users, or the sessions and subscriptions of
+ * any of them, changes. A group resolved concurrently with an invalidation is never kept.
+ */
+public class FanOutCache {
+	private final Map<String, SessionFanOut.Group> groups = new ConcurrentHashMap<>();
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Returns the cached group for the given destination, resolving it if absent.
+	 *
+	 * @param destination The destination the group was resolved for.
+	 * @param resolver    Resolves the group when it is not cached.
+	 * @return The cached or the newly resolved group.
+	 */
+	public SessionFanOut.Group get(String destination, Supplier<SessionFanOut.Group> resolver) {
+		SessionFanOut.Group group = groups.get(destination);
+		if (group != null) return group;
+
+		long resolvedVersion = version.get();
+		group = resolver.get();
+		groups.put(destination, group);
+		// Drop the group if the cache was invalidated while it was being resolved
+		if (version.get() != resolvedVersion) groups.remove(destination, group);
+		return group;
+	}
+
+	/**
+	 * Drops all cached groups.
+	 */
+	public void invalidate() {
+		version.incrementAndGet();
+		groups.clear();
+	}
+}
@@ -0,0 +1,200 @@
+package net.rooms.RoomsServer.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import net.rooms.RoomsServer.game.GameService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives every WebSocket session a bounded outbound queue, see {@link QueuedSession}.
+ * <br>
+ * Frames are sorted by their STOMP destination. High frequency game packets are lossy: packets
+ * on "/queue/game/guest-channel" and "/queue/game/host-channel" drop the oldest pending packet
+ * once too many are pending, and on "/queue/game/state" only the latest pending state is kept.
+ * All other frames, such as chat messages, game lobby notifications and the incremental changes
+ * at "/queue/game/changes", are never dropped. A session whose lossless backlog grows past its
+ * limit is closed instead.
+ * <br>
+ * Queues are drained on virtual threads, so a slow client only ever holds up its own queue.
+ */
+@Component
+public class OutboundQueues implements WebSocketHandlerDecoratorFactory {
+
+	/**
+	 * How a frame may be treated when the client cannot keep up.
+	 */
+	enum Policy {
+		LOSSLESS,
+		DROP_OLDEST,
+		LATEST_WINS
+	}
+
+	private static final int HEADER_SCAN_LIMIT = 1024; // STOMP headers of outbound frames are short
+	private static final String DESTINATION_HEADER = "\ndestination:";
+
+	private final int gameLimit;
+	private final long losslessLimit;
+	private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+	private final Map<String, QueuedSession> sessions = new ConcurrentHashMap<>();
+
+	private final AtomicLong queued = new AtomicLong();
+	private final DistributionSummary depth;
+	private final Map<Policy, Counter> dropped = new EnumMap<>(Policy.class);
+	private final Counter overflowed;
+
+	public OutboundQueues(MeterRegistry registry,
+						  @Value("${rooms.ws.outbound.game-limit:16}") int gameLimit,
+						  @Value("${rooms.ws.outbound.lossless-limit-bytes:524288}") long losslessLimit) {
+		this.gameLimit = gameLimit;
+		this.losslessLimit = losslessLimit;
+
+		Gauge.builder("rooms.ws.outbound.queued", queued, AtomicLong::get)
+				.description("Frames waiting to be written, across all sessions")
+				.register(registry);
+		depth = DistributionSummary.builder("rooms.ws.outbound.depth")
+				.description("Frames waiting to be written in a session, sampled on every enqueue")
+				.register(registry);
+		for (Policy policy : new Policy[]{Policy.DROP_OLDEST, Policy.LATEST_WINS})
+			dropped.put(policy, Counter.builder("rooms.ws.outbound.dropped")
+					.description("Game frames dropped because the client fell behind")
+					.tag("policy", policy.name().toLowerCase())
+					.register(registry));
+		overflowed = Counter.builder("rooms.ws.outbound.overflowed")
+				.description("Sessions closed because their lossless backlog exceeded its limit")
+				.register(registry);
+	}
+
+	@Override
+	public WebSocketHandler decorate(WebSocketHandler handler) {
+		return new WebSocketHandlerDecorator(handler) {
+			@Override
+			public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+				QueuedSession queuedSession = new QueuedSession(session, OutboundQueues.this);
+				sessions.put(session.getId(), queuedSession);
+				super.afterConnectionEstablished(queuedSession);
+			}
+
+			@Override
+			public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+				super.handleMessage(queued(session), message);
+			}
+
+			@Override
+			public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+				super.handleTransportError(queued(session), exception);
+			}
+
+			@Override
+			public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+				QueuedSession queuedSession = sessions.remove(session.getId());
+				if (queuedSession != null) queuedSession.discard();
+				super.afterConnectionClosed(queuedSession != null ? queuedSession : session, closeStatus);
+			}
+		};
+	}
+
+	/**
+	 * Replaces the raw session with its queue, so that frames sent while handling client frames,
+	 * such as STOMP errors, are queued in order with everything else.
+	 */
+	private WebSocketSession queued(WebSocketSession session) {
+		QueuedSession queuedSession = sessions.get(session.getId());
+		return queuedSession != null ? queuedSession : session;
+	}
+
+	/**
+	 * Determines the policy of an encoded outbound frame by its STOMP destination.
+	 */
+	Policy policy(WebSocketMessage<?> message) {
+		String destination = destination(message);
+		if (destination == null) return Policy.LOSSLESS;
+		if (destination.endsWith(GameService.STATE_CHANNEL)) return Policy.LATEST_WINS;
+		if (destination.endsWith(GameService.GUEST_CHANNEL) || destination.endsWith(GameService.HOST_CHANNEL))
+			return Policy.DROP_OLDEST;
+		return Policy.LOSSLESS;
+	}
+
+	/**
+	 * Reads the destination header of an encoded STOMP frame, scanning only the header block.
+	 *
+	 * @return The destination, or null if the frame has none, for example heartbeats.
+	 */
+	static @Nullable String destination(WebSocketMessage<?> message) {
+		String frame;
+		if (message instanceof TextMessage text) {
+			frame = text.getPayload();
+		} else if (message instanceof BinaryMessage binary) {
+			ByteBuffer buffer = binary.getPayload().duplicate();
+			byte[] head = new byte[Math.min(buffer.remaining(), HEADER_SCAN_LIMIT)];
+			buffer.get(head);
+			frame = new String(head, StandardCharsets.ISO_8859_1);
+		} else {
+			return null;
+		}
+
+		int headerEnd = frame.indexOf("\n\n");
+		if (headerEnd < 0) headerEnd = Math.min(frame.length(), HEADER_SCAN_LIMIT);
+		int start = frame.indexOf(DESTINATION_HEADER);
+		if (start < 0 || start >= headerEnd) return null;
+		start += DESTINATION_HEADER.length();
+		int end = frame.indexOf('\n', start);
+		return frame.substring(start, end < 0 ? frame.length() : end);
+	}
+
+	int gameLimit() {
+		return gameLimit;
+	}
+
+	long losslessLimit() {
+		return losslessLimit;
+	}
+
+	ExecutorService writers() {
+		return writers;
+	}
+
+	void enqueued(int sessionDepth) {
+		queued.incrementAndGet();
+		depth.record(sessionDepth);
+	}
+
+	void dequeued(int count) {
+		queued.addAndGet(-count);
+	}
+
+	void dropped(Policy policy) {
+		queued.decrementAndGet();
+		dropped.get(policy).increment();
+	}
+
+	void overflowed() {
+		overflowed.increment();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		writers.shutdownNow();
+	}
+}
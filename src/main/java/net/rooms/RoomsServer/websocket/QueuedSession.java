@@ -0,0 +1,156 @@
+package net.rooms.RoomsServer.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A WebSocket session with a bounded outbound queue, see {@link OutboundQueues}.
+ * <br>
+ * Sending never blocks: frames are queued and written in order by a single writer at a time,
+ * which runs only while the queue is not empty. Lossy frames are dropped by marking them, so
+ * dropping never needs to search the queue.
+ */
+@Slf4j
+class QueuedSession extends WebSocketSessionDecorator {
+	private final OutboundQueues queues;
+	private final ArrayDeque<Entry> entries = new ArrayDeque<>(); // All pending frames, in order
+	private final ArrayDeque<Entry> droppable = new ArrayDeque<>(); // Pending drop-oldest frames, in order
+	private final Map<String, Entry> latest = new HashMap<>(); // Pending latest-wins frames by destination
+	private int depth; // Pending frames that were not dropped
+	private long losslessBytes;
+	private boolean draining;
+	private boolean discarded;
+
+	QueuedSession(WebSocketSession session, OutboundQueues queues) {
+		super(session);
+		this.queues = queues;
+	}
+
+	@Override
+	public void sendMessage(WebSocketMessage<?> message) throws IOException {
+		OutboundQueues.Policy policy = queues.policy(message);
+		boolean overflow = false;
+
+		synchronized (this) {
+			if (discarded) return;
+
+			Entry entry = new Entry(message, policy);
+			switch (policy) {
+				case LATEST_WINS -> {
+					entry.destination = OutboundQueues.destination(message);
+					Entry previous = latest.put(entry.destination, entry);
+					if (previous != null) drop(previous);
+				}
+				case DROP_OLDEST -> {
+					droppable.add(entry);
+					if (droppable.size() > queues.gameLimit()) drop(droppable.poll());
+				}
+				case LOSSLESS -> {
+					losslessBytes += message.getPayloadLength();
+					overflow = losslessBytes > queues.losslessLimit();
+				}
+			}
+			entries.add(entry);
+			depth++;
+			queues.enqueued(depth);
+
+			if (overflow) {
+				discard();
+			} else if (!draining) {
+				draining = true;
+				queues.writers().execute(this::drain);
+			}
+		}
+
+		if (overflow) {
+			queues.overflowed();
+			close(CloseStatus.SESSION_NOT_RELIABLE);
+		}
+	}
+
+	/**
+	 * Writes pending frames until the queue is empty.
+	 */
+	private void drain() {
+		while (true) {
+			Entry entry;
+			synchronized (this) {
+				entry = poll();
+				if (entry == null) {
+					draining = false;
+					return;
+				}
+			}
+
+			try {
+				getDelegate().sendMessage(entry.message);
+			} catch (IOException | RuntimeException e) {
+				log.debug("Failed to write to session {}", getId(), e);
+				synchronized (this) {
+					discard();
+					draining = false;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Takes the next frame that was not dropped off the queue.
+	 */
+	private Entry poll() {
+		Entry entry;
+		do {
+			entry = entries.poll();
+			if (entry == null) return null;
+		} while (entry.dropped);
+
+		switch (entry.policy) {
+			case LATEST_WINS -> latest.remove(entry.destination, entry);
+			case DROP_OLDEST -> droppable.poll(); // Always this entry, dropped ones leave from the head
+			case LOSSLESS -> losslessBytes -= entry.message.getPayloadLength();
+		}
+		depth--;
+		queues.dequeued(1);
+		return entry;
+	}
+
+	private void drop(Entry entry) {
+		entry.dropped = true;
+		depth--;
+		queues.dropped(entry.policy);
+	}
+
+	/**
+	 * Drops all pending frames once the session is closed, or can no longer be written to.
+	 */
+	synchronized void discard() {
+		if (discarded) return;
+		discarded = true;
+		queues.dequeued(depth);
+		entries.clear();
+		droppable.clear();
+		latest.clear();
+		depth = 0;
+	}
+
+	private static class Entry {
+		final WebSocketMessage<?> message;
+		final OutboundQueues.Policy policy;
+		String destination;
+		boolean dropped;
+
+		Entry(WebSocketMessage<?> message, OutboundQueues.Policy policy) {
+			this.message = message;
+			this.policy = policy;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package net.rooms.RoomsServer.websocket;
+
+import net.rooms.RoomsServer.metrics.RelayMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends messages directly to STOMP sessions, bypassing the broker.
+ * <br>
+ * {@link org.springframework.messaging.simp.SimpMessagingTemplate#convertAndSendToUser} resolves
+ * the sessions of a user through the {@link SimpUserRegistry} and matches them against the
+ * subscriptions of the broker on every call. For high frequency traffic, such as game packets,
+ * the sessions subscribed to a destination are resolved once into a {@link Group} which can be
+ * cached and reused for every message sent to the same set of users. See {@link FanOutCache}.
+ */
+@Component
+public class SessionFanOut {
+
+	/**
+	 * The content type set on strings by the broker message converter, used so that clients see
+	 * the same headers regardless of whether a message was sent through the broker or directly.
+	 */
+	public static final MimeType TEXT_CONTENT_TYPE = new MimeType("text", "plain", StandardCharsets.UTF_8);
+
+	/**
+	 * The user destination prefix, as set in
+	 * {@link net.rooms.RoomsServer.websocket.config.WebSocketConfig}.
+	 */
+	private static final String USER_DESTINATION_PREFIX = "/user";
+
+	private final SimpUserRegistry userRegistry;
+	private final MessageChannel clientOutboundChannel;
+
+	public SessionFanOut(SimpUserRegistry userRegistry,
+						 @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+		this.userRegistry = userRegistry;
+		this.clientOutboundChannel = clientOutboundChannel;
+	}
+
+	/**
+	 * Resolves the sessions of the given users that are subscribed to the given user destination.
+	 * Both the "/user/{destination}" form and the "/user/{username}/{destination}" form are
+	 * matched, since the simple broker handles the "/user" prefix directly.
+	 *
+	 * @param usernames   The users to send to.
+	 * @param excluded    A username to leave out of the group, may be null.
+	 * @param destination The user destination without the user prefix, for example
+	 *                    "/queue/game/guest-channel".
+	 * @return A group with one target for every matching subscription.
+	 */
+	public Group resolve(Collection<String> usernames, @Nullable String excluded, String destination) {
+		String userDestination = USER_DESTINATION_PREFIX + destination;
+		List<Target> targets = new ArrayList<>();
+		for (String username : usernames) {
+			if (username.equals(excluded)) continue;
+			SimpUser user = userRegistry.getUser(username);
+			if (user == null) continue;
+			String namedDestination = USER_DESTINATION_PREFIX + "/" + username + destination;
+			for (SimpSession session : user.getSessions())
+				for (SimpSubscription subscription : session.getSubscriptions())
+					if (subscription.getDestination().equals(userDestination) || subscription.getDestination().equals(namedDestination))
+						targets.add(new Target(username, session.getId(), subscription.getId(), subscription.getDestination()));
+		}
+		return new Group(List.copyOf(targets));
+	}
+
+	/**
+	 * Sends the given string to every target of the group. The string is encoded once.
+	 *
+	 * @param group   The resolved recipients.
+	 * @param payload The content of the message.
+	 */
+	public void send(Group group, String payload) {
+		send(group, payload.getBytes(StandardCharsets.UTF_8), TEXT_CONTENT_TYPE);
+	}
+
+	/**
+	 * Sends the given payload to every target of the group. The payload array is shared by all
+	 * outbound messages and is never copied.
+	 *
+	 * @param group       The resolved recipients.
+	 * @param payload     The content of the message.
+	 * @param contentType The value of the content type header, may be null.
+	 */
+	public void send(Group group, byte[] payload, @Nullable Object contentType) {
+		RelayMetrics.directFanOut(group.targets().size());
+		long start = System.nanoTime();
+		for (Target target : group.targets())
+			deliver(target, payload, contentType);
+		RelayMetrics.brokered(start);
+	}
+
+	/**
+	 * Sends the given payload to a single target, for callers that address only part of a group
+	 * or encode the payload for every target. Metered as a message of a single recipient.
+	 */
+	public void send(Target target, byte[] payload, @Nullable Object contentType) {
+		RelayMetrics.directFanOut(1);
+		long start = System.nanoTime();
+		deliver(target, payload, contentType);
+		RelayMetrics.brokered(start);
+	}
+
+	private void deliver(Target target, byte[] payload, @Nullable Object contentType) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(target.sessionID());
+		accessor.setSubscriptionId(target.subscriptionID());
+		accessor.setDestination(target.destination());
+		if (contentType != null) accessor.setHeader(MessageHeaders.CONTENT_TYPE, contentType);
+		clientOutboundChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+	}
+
+	/**
+	 * A single STOMP subscription of a session.
+	 *
+	 * @param username       The user the session belongs to.
+	 * @param sessionID      The identifier of the STOMP session.
+	 * @param subscriptionID The identifier of the subscription within the session.
+	 * @param destination    The destination as subscribed by the client.
+	 */
+	public record Target(
+			String username,
+			String sessionID,
+			String subscriptionID,
+			String destination
+	) {
+	}
+
+	/**
+	 * A resolved set of subscriptions to a single destination.
+	 *
+	 * @param targets The subscriptions to send to.
+	 */
+	public record Group(
+			List<Target> targets
+	) {
+		public static final Group EMPTY = new Group(List.of());
+	}
+}
@@ -2,9 +2,14 @@ package net.rooms.RoomsServer.websocket;
 
 import lombok.RequiredArgsConstructor;
 import net.rooms.RoomsServer.game.GameController;
+import net.rooms.RoomsServer.game.GameService;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 import java.security.Principal;
 
@@ -13,11 +18,31 @@ import java.security.Principal;
 public class WebSocketEventListener {
 
 	private final GameController gameController;
+	private final GameService gameService;
 
 	@EventListener
 	public void disconnect(SessionDisconnectEvent event) {
 		Principal principal = event.getUser();
 		if (principal == null) return;
+		sessionsChanged(principal, event);
 		gameController.leaveGameUsername(principal.getName());
 	}
+
+	/**
+	 * Drops the cached session groups of the game the subscribing user participates in, so that
+	 * new subscriptions to the game channels are picked up, and makes sure the user is sent a full
+	 * game packet on the subscribing session next. Runs after the user registry has
+	 * recorded the subscription, see
+	 * {@link net.rooms.RoomsServer.websocket.config.WebSocketConfig#configureMessageBroker}.
+	 */
+	@EventListener({SessionSubscribeEvent.class, SessionUnsubscribeEvent.class})
+	public void subscriptionChanged(AbstractSubProtocolEvent event) {
+		Principal principal = event.getUser();
+		if (principal == null) return;
+		sessionsChanged(principal, event);
+	}
+
+	private void sessionsChanged(Principal principal, AbstractSubProtocolEvent event) {
+		gameService.sessionsChanged(principal.getName(), SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
+	}
 }
@@ -1,13 +1,22 @@
 package net.rooms.RoomsServer.websocket.config;
 
+import lombok.AllArgsConstructor;
+import net.rooms.RoomsServer.metrics.BrokerTimer;
+import net.rooms.RoomsServer.metrics.HandlerTimer;
+import net.rooms.RoomsServer.websocket.ConnectAuthInterceptor;
+import net.rooms.RoomsServer.websocket.OutboundQueues;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.messaging.converter.DefaultContentTypeResolver;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
 
 import java.util.List;
 
@@ -15,10 +24,20 @@ import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@AllArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+	private final OutboundQueues outboundQueues;
+	private final ConnectAuthInterceptor connectAuthInterceptor;
+	private final HandlerTimer handlerTimer;
+	private final BrokerTimer brokerTimer;
+
 	@Override
 	public void registerStompEndpoints(StompEndpointRegistry registry) {
-		registry.addEndpoint("/ws").withSockJS();
+		// Copies the ID of the HTTP session to the STOMP session, see ConnectAuthInterceptor
+		registry.addEndpoint("/ws").addInterceptors(new HttpSessionHandshakeInterceptor()).withSockJS();
+		// Handle the frames of each session in the order they were received, game inputs depend on it
+		registry.setPreserveReceiveOrder(true);
 	}
 
 	@Override
@@ -39,5 +58,19 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 		registry.setApplicationDestinationPrefixes("/app");
 		registry.setUserDestinationPrefix("/user");
 		registry.enableSimpleBroker("/user");
+		// The registry must see session events before any listener that re-resolves sessions
+		registry.setUserRegistryOrder(Ordered.HIGHEST_PRECEDENCE);
+		registry.configureBrokerChannel().interceptors(brokerTimer);
+	}
+
+	@Override
+	public void configureClientInboundChannel(ChannelRegistration registration) {
+		registration.interceptors(connectAuthInterceptor, handlerTimer);
+	}
+
+	@Override
+	public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+		// Bound what each session may have pending, see OutboundQueues for the per destination policies
+		registration.addDecoratorFactory(outboundQueues);
 	}
 }
@@ -3,32 +3,87 @@ package net.rooms.RoomsServer.websocket.util;
 import jakarta.servlet.http.HttpSession;
 import lombok.NonNull;
 import net.rooms.RoomsServer.CustomSessionListener;
+import net.rooms.RoomsServer.metrics.RelayMetrics;
 import net.rooms.RoomsServer.user.User;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 
+import java.util.Map;
+
 public final class WSAuth {
 	/**
-	 * Provides a convenient interface for interacting with {@link CustomSessionListener} to get
-	 * the currently logged-in user given a {@link WSRequest} object.
+	 * The STOMP session attribute the user is bound to when the session connects, see
+	 * {@link net.rooms.RoomsServer.websocket.ConnectAuthInterceptor}.
+	 */
+	public static final String USER_ATTRIBUTE = "rooms.user";
+	/**
+	 * The STOMP session attribute holding the ID of the HTTP session the user was taken from, in
+	 * the form {@link CustomSessionListener} knows it by. The user stays bound only as long as
+	 * that session lives.
+	 */
+	public static final String SESSION_ATTRIBUTE = "rooms.session";
+
+	/**
+	 * Gets the currently logged-in user who sent a {@link WSRequest} over the websocket
+	 * connection. The user bound to the STOMP session when it connected is used if there is one,
+	 * otherwise the session ID in the request is resolved.
 	 *
-	 * @param request The request sent over the websocket connection with the session ID.
-	 * @return The {@link User} associated with that session ID. {@link User#EMPTY} if the session
-	 * ID is not valid.
+	 * @param headers The headers of the frame the request was received in.
+	 * @param request The request sent over the websocket connection, its session ID is optional.
+	 * @return The {@link User} who sent the request. {@link User#EMPTY} if the HTTP session of the
+	 * bound user ended, or if no user is bound and the session ID is not valid.
+	 */
+	public static @NonNull User getUser(SimpMessageHeaderAccessor headers, WSRequest request) {
+		return getUser(headers, request.jSessionID());
+	}
+
+	/**
+	 * Gets the currently logged-in user who sent a frame over the websocket connection. The user
+	 * bound to the STOMP session when it connected is used if there is one, as long as its HTTP
+	 * session has not ended by logging out or expiring. Otherwise the given session ID is resolved.
+	 *
+	 * @param headers   The headers of the frame.
+	 * @param sessionID A string representing a session ID, or null.
+	 * @return The {@link User} who sent the frame. {@link User#EMPTY} if the HTTP session of the
+	 * bound user ended, or if no user is bound and the session ID is not valid.
 	 */
-	public static @NonNull User getUser(WSRequest request) {
-		return getUser(request.jSessionID());
+	public static @NonNull User getUser(SimpMessageHeaderAccessor headers, @Nullable String sessionID) {
+		long start = System.nanoTime();
+		try {
+			Map<String, Object> attributes = headers.getSessionAttributes();
+			if (attributes != null && attributes.get(USER_ATTRIBUTE) instanceof User user) {
+				// A single map lookup, which cuts the socket off once the user logs out
+				Object session = attributes.get(SESSION_ATTRIBUTE);
+				if (session instanceof String id && CustomSessionListener.getSession(id) != null) return user;
+				return User.EMPTY;
+			}
+			if (sessionID == null) return User.EMPTY;
+			return lookup(sessionID);
+		} finally {
+			RelayMetrics.auth(start);
+		}
 	}
 
 	/**
 	 * Provides a convenient interface for interacting with {@link CustomSessionListener} to get
 	 * the currently logged-in user given its session ID.
 	 *
-	 * @param sessionID A string representing a  session ID.
+	 * @param sessionID A string representing a session ID.
 	 * @return The {@link User} associated with that session ID. {@link User#EMPTY} if the session
 	 * ID is not valid.
 	 */
 	public static @NonNull User getUser(String sessionID) {
+		long start = System.nanoTime();
+		try {
+			return lookup(sessionID);
+		} finally {
+			RelayMetrics.auth(start);
+		}
+	}
+
+	private static @NonNull User lookup(String sessionID) {
 		HttpSession session = CustomSessionListener.getSession(sessionID);
 		if (session == null) return User.EMPTY;
 
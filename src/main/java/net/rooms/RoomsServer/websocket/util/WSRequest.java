@@ -1,8 +1,10 @@
 package net.rooms.RoomsServer.websocket.util;
 
 /**
- * Represents a request payload sent over a websocket connection. Such requests are expected to
- * contain a session ID that can be associated with a user.
+ * Represents a request payload sent over a websocket connection. Such requests may contain a
+ * session ID that can be associated with a user. It is only needed by clients whose STOMP session
+ * is not authenticated, since the user is otherwise bound to the session when it connects, see
+ * {@link WSAuth}.
  */
 public interface WSRequest {
 	String jSessionID();
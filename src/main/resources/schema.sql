@@ -10,7 +10,7 @@ CREATE TABLE IF NOT EXISTS users (
 CREATE SEQUENCE IF NOT EXISTS room_id START WITH 1 INCREMENT BY 1;
 
 CREATE TABLE IF NOT EXISTS room (
-   rid INT NOT NULL,
+   rid BIGINT NOT NULL,
    title varchar(250) NOT NULL,
    is_private BIT NOT NULL,
    password varchar(250),
@@ -23,7 +23,7 @@ CREATE TABLE IF NOT EXISTS room (
 
 CREATE TABLE IF NOT EXISTS join_user_room (
     username varchar(250) NOT NULL,
-    rid INT NOT NULL,
+    rid BIGINT NOT NULL,
     PRIMARY KEY (username, rid),
     FOREIGN KEY (username) REFERENCES users,
     FOREIGN KEY (rid) REFERENCES room
@@ -32,8 +32,8 @@ CREATE TABLE IF NOT EXISTS join_user_room (
 CREATE SEQUENCE IF NOT EXISTS msg_id START WITH 1 INCREMENT BY 1;
 
 CREATE TABLE IF NOT EXISTS message (
-    id INT NOT NULL,
-    rid INT NOT NULL,
+    id BIGINT NOT NULL,
+    rid BIGINT NOT NULL,
     type INT NOT NULL,
     sender varchar(250) NOT NULL,
     content VARCHAR(MAX) NOT NULL,
@@ -41,4 +41,20 @@ CREATE TABLE IF NOT EXISTS message (
     PRIMARY KEY (id),
     FOREIGN KEY (rid) REFERENCES room,
     FOREIGN KEY (sender) REFERENCES users
-);
\ No newline at end of file
+);
+
+-- Identifies the database to the message archive, see MessageArchive
+CREATE TABLE IF NOT EXISTS database_identity (
+    id VARCHAR(36) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+-- Serves the message history of a room in pages, see JdbcMessageRepository#listBefore
+CREATE INDEX IF NOT EXISTS message_rid_id ON message(rid, id);
+
+-- IDs are reserved in blocks of the sequence value times the block size, see HiLoIdAllocator, which
+-- outgrows INT long before the sequences do. Widens the columns of tables created before that.
+ALTER TABLE room ALTER COLUMN rid SET DATA TYPE BIGINT;
+ALTER TABLE join_user_room ALTER COLUMN rid SET DATA TYPE BIGINT;
+ALTER TABLE message ALTER COLUMN id SET DATA TYPE BIGINT;
+ALTER TABLE message ALTER COLUMN rid SET DATA TYPE BIGINT;
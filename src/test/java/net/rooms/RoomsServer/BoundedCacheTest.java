@@ -0,0 +1,99 @@
+package net.rooms.RoomsServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedCacheTest {
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final List<Integer> loaded = new ArrayList<>();
+	private final Function<Integer, String> loader = key -> {
+		loaded.add(key);
+		return "value " + key;
+	};
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntry() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>("test", 3, registry);
+		cache.get(1, loader);
+		cache.get(2, loader);
+		cache.get(3, loader);
+		cache.get(1, loader); // 2 is now the least recently used
+		cache.get(4, loader);
+
+		assertThat(cache.size()).isEqualTo(3);
+		loaded.clear();
+		cache.get(1, loader);
+		cache.get(3, loader);
+		cache.get(4, loader);
+		assertThat(loaded).isEmpty();
+		cache.get(2, loader);
+		assertThat(loaded).containsExactly(2);
+
+		assertThat(registry.get("rooms.cache.evictions").tag("cache", "test").counter().count()).isEqualTo(2);
+		assertThat(registry.get("rooms.cache.lookups").tag("result", "hit").counter().count()).isEqualTo(4);
+		assertThat(registry.get("rooms.cache.lookups").tag("result", "miss").counter().count()).isEqualTo(5);
+		assertThat(registry.get("rooms.cache.size").tag("cache", "test").gauge().value()).isEqualTo(3);
+	}
+
+	@Test
+	void doesNotCacheNull() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>("test", 3, registry);
+		List<Integer> loads = new ArrayList<>();
+
+		assertThat(cache.get(1, key -> {
+			loads.add(key);
+			return null;
+		})).isNull();
+		assertThat(cache.get(1, loader)).isEqualTo("value 1");
+		assertThat(loads).containsExactly(1);
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	void updatesAndInvalidatesEntries() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>("test", 3, registry);
+		cache.get(1, loader);
+		cache.update(1, value -> value + " changed");
+		cache.update(2, value -> value + " changed"); // Not cached, nothing to update
+
+		assertThat(cache.get(1, loader)).isEqualTo("value 1 changed");
+		assertThat(cache.size()).isEqualTo(1);
+
+		cache.invalidate(1);
+		assertThat(cache.size()).isZero();
+		assertThat(cache.get(1, loader)).isEqualTo("value 1");
+		assertThat(loaded).containsExactly(1, 1);
+	}
+
+	@Test
+	void doesNotCacheAValueLoadedDuringAChange() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>("test", 3, registry);
+
+		assertThat(cache.get(1, key -> {
+			cache.invalidate(key); // Changed while it was loaded
+			return "stale";
+		})).isEqualTo("stale");
+		assertThat(cache.size()).isZero();
+		assertThat(cache.get(1, loader)).isEqualTo("value 1");
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	void zeroCapacityDisablesTheCache() {
+		BoundedCache<Integer, String> cache = new BoundedCache<>("test", 0, registry);
+		cache.get(1, loader);
+		cache.get(1, loader);
+
+		assertThat(loaded).containsExactly(1, 1);
+		assertThat(cache.size()).isZero();
+		assertThat(registry.get("rooms.cache.evictions").counter().count()).isZero();
+		assertThatThrownBy(() -> new BoundedCache<>("negative", -1, registry)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
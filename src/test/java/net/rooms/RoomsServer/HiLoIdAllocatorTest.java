@@ -0,0 +1,94 @@
+package net.rooms.RoomsServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HiLoIdAllocatorTest {
+	private final AtomicLong sequence = new AtomicLong();
+
+	@Test
+	void handsOutTheIdentifiersOfEveryBlockInOrder() {
+		sequence.set(4);
+		HiLoIdAllocator allocator = new HiLoIdAllocator(sequence::incrementAndGet, 3);
+
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 7; i++)
+			ids.add(allocator.next());
+
+		assertThat(ids).containsExactly(15L, 16L, 17L, 18L, 19L, 20L, 21L);
+	}
+
+	@Test
+	void drawsFromTheSequenceOncePerBlock() {
+		HiLoIdAllocator allocator = new HiLoIdAllocator(sequence::incrementAndGet, 100);
+
+		for (int i = 0; i < 250; i++)
+			allocator.next();
+
+		assertThat(sequence.get()).isEqualTo(3);
+	}
+
+	@Test
+	void blocksOfOneDrawEveryIdentifier() {
+		HiLoIdAllocator allocator = new HiLoIdAllocator(sequence::incrementAndGet, 1);
+
+		assertThat(allocator.next()).isEqualTo(1);
+		assertThat(allocator.next()).isEqualTo(2);
+		assertThat(sequence.get()).isEqualTo(2);
+	}
+
+	@Test
+	void allocatorsSharingASequenceNeverOverlap() {
+		HiLoIdAllocator first = new HiLoIdAllocator(sequence::incrementAndGet, 10);
+		HiLoIdAllocator second = new HiLoIdAllocator(sequence::incrementAndGet, 10);
+
+		Set<Long> ids = new HashSet<>();
+		for (int i = 0; i < 35; i++) {
+			assertThat(ids.add(first.next())).isTrue();
+			assertThat(ids.add(second.next())).isTrue();
+		}
+	}
+
+	@Test
+	void concurrentCallersGetUniqueIdentifiers() throws Exception {
+		HiLoIdAllocator allocator = new HiLoIdAllocator(sequence::incrementAndGet, 16);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++)
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 10_000; i++)
+						ids.add(allocator.next());
+				}));
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(ids).hasSize(80_000);
+		assertThat(sequence.get()).isEqualTo(80_000 / 16);
+	}
+
+	@Test
+	void rejectsInvalidBlocks() {
+		assertThatThrownBy(() -> new HiLoIdAllocator(sequence::incrementAndGet, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+
+		HiLoIdAllocator allocator = new HiLoIdAllocator(() -> Long.MAX_VALUE / 2, 4);
+		assertThatThrownBy(allocator::next).isInstanceOf(ArithmeticException.class);
+	}
+}
@@ -0,0 +1,106 @@
+package net.rooms.RoomsServer.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.game.notifications.BroadcastNotification;
+import net.rooms.RoomsServer.game.notifications.GameUpdate;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import net.rooms.RoomsServer.room.PublicRoom;
+import net.rooms.RoomsServer.room.Room;
+import net.rooms.RoomsServer.user.Participant;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the hand-written adapters produce exactly the json of the reflective adapters of
+ * gson, and read it back the same way.
+ */
+class RecordAdapterFactoryTest {
+	private static final LocalDateTime DATE = LocalDateTime.of(2024, 7, 1, 12, 30, 5, 120_000_000);
+	private static final String TRICKY = "Quotes \" and \\ backslashes, <html> & 'escapes', tabs\t, lines\n, é and 😀";
+
+	private final Gson adapted = new GsonBuilder()
+			.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+			.registerTypeAdapterFactory(new RecordAdapterFactory())
+			.create();
+	// Gson cannot reflect on java.time, so dates are written by the same adapter in both
+	private final Gson reflective = new GsonBuilder()
+			.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+			.create();
+
+	@Test
+	void messages() {
+		assertSame(Message.class,
+				new Message(1, 2, MessageType.MESSAGE, "alice", "Hello", DATE),
+				new Message(Long.MAX_VALUE, -1, MessageType.SNAKES_GAME_RESULT, "bob", TRICKY, LocalDateTime.of(2024, 1, 1, 0, 0)),
+				new Message(3, 4, null, null, null, null),
+				Message.EMPTY);
+	}
+
+	@Test
+	void participants() {
+		assertSame(Participant.class,
+				new Participant(1, "Alice", "alice", DATE),
+				new Participant(0, TRICKY, "", null),
+				new Participant(2, null, null, DATE));
+	}
+
+	@Test
+	void rooms() {
+		assertSame(Room.class,
+				new Room(1, "Lobby", false, "", "alice", DATE, "Everyone"),
+				new Room(2, TRICKY, true, "secret", "bob", DATE.withNano(1), TRICKY),
+				new Room(3, null, false, null, null, null, null));
+	}
+
+	@Test
+	void publicRooms() {
+		assertSame(PublicRoom.class,
+				new PublicRoom(1, "Lobby", false, "alice", DATE, "Everyone"),
+				new PublicRoom(2, TRICKY, true, "bob", DATE.withNano(999_999_999), TRICKY),
+				new PublicRoom(3, null, false, null, null, null));
+	}
+
+	@Test
+	void broadcastNotifications() {
+		assertSame(BroadcastNotification.class,
+				new BroadcastNotification("{\"x\":1}"),
+				new BroadcastNotification(TRICKY),
+				new BroadcastNotification(null));
+	}
+
+	@Test
+	void gameUpdates() {
+		// Game updates are only written, see GameUpdateAdapter
+		for (GameUpdate update : List.of(
+				new GameUpdate(new PongConfig(GameType.PONG, 2, 5, true), "alice", List.of("alice", "bob")),
+				new GameUpdate(new SnakesConfig(GameType.SNAKES, 4, 10, false), TRICKY, List.of()),
+				new GameUpdate(null, null, null),
+				new GameUpdate(new PongConfig(null, 0, 0, false), "carol", Arrays.asList("carol", null))))
+			assertThat(adapted.toJson(update)).isEqualTo(reflective.toJson(update));
+	}
+
+	@Test
+	void nulls() {
+		assertThat(adapted.toJson(null, Message.class)).isEqualTo(reflective.toJson(null, Message.class));
+		assertThat(adapted.fromJson("null", Message.class)).isNull();
+	}
+
+	@SafeVarargs
+	private <T> void assertSame(Class<T> type, T... samples) {
+		for (T sample : samples) {
+			String json = reflective.toJson(sample);
+			assertThat(adapted.toJson(sample)).isEqualTo(json);
+			assertThat(adapted.fromJson(json, type)).isEqualTo(reflective.fromJson(json, type));
+		}
+	}
+}
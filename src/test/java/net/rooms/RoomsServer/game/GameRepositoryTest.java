@@ -0,0 +1,61 @@
+package net.rooms.RoomsServer.game;
+
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.GameConfig;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class GameRepositoryTest {
+	private static final long GAME = 7;
+
+	private final GameRepository games = new GameRepository(mock(GameStateWriter.class), false, 30);
+
+	@Test
+	void startsSimulatedPongOnlyWithAnOpponent() {
+		open(MessageType.PONG_GAME_OPEN, new PongConfig(GameType.PONG, 4, 3, true), PongConfig.class);
+
+		assertThat(games.startGame(GAME, "host")).isNull();
+		assertThat(games.join(GAME, "guest")).isNotNull();
+		assertThat(games.startGame(GAME, "host").type()).isEqualTo(MessageType.PONG_GAME_ONGOING);
+	}
+
+	@Test
+	void startsSimulatedSnakesOnlyWithAnOpponent() {
+		open(MessageType.SNAKES_GAME_OPEN, new SnakesConfig(GameType.SNAKES, 2, 10, true), SnakesConfig.class);
+
+		assertThat(games.startGame(GAME, "host")).isNull();
+		assertThat(games.join(GAME, "guest")).isNotNull();
+		assertThat(games.startGame(GAME, "host").type()).isEqualTo(MessageType.SNAKES_GAME_ONGOING);
+	}
+
+	@Test
+	void capsPongAtItsPlayerCount() {
+		open(MessageType.PONG_GAME_OPEN, new PongConfig(GameType.PONG, 4, 3, true), PongConfig.class);
+
+		for (String player : new String[]{"a", "b", "c"})
+			assertThat(games.join(GAME, player)).isNotNull();
+		assertThat(games.join(GAME, "d")).isNull();
+		assertThat(games.getGameParticipants(GAME)).containsExactly("host", "a", "b", "c");
+	}
+
+	@Test
+	void startsGamesSimulatedByTheHostAlone() {
+		open(MessageType.PONG_GAME_OPEN, new PongConfig(GameType.PONG, 2, 3, false), PongConfig.class);
+
+		assertThat(games.startGame(GAME, "host")).isNotNull();
+	}
+
+	private <T extends GameConfig> void open(MessageType type, T config, Class<T> configType) {
+		Message message = new Message(GAME, 1, type, "host", JSON.toJson(config), LocalDateTime.now());
+		assertThat(games.open(message, config.type(), configType)).isTrue();
+	}
+}
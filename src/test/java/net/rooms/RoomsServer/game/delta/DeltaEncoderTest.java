@@ -0,0 +1,134 @@
+package net.rooms.RoomsServer.game.delta;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.notifications.DeltaNotification;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeltaEncoderTest {
+	private static final String FIRST = "{\"tick\":1,\"ball\":{\"x\":0.25,\"y\":0.5},\"paddles\":[0.5,0.5]}";
+	private static final String SECOND = "{\"tick\":2,\"ball\":{\"x\":0.35,\"y\":0.5},\"paddles\":[0.5,0.5]}";
+	private static final String THIRD = "{\"tick\":3,\"ball\":{\"x\":0.45,\"y\":0.5},\"paddles\":[0.5,0.5]}";
+
+	private final DeltaEncoder encoder = new DeltaEncoder(8);
+
+	@Test
+	void sendsKeyframesUntilAcknowledged() {
+		DeltaNotification first = decode(encoder.next(FIRST).encodeFor("session"));
+		DeltaNotification second = decode(encoder.next(SECOND).encodeFor("session"));
+
+		assertThat(first.seq()).isEqualTo(1);
+		assertThat(first.base()).isNull();
+		assertThat(first.payload()).isEqualTo(FIRST);
+		assertThat(second.seq()).isEqualTo(2);
+		assertThat(second.base()).isNull();
+		assertThat(second.payload()).isEqualTo(SECOND);
+	}
+
+	@Test
+	void sendsPatchesAgainstTheAcknowledgedFrame() {
+		encoder.next(FIRST);
+		encoder.ack("session", 1);
+		DeltaNotification delta = decode(encoder.next(SECOND).encodeFor("session"));
+
+		assertThat(delta.seq()).isEqualTo(2);
+		assertThat(delta.base()).isEqualTo(1);
+		JsonObject patched = JsonMergePatchTest.apply(json(FIRST), json(delta.payload()));
+		assertThat(patched).isEqualTo(json(SECOND));
+	}
+
+	@Test
+	void tracksEverySessionSeparately() {
+		encoder.next(FIRST);
+		encoder.next(SECOND);
+		encoder.ack("laptop", 1);
+		encoder.ack("phone", 2);
+		DeltaEncoder.Frame frame = encoder.next(THIRD);
+
+		DeltaNotification laptop = decode(frame.encodeFor("laptop"));
+		DeltaNotification phone = decode(frame.encodeFor("phone"));
+		DeltaNotification tablet = decode(frame.encodeFor("tablet"));
+		assertThat(laptop.base()).isEqualTo(1);
+		assertThat(JsonMergePatchTest.apply(json(FIRST), json(laptop.payload()))).isEqualTo(json(THIRD));
+		assertThat(phone.base()).isEqualTo(2);
+		assertThat(JsonMergePatchTest.apply(json(SECOND), json(phone.payload()))).isEqualTo(json(THIRD));
+		assertThat(tablet.base()).isNull();
+	}
+
+	@Test
+	void sharesEncodingsBetweenSessionsWithTheSameBase() {
+		encoder.next(FIRST);
+		encoder.ack("laptop", 1);
+		encoder.ack("phone", 1);
+		DeltaEncoder.Frame frame = encoder.next(SECOND);
+
+		assertThat(frame.encodeFor("laptop")).isSameAs(frame.encodeFor("phone"));
+	}
+
+	@Test
+	void ignoresStaleAndUnknownAcknowledgements() {
+		encoder.next(FIRST);
+		encoder.next(SECOND);
+		encoder.ack("session", 2);
+		encoder.ack("session", 1); // Older than acknowledged
+		encoder.ack("session", 5); // Not sent yet
+
+		assertThat(decode(encoder.next(THIRD).encodeFor("session")).base()).isEqualTo(2);
+	}
+
+	@Test
+	void resetSessionsAreSentAKeyframe() {
+		encoder.next(FIRST);
+		encoder.ack("session", 1);
+		encoder.reset("session");
+
+		assertThat(decode(encoder.next(SECOND).encodeFor("session")).base()).isNull();
+	}
+
+	@Test
+	void sendsAKeyframeOnEveryInterval() {
+		DeltaEncoder encoder = new DeltaEncoder(2);
+		encoder.next(FIRST);
+		encoder.ack("session", 1);
+
+		DeltaNotification keyframe = decode(encoder.next(SECOND).encodeFor("session"));
+		assertThat(keyframe.base()).isNull();
+		encoder.ack("session", 2);
+		assertThat(decode(encoder.next(THIRD).encodeFor("session")).base()).isEqualTo(2);
+	}
+
+	@Test
+	void sendsAKeyframeWhenTheBaseIsTooOld() {
+		DeltaEncoder encoder = new DeltaEncoder(3);
+		encoder.next(FIRST);
+		encoder.ack("session", 1);
+		encoder.next(SECOND);
+		encoder.next(THIRD);
+		encoder.next(FIRST); // Replaces the first frame in the history
+
+		assertThat(decode(encoder.next(SECOND).encodeFor("session")).base()).isNull();
+	}
+
+	@Test
+	void sendsPacketsThatAreNotJsonAsKeyframes() {
+		encoder.next(FIRST);
+		encoder.ack("session", 1);
+		DeltaNotification notification = decode(encoder.next("not json").encodeFor("session"));
+
+		assertThat(notification.base()).isNull();
+		assertThat(notification.payload()).isEqualTo("not json");
+	}
+
+	private static DeltaNotification decode(byte[] notification) {
+		return JSON.fromJson(new String(notification, StandardCharsets.UTF_8), DeltaNotification.class);
+	}
+
+	private static JsonObject json(String json) {
+		return JsonParser.parseString(json).getAsJsonObject();
+	}
+}
@@ -0,0 +1,82 @@
+package net.rooms.RoomsServer.game.delta;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonMergePatchTest {
+
+	@Test
+	void holdsOnlyChangedMembers() {
+		assertThat(diff("{\"a\":1,\"b\":2}", "{\"a\":1,\"b\":3}")).isEqualTo(json("{\"b\":3}"));
+		assertThat(diff("{\"a\":1}", "{\"a\":1}")).isEqualTo(json("{}"));
+	}
+
+	@Test
+	void marksRemovedMembersWithNull() {
+		assertThat(diff("{\"a\":1,\"b\":2}", "{\"a\":1}").toString()).isEqualTo("{\"b\":null}");
+	}
+
+	@Test
+	void patchesNestedObjectsAndReplacesArrays() {
+		JsonObject patch = diff("{\"ball\":{\"x\":1,\"y\":2},\"scores\":[1,2]}", "{\"ball\":{\"x\":1,\"y\":3},\"scores\":[1,3]}");
+		assertThat(patch).isEqualTo(json("{\"ball\":{\"y\":3},\"scores\":[1,3]}"));
+	}
+
+	@Test
+	void replacesMembersThatChangeType() {
+		assertThat(diff("{\"a\":[1]}", "{\"a\":{\"b\":1}}")).isEqualTo(json("{\"a\":{\"b\":1}}"));
+		assertThat(diff("{\"a\":{\"b\":1}}", "{\"a\":2}")).isEqualTo(json("{\"a\":2}"));
+	}
+
+	@Test
+	void rejectsDocumentsThatCannotBePatched() {
+		assertThat(JsonMergePatch.diff(JsonParser.parseString("[1]"), json("{}"))).isNull();
+		assertThat(JsonMergePatch.diff(json("{}"), JsonParser.parseString("3"))).isNull();
+		assertThat(diff("{\"a\":1}", "{\"a\":null}")).isNull();
+		assertThat(diff("{\"a\":{\"b\":1}}", "{\"a\":{\"b\":null}}")).isNull();
+		assertThat(diff("{}", "{\"a\":{\"b\":null}}")).isNull();
+	}
+
+	@Test
+	void allowsNullsInsideArrays() {
+		assertThat(diff("{\"a\":[1]}", "{\"a\":[null]}")).isEqualTo(json("{\"a\":[null]}"));
+	}
+
+	@Test
+	void patchesApplyToTheBase() {
+		String base = "{\"tick\":1,\"ball\":{\"x\":0.5,\"y\":0.5},\"left\":true,\"paddles\":[0.1,0.2]}";
+		String target = "{\"tick\":2,\"ball\":{\"x\":0.6},\"paddles\":[0.1,0.3],\"serving\":false}";
+
+		assertThat(apply(json(base), diff(base, target))).isEqualTo(json(target));
+	}
+
+	private static JsonObject diff(String base, String target) {
+		return JsonMergePatch.diff(json(base), json(target));
+	}
+
+	private static JsonObject json(String json) {
+		return JsonParser.parseString(json).getAsJsonObject();
+	}
+
+	/**
+	 * Applies a merge patch as described by RFC 7396.
+	 */
+	static JsonObject apply(JsonObject target, JsonObject patch) {
+		JsonObject result = target.deepCopy();
+		for (Map.Entry<String, JsonElement> member : patch.entrySet()) {
+			JsonElement value = member.getValue();
+			JsonElement current = result.get(member.getKey());
+			if (value.isJsonNull()) result.remove(member.getKey());
+			else if (value.isJsonObject() && current != null && current.isJsonObject())
+				result.add(member.getKey(), apply(current.getAsJsonObject(), value.getAsJsonObject()));
+			else result.add(member.getKey(), value);
+		}
+		return result;
+	}
+}
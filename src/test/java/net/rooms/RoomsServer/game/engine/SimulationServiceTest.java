@@ -0,0 +1,112 @@
+package net.rooms.RoomsServer.game.engine;
+
+import net.rooms.RoomsServer.game.GameRepository;
+import net.rooms.RoomsServer.game.config.GameConfig;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SimulationServiceTest {
+	private static final long GAME = 7;
+
+	private final GameRepository games = mock(GameRepository.class);
+	private final TickScheduler scheduler = new TickScheduler(1, 1000);
+	private final SimulationService service = new SimulationService(games, scheduler);
+
+	@AfterEach
+	void shutdown() {
+		service.shutdown();
+		scheduler.shutdown();
+	}
+
+	@Test
+	void ignoresGamesSimulatedByTheHost() {
+		when(games.getConfig(GAME)).thenReturn(new PongConfig(GameType.PONG, 2, 3, false));
+
+		assertThat(service.start(GAME, new Listener())).isFalse();
+		assertThat(service.isSimulated(GAME)).isFalse();
+	}
+
+	@Test
+	void reportsResultsOffTheTickThread() throws Exception {
+		game(new SnakesConfig(GameType.SNAKES, 2, 100, true));
+		Listener listener = new Listener();
+
+		assertThat(service.start(GAME, listener)).isTrue();
+		assertThat(service.isSimulated(GAME)).isTrue();
+		service.leave(GAME, "guest");
+
+		assertThat(listener.result.get(5, TimeUnit.SECONDS)).isEqualTo("game-results");
+		assertThat(service.isSimulated(GAME)).isFalse();
+		assertThat(listener.aborted).isNotDone();
+	}
+
+	@Test
+	void abortsFailedSimulations() throws Exception {
+		game(new PongConfig(GameType.PONG, 2, 3, true));
+		Listener listener = new Listener() {
+			@Override
+			public void state(long id, String state) {
+				throw new IllegalStateException("Broken");
+			}
+		};
+
+		assertThat(service.start(GAME, listener)).isTrue();
+
+		assertThat(listener.aborted.get(5, TimeUnit.SECONDS)).isEqualTo("host");
+		assertThat(service.isSimulated(GAME)).isFalse();
+		assertThat(service.input(GAME, "host", "{\"direction\":1}")).isFalse();
+		assertThat(listener.result).isNotDone();
+	}
+
+	@Test
+	void abortsGamesLeftWithASinglePlayer() throws Exception {
+		game(new PongConfig(GameType.PONG, 2, 3, true));
+		when(games.getGameParticipants(GAME)).thenReturn(new LinkedHashSet<>(List.of("host")));
+		Listener listener = new Listener();
+
+		assertThat(service.start(GAME, listener)).isFalse();
+		assertThat(listener.aborted.get(5, TimeUnit.SECONDS)).isEqualTo("host");
+		assertThat(service.isSimulated(GAME)).isFalse();
+	}
+
+	private void game(GameConfig config) {
+		when(games.getConfig(GAME)).thenReturn(config);
+		when(games.getHost(GAME)).thenReturn("host");
+		when(games.getGameParticipants(GAME)).thenReturn(new LinkedHashSet<>(List.of("host", "guest")));
+	}
+
+	private static class Listener implements SimulationListener {
+		final CompletableFuture<String> result = new CompletableFuture<>(); // The thread it was reported on
+		final CompletableFuture<String> aborted = new CompletableFuture<>(); // The host of the game
+
+		@Override
+		public void state(long id, String state) {
+		}
+
+		@Override
+		public void changes(long id, String changes) {
+		}
+
+		@Override
+		public void result(long id, String host, String result) {
+			this.result.complete(Thread.currentThread().getName());
+		}
+
+		@Override
+		public void aborted(long id, String host) {
+			this.aborted.complete(host);
+		}
+	}
+}
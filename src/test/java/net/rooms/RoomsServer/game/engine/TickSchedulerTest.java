@@ -0,0 +1,93 @@
+package net.rooms.RoomsServer.game.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TickSchedulerTest {
+	private final TickScheduler scheduler = new TickScheduler(2, 1000);
+
+	@AfterEach
+	void shutdown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	void ticksUntilTheSimulationEnds() throws InterruptedException {
+		CountDownLatch ended = new CountDownLatch(1);
+		TestSimulation simulation = new TestSimulation(() -> {
+			ended.countDown();
+			return false;
+		}, 5);
+		scheduler.register(simulation, e -> {
+		});
+
+		assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(50);
+		assertThat(simulation.ticks.get()).isEqualTo(5);
+	}
+
+	@Test
+	void reportsAndDropsFailedSimulations() throws Exception {
+		IllegalStateException failure = new IllegalStateException("Broken");
+		TestSimulation failing = new TestSimulation(() -> {
+			throw failure;
+		}, 3);
+		CompletableFuture<RuntimeException> reported = new CompletableFuture<>();
+		scheduler.register(failing, reported::complete);
+
+		CountDownLatch healthy = new CountDownLatch(20);
+		scheduler.register(new TestSimulation(() -> true, 1) {
+			@Override
+			public boolean tick() {
+				healthy.countDown();
+				return true;
+			}
+		}, e -> {
+		});
+
+		assertThat(reported.get(5, TimeUnit.SECONDS)).isSameAs(failure);
+		assertThat(healthy.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(50);
+		assertThat(failing.ticks.get()).isEqualTo(3);
+	}
+
+	/**
+	 * Keeps running until its last tick, which runs the given action.
+	 */
+	private static class TestSimulation implements Simulation {
+		final AtomicInteger ticks = new AtomicInteger();
+		private final BooleanSupplier last;
+		private final int count;
+
+		TestSimulation(BooleanSupplier last, int count) {
+			this.last = last;
+			this.count = count;
+		}
+
+		@Override
+		public boolean tick() {
+			if (ticks.incrementAndGet() < count) return true;
+			return last.getAsBoolean();
+		}
+
+		@Override
+		public void input(String username, String payload) {
+		}
+
+		@Override
+		public void leave(String username) {
+		}
+
+		@Override
+		public void stop() {
+		}
+	}
+}
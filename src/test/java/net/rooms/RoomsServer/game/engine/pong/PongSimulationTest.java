@@ -0,0 +1,123 @@
+package net.rooms.RoomsServer.game.engine.pong;
+
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.PongConfig;
+import net.rooms.RoomsServer.game.engine.SimulationListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+class PongSimulationTest {
+	private static final int RATE = 60;
+
+	private final Listener listener = new Listener();
+	private final PongSimulation simulation = new PongSimulation(1, "host", List.of("host", "guest"),
+			new PongConfig(GameType.PONG, 2, 3, true), RATE, listener);
+
+	@Test
+	void pushesTheStateOnEveryTick() {
+		for (int i = 0; i < 3; i++)
+			assertThat(simulation.tick()).isTrue();
+
+		assertThat(listener.states).hasSize(3);
+		PongState state = listener.state();
+		assertThat(state.tick()).isEqualTo(3);
+		assertThat(state.paddles()).extracting(PongState.Paddle::username).containsExactly("host", "guest");
+		assertThat(state.paddles()).extracting(PongState.Paddle::side).containsExactly(PongSide.LEFT, PongSide.RIGHT);
+	}
+
+	@Test
+	void movesPaddlesByInput() {
+		simulation.input("host", "{\"direction\":5}");
+		simulation.input("guest", "{\"direction\":-1}");
+		simulation.input("guest", "not json");
+		simulation.input("stranger", "{\"direction\":1}");
+		for (int i = 0; i < RATE / 10; i++)
+			simulation.tick();
+
+		List<PongState.Paddle> paddles = listener.state().paddles();
+		assertThat(paddles.get(0).position()).isCloseTo(0.6, offset(1e-3));
+		assertThat(paddles.get(1).position()).isCloseTo(0.4, offset(1e-3));
+	}
+
+	@Test
+	void needsTwoToFourPlayers() {
+		PongConfig config = new PongConfig(GameType.PONG, 4, 3, true);
+
+		assertThatThrownBy(() -> new PongSimulation(1, "host", List.of("host"), config, RATE, listener))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new PongSimulation(1, "host", List.of("host", "a", "b", "c", "d"), config, RATE, listener))
+				.isInstanceOf(IllegalArgumentException.class);
+
+		PongSimulation full = new PongSimulation(1, "host", List.of("host", "a", "b", "c"), config, RATE, listener);
+		full.tick();
+		assertThat(listener.state().paddles()).extracting(PongState.Paddle::username).containsExactly("host", "a", "b", "c");
+	}
+
+	@Test
+	void theLastPlayerLeftWins() {
+		simulation.tick();
+		simulation.leave("host");
+
+		assertThat(simulation.tick()).isFalse();
+		assertThat(listener.results).hasSize(1);
+		PongResult result = JSON.fromJson(listener.results.get(0), PongResult.class);
+		assertThat(result.winner()).isEqualTo("guest");
+		assertThat(result.scores()).isEqualTo(Map.of("host", 0, "guest", 0));
+		assertThat(simulation.tick()).isFalse();
+	}
+
+	@Test
+	void aMissScoresForTheOpponent() {
+		// Nobody moves, so every serve is missed by whoever it is aimed at
+		for (int i = 0; i < 60 * RATE && listener.results.isEmpty(); i++)
+			simulation.tick();
+
+		assertThat(listener.results).hasSize(1);
+		PongResult result = JSON.fromJson(listener.results.get(0), PongResult.class);
+		assertThat(result.scores().get(result.winner())).isEqualTo(3);
+	}
+
+	@Test
+	void stoppedSimulationsDoNotReport() {
+		simulation.stop();
+
+		assertThat(simulation.tick()).isFalse();
+		assertThat(listener.states).isEmpty();
+		assertThat(listener.results).isEmpty();
+	}
+
+	private static class Listener implements SimulationListener {
+		final List<String> states = new ArrayList<>();
+		final List<String> results = new ArrayList<>();
+
+		PongState state() {
+			return JSON.fromJson(states.get(states.size() - 1), PongState.class);
+		}
+
+		@Override
+		public void state(long id, String state) {
+			states.add(state);
+		}
+
+		@Override
+		public void changes(long id, String changes) {
+		}
+
+		@Override
+		public void result(long id, String host, String result) {
+			results.add(result);
+		}
+
+		@Override
+		public void aborted(long id, String host) {
+		}
+	}
+}
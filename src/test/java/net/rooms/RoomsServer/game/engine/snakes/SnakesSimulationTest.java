@@ -0,0 +1,134 @@
+package net.rooms.RoomsServer.game.engine.snakes;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.rooms.RoomsServer.JSON;
+import net.rooms.RoomsServer.game.config.GameType;
+import net.rooms.RoomsServer.game.config.SnakesConfig;
+import net.rooms.RoomsServer.game.engine.SimulationListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnakesSimulationTest {
+	private final Listener listener = new Listener();
+	// Ten ticks per second, so the snakes move on every tick
+	private final SnakesSimulation simulation = new SnakesSimulation(1, "host", List.of("host", "guest"),
+			new SnakesConfig(GameType.SNAKES, 2, 100, true), SnakesSimulation.MOVES_PER_SECOND, listener);
+
+	@Test
+	void theFirstFrameHoldsTheBoard() {
+		simulation.tick();
+
+		JsonObject frame = JsonParser.parseString(listener.changes.get(0)).getAsJsonObject();
+		assertThat(frame.get("tick").getAsLong()).isEqualTo(1);
+		Map<Integer, Integer> board = board(frame);
+		assertThat(board.values()).containsOnlyOnce(SnakesSimulation.FOOD);
+		assertThat(board.values().stream().filter(value -> value == 1)).hasSize(SnakesSimulation.INITIAL_LENGTH);
+		assertThat(board.values().stream().filter(value -> value == 2)).hasSize(SnakesSimulation.INITIAL_LENGTH);
+		assertThat(frame.getAsJsonArray("scores")).hasSize(2);
+	}
+
+	@Test
+	void laterFramesOnlyHoldChanges() {
+		simulation.tick();
+		simulation.tick();
+
+		JsonObject frame = JsonParser.parseString(listener.changes.get(1)).getAsJsonObject();
+		// Every snake moved its head and its tail, unless it ate and grew
+		assertThat(frame.getAsJsonArray("cells").size()).isBetween(2 * 2, 2 * 6);
+	}
+
+	@Test
+	void needsTwoToFourPlayers() {
+		SnakesConfig config = new SnakesConfig(GameType.SNAKES, 4, 100, true);
+
+		assertThatThrownBy(() -> new SnakesSimulation(1, "host", List.of("host"), config, SnakesSimulation.MOVES_PER_SECOND, listener))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new SnakesSimulation(1, "host", List.of("host", "a", "b", "c", "d"), config,
+				SnakesSimulation.MOVES_PER_SECOND, listener)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(listener.results).isEmpty();
+	}
+
+	@Test
+	void theLastSnakeAliveWins() {
+		// The snake of the guest turns towards the bottom wall, turning back is ignored
+		simulation.input("host", "{\"direction\":\"LEFT\"}");
+		simulation.input("guest", "{\"direction\":\"DOWN\"}");
+		int ticks = run();
+
+		assertThat(ticks).isEqualTo(9);
+		assertThat(result().winner()).isEqualTo("host");
+	}
+
+	@Test
+	void snakesTurnByInput() {
+		simulation.input("host", "{\"direction\":\"UP\"}");
+		simulation.input("host", "{\"direction\":\"SIDEWAYS\"}");
+		int ticks = run();
+
+		assertThat(ticks).isEqualTo(9);
+		assertThat(result().winner()).isEqualTo("guest");
+	}
+
+	@Test
+	void playersWhoLeaveLose() {
+		simulation.tick();
+		simulation.leave("host");
+
+		assertThat(simulation.tick()).isFalse();
+		assertThat(result().winner()).isEqualTo("guest");
+		assertThat(result().scores()).containsOnlyKeys("host", "guest");
+	}
+
+	/**
+	 * @return The number of ticks until the game concluded.
+	 */
+	private int run() {
+		int ticks = 1;
+		while (simulation.tick()) ticks++;
+		return ticks;
+	}
+
+	private SnakesResult result() {
+		assertThat(listener.results).hasSize(1);
+		return JSON.fromJson(listener.results.get(0), SnakesResult.class);
+	}
+
+	private static Map<Integer, Integer> board(JsonObject frame) {
+		Map<Integer, Integer> board = new HashMap<>();
+		var cells = frame.getAsJsonArray("cells");
+		for (int i = 0; i < cells.size(); i += 2)
+			board.put(cells.get(i).getAsInt(), cells.get(i + 1).getAsInt());
+		return board;
+	}
+
+	private static class Listener implements SimulationListener {
+		final List<String> changes = new ArrayList<>();
+		final List<String> results = new ArrayList<>();
+
+		@Override
+		public void state(long id, String state) {
+		}
+
+		@Override
+		public void changes(long id, String changes) {
+			this.changes.add(changes);
+		}
+
+		@Override
+		public void result(long id, String host, String result) {
+			results.add(result);
+		}
+
+		@Override
+		public void aborted(long id, String host) {
+		}
+	}
+}
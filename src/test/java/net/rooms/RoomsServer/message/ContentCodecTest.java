@@ -0,0 +1,89 @@
+package net.rooms.RoomsServer.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentCodecTest {
+	private final ContentCodec codec = new ContentCodec(100);
+
+	@Test
+	void storesShortContentAsIs() {
+		for (String content : new String[]{"", "hello", "a".repeat(100), "\u0002 not a marker"})
+			assertThat(codec.encode(content)).isEqualTo(content);
+		assertThat(codec.encode(null)).isNull();
+		assertThat(codec.decode((String) null)).isNull();
+	}
+
+	@Test
+	void compressesLongContent() {
+		String content = "Shall we play another game of pong? ".repeat(20);
+		String stored = codec.encode(content);
+
+		assertThat(stored).startsWith("\u0001D").hasSizeLessThan(content.length() / 4);
+		assertThat(codec.decode(stored)).isEqualTo(content);
+	}
+
+	@Test
+	void storesContentThatDoesNotCompressAsIs() {
+		SplittableRandom random = new SplittableRandom(3);
+		byte[] noise = new byte[300];
+		random.nextBytes(noise);
+		String content = Base64.getEncoder().encodeToString(noise);
+
+		assertThat(codec.encode(content)).isEqualTo(content);
+		assertThat(codec.decode(content)).isEqualTo(content);
+	}
+
+	@Test
+	void roundTripsContentStartingWithTheMarker() {
+		for (String content : new String[]{"\u0001", "\u0001D", "\u0001Rhello", "\u0001" + "x".repeat(200)}) {
+			String stored = codec.encode(content);
+			assertThat(codec.decode(stored)).as("%s stored as %s", content, stored).isEqualTo(content);
+		}
+		assertThat(codec.encode("\u0001Dnot compressed")).isEqualTo("\u0001R\u0001Dnot compressed");
+	}
+
+	@Test
+	void roundTripsUnicode() {
+		String content = "Ça va? 🏓 Давай сыграем ещё раз! 你好 ".repeat(10);
+		assertThat(codec.decode(codec.encode(content))).isEqualTo(content);
+	}
+
+	@Test
+	void readsContentWhenCompressionIsDisabled() {
+		String content = "abc".repeat(100);
+		ContentCodec disabled = new ContentCodec(0);
+
+		assertThat(disabled.encode(content)).isEqualTo(content);
+		assertThat(disabled.decode(codec.encode(content))).isEqualTo(content);
+		assertThat(codec.decode("\u0001?written before markers")).isEqualTo("\u0001?written before markers");
+	}
+
+	@Test
+	void decodesMessages() {
+		LocalDateTime sent = LocalDateTime.now();
+		Message plain = new Message(1, 2, MessageType.MESSAGE, "alice", "hello", sent);
+		assertThat(codec.decode(plain)).isSameAs(plain);
+
+		String content = "hello ".repeat(50);
+		Message stored = new Message(1, 2, MessageType.MESSAGE, "alice", codec.encode(content), sent);
+		assertThat(codec.decode(stored)).isEqualTo(new Message(1, 2, MessageType.MESSAGE, "alice", content, sent));
+	}
+
+	@Test
+	void rejectsCorruptContent() {
+		String stored = codec.encode("z".repeat(500));
+
+		assertThatThrownBy(() -> codec.decode(stored.substring(0, stored.length() - 4)))
+				.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> codec.decode("\u0001D" + Base64.getEncoder().encodeToString("not deflated".getBytes())))
+				.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> new ContentCodec(-1)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
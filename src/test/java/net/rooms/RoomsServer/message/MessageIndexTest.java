@@ -0,0 +1,127 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class MessageIndexTest {
+	private static final long ROOM = 1;
+
+	private final MessageRepository repository = mock(MessageRepository.class);
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final MessageIndex index = new MessageIndex(repository, registry, Long.MAX_VALUE);
+
+	@Test
+	void splitsTextIntoTerms() {
+		assertThat(MessageIndex.terms("Hello, WORLD! hello 42x ÉTÉ")).containsExactly("hello", "world", "42x", "été");
+		assertThat(MessageIndex.terms("a".repeat(40))).containsExactly("a".repeat(32));
+		assertThat(MessageIndex.terms(" ,.! ")).isEmpty();
+		assertThat(MessageIndex.terms(null)).isEmpty();
+	}
+
+	@Test
+	void findsMessagesWithEveryTermNewestFirst() {
+		stored(message(1, "the quick brown fox"),
+				message(2, "a lazy dog"),
+				message(3, "The fox and the dog"),
+				new Message(4, ROOM, MessageType.PONG_GAME_OPEN, "alice", "fox dog", LocalDateTime.now()),
+				message(5, "dog, fox!"));
+
+		assertThat(index.search(ROOM, "fox", Long.MAX_VALUE, 10)).containsExactly(5L, 3L, 1L);
+		assertThat(index.search(ROOM, "DOG fox", Long.MAX_VALUE, 10)).containsExactly(5L, 3L);
+		assertThat(index.search(ROOM, "fox cat", Long.MAX_VALUE, 10)).isEmpty();
+		assertThat(index.search(ROOM, "...", Long.MAX_VALUE, 10)).isEmpty();
+		verify(repository, times(1)).forEachInRoom(eq(ROOM), any());
+	}
+
+	@Test
+	void pagesThroughResults() {
+		List<Message> messages = new ArrayList<>();
+		for (long id = 1; id <= 500; id++)
+			messages.add(message(id, id % 3 == 0 ? "fizz buzz" : "fizz"));
+		stored(messages.toArray(Message[]::new));
+
+		assertThat(index.search(ROOM, "fizz", Long.MAX_VALUE, 3)).containsExactly(500L, 499L, 498L);
+		assertThat(index.search(ROOM, "buzz fizz", 300, 3)).containsExactly(297L, 294L, 291L);
+		assertThat(index.search(ROOM, "buzz", 4, 10)).containsExactly(3L);
+		assertThat(index.search(ROOM, "buzz", 1, 10)).isEmpty();
+	}
+
+	@Test
+	void addsAndRemovesMessagesOfSearchedRooms() {
+		stored(message(1, "hello"));
+		index.add(message(2, "hello again")); // Not searched yet, ignored
+		index.search(ROOM, "hello", Long.MAX_VALUE, 10);
+
+		index.add(message(3, "hello there"));
+		index.add(message(3, "hello there")); // Added again once written
+		index.add(new Message(4, ROOM, MessageType.PONG_GAME_OPEN, "alice", "hello", LocalDateTime.now()));
+		assertThat(index.search(ROOM, "hello", Long.MAX_VALUE, 10)).containsExactly(3L, 1L);
+
+		index.remove(message(3, "hello there"));
+		assertThat(index.search(ROOM, "hello", Long.MAX_VALUE, 10)).containsExactly(1L);
+		assertThat(index.search(ROOM, "there", Long.MAX_VALUE, 10)).isEmpty();
+	}
+
+	@Test
+	void messagesCreatedWhileBuildingAreAddedAfterwards() {
+		doAnswer(invocation -> {
+			Consumer<Message> consumer = invocation.getArgument(1);
+			consumer.accept(message(1, "hello"));
+			index.add(message(2, "hello")); // Not written yet, so not read either
+			Message failed = message(3, "hello");
+			index.add(failed);
+			index.remove(failed); // Failed to write
+			return null;
+		}).when(repository).forEachInRoom(eq(ROOM), any());
+
+		assertThat(index.search(ROOM, "hello", Long.MAX_VALUE, 10)).containsExactly(2L, 1L);
+	}
+
+	@Test
+	void dropsTheLeastRecentlyUsedRoomsOverBudget() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MessageIndex index = new MessageIndex(repository, registry, 500);
+		doAnswer(invocation -> {
+			long roomID = invocation.getArgument(0);
+			Consumer<Message> consumer = invocation.getArgument(1);
+			consumer.accept(new Message(roomID, roomID, MessageType.MESSAGE, "alice", "alpha beta", LocalDateTime.now()));
+			return null;
+		}).when(repository).forEachInRoom(anyLong(), any());
+
+		for (long room = 1; room <= 3; room++)
+			assertThat(index.search(room, "alpha", Long.MAX_VALUE, 10)).containsExactly(room);
+
+		// Every term is estimated at over a hundred bytes, so only two rooms of two terms fit
+		assertThat(registry.get("rooms.messages.search.rooms").gauge().value()).isEqualTo(2);
+		assertThat(registry.get("rooms.messages.search.bytes").gauge().value()).isLessThanOrEqualTo(500);
+		index.search(1, "beta", Long.MAX_VALUE, 10);
+		verify(repository, times(2)).forEachInRoom(eq(1L), any());
+	}
+
+	private void stored(Message... messages) {
+		doAnswer(invocation -> {
+			Consumer<Message> consumer = invocation.getArgument(1);
+			for (Message message : messages)
+				consumer.accept(message);
+			return null;
+		}).when(repository).forEachInRoom(eq(ROOM), any());
+	}
+
+	private static Message message(long id, String content) {
+		return new Message(id, ROOM, MessageType.MESSAGE, "alice", content, LocalDateTime.now());
+	}
+}
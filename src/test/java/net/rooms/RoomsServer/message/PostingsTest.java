@@ -0,0 +1,129 @@
+package net.rooms.RoomsServer.message;
+
+import net.rooms.RoomsServer.message.MessageIndex.Postings;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostingsTest {
+
+	@Test
+	void writesSmallDifferencesInASingleByte() {
+		Postings postings = postings(1000, 1001, 1100, 1227);
+
+		// The first ID is a difference from zero and takes two bytes
+		assertThat(postings.length).isEqualTo(2 + 3);
+		assertThat(postings.decode()).containsExactly(1000, 1001, 1100, 1227);
+	}
+
+	@Test
+	void writesSevenBitsPerByte() {
+		long[] ids = {0x7F, 0x7F + 0x80, 0x7F + 0x80 + 0x4000, Long.MAX_VALUE};
+		Postings postings = postings(ids);
+
+		// 0x7F fits in one byte, 0x80 needs two, 0x4000 three and the rest of the range nine
+		assertThat(postings.length).isEqualTo(1 + 2 + 3 + 9);
+		assertThat(postings.decode()).containsExactly(ids);
+		assertThat(postings.last).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	void keepsIdsSortedAndDistinct() {
+		Postings postings = postings(10, 30, 50);
+		postings.add(20);
+		postings.add(30);
+		postings.add(5);
+		postings.add(50);
+
+		assertThat(postings.decode()).containsExactly(5, 10, 20, 30, 50);
+		assertThat(postings.count).isEqualTo(5);
+	}
+
+	@Test
+	void removesIds() {
+		Postings postings = postings(10, 20, 30);
+		postings.remove(20);
+		postings.remove(25);
+
+		assertThat(postings.decode()).containsExactly(10, 30);
+		postings.remove(10);
+		postings.remove(30);
+		assertThat(postings.count).isZero();
+		assertThat(postings.contains(10)).isFalse();
+	}
+
+	@Test
+	void decodesAnyBlockOnItsOwn() {
+		long[] ids = randomIds(5 * Postings.BLOCK + 7, 1);
+		Postings postings = postings(ids);
+
+		long[] block = new long[Postings.BLOCK];
+		List<Long> decoded = new ArrayList<>();
+		for (int b = 0; b <= postings.blockOf(Long.MAX_VALUE); b++) {
+			int size = postings.decodeBlock(b, block);
+			for (int i = 0; i < size; i++)
+				decoded.add(block[i]);
+		}
+		assertThat(decoded).containsExactlyElementsOf(Arrays.stream(ids).boxed().toList());
+		assertThat(postings.decodeBlock(6, block)).isZero();
+	}
+
+	@Test
+	void findsTheBlockOfAnId() {
+		Postings postings = new Postings();
+		for (long id = 1; id <= 3 * Postings.BLOCK; id++)
+			postings.add(id * 10);
+
+		assertThat(postings.blockOf(10)).isZero();
+		assertThat(postings.blockOf(Postings.BLOCK * 10)).isZero();
+		assertThat(postings.blockOf(Postings.BLOCK * 10 + 5)).isEqualTo(1);
+		assertThat(postings.blockOf(Postings.BLOCK * 10 + 10)).isEqualTo(1);
+		assertThat(postings.blockOf(Long.MAX_VALUE)).isEqualTo(2);
+		assertThat(new Postings().blockOf(Long.MAX_VALUE)).isZero();
+	}
+
+	@Test
+	void matchesASortedSet() {
+		SplittableRandom random = new SplittableRandom(7);
+		Postings postings = new Postings();
+		TreeSet<Long> expected = new TreeSet<>();
+		for (int i = 0; i < 2000; i++) {
+			long id = random.nextLong(1, 5000);
+			if (random.nextInt(4) == 0) {
+				postings.remove(id);
+				expected.remove(id);
+			} else {
+				postings.add(id);
+				expected.add(id);
+			}
+		}
+
+		assertThat(postings.decode()).containsExactly(expected.stream().mapToLong(Long::longValue).toArray());
+		for (long id = 0; id <= 5001; id++)
+			assertThat(postings.contains(id)).as("contains %d", id).isEqualTo(expected.contains(id));
+	}
+
+	private static Postings postings(long... ids) {
+		Postings postings = new Postings();
+		for (long id : ids)
+			postings.add(id);
+		return postings;
+	}
+
+	private static long[] randomIds(int count, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		long[] ids = new long[count];
+		long id = 0;
+		for (int i = 0; i < count; i++) {
+			id += random.nextLong(1, 1 << 20);
+			ids[i] = id;
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,144 @@
+package net.rooms.RoomsServer.message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecentMessagesTest {
+	private static final long ROOM = 1;
+	private static final int CAPACITY = 5;
+
+	private final MessageRepository repository = mock(MessageRepository.class);
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final RecentMessages recent = new RecentMessages(repository, registry, CAPACITY, Long.MAX_VALUE);
+
+	@Test
+	void loadsEveryRoomOnce() {
+		stored(ROOM, 1, 2, 3);
+
+		assertThat(ids(recent.list(ROOM, null, null, 10))).containsExactly(1L, 2L, 3L);
+		assertThat(ids(recent.list(ROOM, 3L, null, 10))).containsExactly(1L, 2L);
+		verify(repository, times(1)).listBefore(ROOM, Long.MAX_VALUE, CAPACITY);
+	}
+
+	@Test
+	void addsNewMessagesToLoadedRooms() {
+		stored(ROOM, 1, 2);
+		recent.put(message(ROOM, 9)); // Not loaded yet, ignored
+		recent.list(ROOM, null, null, 10);
+
+		recent.put(message(ROOM, 3));
+		recent.put(message(ROOM + 1, 4));
+
+		assertThat(ids(recent.list(ROOM, null, null, 10))).containsExactly(1L, 2L, 3L);
+		assertThat(ids(recent.list(ROOM, null, 1L, 10))).containsExactly(2L, 3L);
+	}
+
+	@Test
+	void replacesAndRemovesMessages() {
+		stored(ROOM, 1, 2, 3);
+		recent.list(ROOM, null, null, 10);
+
+		recent.put(new Message(2, ROOM, MessageType.PONG_GAME_ONGOING, "host", "{}", LocalDateTime.now()));
+		recent.remove(message(ROOM, 3));
+
+		List<Message> messages = recent.list(ROOM, null, null, 10);
+		assertThat(ids(messages)).containsExactly(1L, 2L);
+		assertThat(messages.get(1).type()).isEqualTo(MessageType.PONG_GAME_ONGOING);
+	}
+
+	@Test
+	void pagesBeyondAFullRingAreReadFromTheDatabase() {
+		stored(ROOM, 1, 2, 3, 4, 5);
+		recent.list(ROOM, null, null, 1);
+
+		recent.put(message(ROOM, 6)); // Pushes out the oldest message
+
+		assertThat(ids(recent.list(ROOM, null, null, 5))).containsExactly(2L, 3L, 4L, 5L, 6L);
+		assertThat(recent.list(ROOM, 4L, null, 3)).isNull();
+		assertThat(recent.list(ROOM, null, 1L, 3)).isNull();
+		assertThat(ids(recent.list(ROOM, null, 2L, 2))).containsExactly(3L, 4L);
+	}
+
+	@Test
+	void roomsWithFewerMessagesThanTheRingAreComplete() {
+		stored(ROOM, 4, 5);
+
+		assertThat(ids(recent.list(ROOM, 4L, null, 10))).isEmpty();
+		assertThat(ids(recent.list(ROOM, null, 0L, 10))).containsExactly(4L, 5L);
+	}
+
+	@Test
+	void dropsTheLeastRecentlyUsedRoomsOverBudget() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		RecentMessages recent = new RecentMessages(repository, registry, CAPACITY, 1000);
+		for (long room = 1; room <= 3; room++) {
+			stored(room, room * 10, room * 10 + 1);
+			recent.list(room, null, null, 10);
+		}
+
+		// Every message is estimated at well over 100 bytes, so only two rooms of two fit
+		assertThat(registry.get("rooms.messages.recent.rooms").gauge().value()).isEqualTo(2);
+		assertThat(registry.get("rooms.messages.recent.bytes").gauge().value()).isLessThanOrEqualTo(1000);
+		recent.list(1, null, null, 10);
+		verify(repository, times(2)).listBefore(1, Long.MAX_VALUE, CAPACITY);
+	}
+
+	@Test
+	void disabledWithoutCapacity() {
+		RecentMessages recent = new RecentMessages(repository, registry, 0, Long.MAX_VALUE);
+
+		assertThat(recent.list(ROOM, null, null, 10)).isNull();
+		verify(repository, times(0)).listBefore(anyLong(), anyLong(), anyInt());
+	}
+
+	@Test
+	void newMessagesDoNotWaitForLoading() throws Exception {
+		CountDownLatch querying = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(repository.listBefore(eq(ROOM), anyLong(), anyInt())).thenAnswer(invocation -> {
+			querying.countDown();
+			assertThat(release.await(5, TimeUnit.SECONDS)).isTrue();
+			return List.of(message(ROOM, 1), message(ROOM, 2));
+		});
+		// The ring of the room is held while the query runs, so new messages are added to it
+		CompletableFuture<List<Message>> loading = CompletableFuture.supplyAsync(() -> recent.list(ROOM, null, null, 10));
+		assertThat(querying.await(5, TimeUnit.SECONDS)).isTrue();
+
+		CompletableFuture.runAsync(() -> recent.put(message(ROOM, 3))).get(5, TimeUnit.SECONDS);
+		release.countDown();
+
+		assertThat(ids(loading.get(5, TimeUnit.SECONDS))).containsExactly(1L, 2L, 3L);
+	}
+
+	private void stored(long roomID, long... ids) {
+		List<Message> messages = new ArrayList<>();
+		for (long id : ids)
+			messages.add(message(roomID, id));
+		when(repository.listBefore(roomID, Long.MAX_VALUE, CAPACITY)).thenReturn(messages);
+	}
+
+	private static Message message(long roomID, long id) {
+		return new Message(id, roomID, MessageType.MESSAGE, "alice", "Hello " + id, LocalDateTime.now());
+	}
+
+	private static List<Long> ids(List<Message> messages) {
+		assertThat(messages).isNotNull();
+		return messages.stream().map(Message::id).toList();
+	}
+}
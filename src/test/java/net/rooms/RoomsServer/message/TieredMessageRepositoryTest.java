@@ -0,0 +1,117 @@
+package net.rooms.RoomsServer.message;
+
+import net.rooms.RoomsServer.message.archive.MessageArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TieredMessageRepositoryTest {
+	private static final long ROOM = 1;
+
+	private final JdbcMessageRepository database = mock(JdbcMessageRepository.class);
+	private final MessageArchive archive = mock(MessageArchive.class);
+	private final TieredMessageRepository repository = new TieredMessageRepository(database, archive, 3);
+
+	@Test
+	void joinsTheArchiveAndTheDatabase() {
+		when(archive.archivedThrough(ROOM)).thenReturn(5L);
+		when(archive.listBefore(ROOM, 6, 2)).thenReturn(messages(4, 5));
+		when(database.listBefore(ROOM, 9, 5)).thenReturn(messages(5, 6, 7, 8)); // 5 is not deleted yet
+		when(archive.listAfter(ROOM, 3, 4)).thenReturn(messages(4, 5));
+		when(database.listAfter(ROOM, 5, 2)).thenReturn(messages(6, 7));
+
+		assertThat(ids(repository.listBefore(ROOM, 9, 5))).containsExactly(4L, 5L, 6L, 7L, 8L);
+		assertThat(ids(repository.listAfter(ROOM, 3, 4))).containsExactly(4L, 5L, 6L, 7L);
+	}
+
+	@Test
+	void readsAgainWhenMessagesWereArchivedMeanwhile() {
+		// Messages 6 and 7 are archived and deleted from the database while it is read
+		when(archive.archivedThrough(ROOM)).thenReturn(5L, 7L, 7L);
+		when(database.listBefore(ROOM, 9, 5)).thenReturn(messages(8));
+		when(archive.listBefore(ROOM, 6, 4)).thenReturn(messages(2, 3, 4, 5));
+		when(archive.listBefore(ROOM, 8, 4)).thenReturn(messages(4, 5, 6, 7));
+
+		assertThat(ids(repository.listBefore(ROOM, 9, 5))).containsExactly(4L, 5L, 6L, 7L, 8L);
+	}
+
+	@Test
+	void pagesThroughTheRoomWithoutRepeats() {
+		TieredMessageRepository repository = new TieredMessageRepository(database, archive, 4);
+		// Message 3 is archived after the split was read, but is not deleted from the database yet
+		when(archive.archivedThrough(ROOM)).thenReturn(2L, 3L);
+		when(archive.listAfter(ROOM, Long.MIN_VALUE, 4)).thenReturn(messages(1, 2, 3));
+		when(database.listAfter(ROOM, 2, 1)).thenReturn(messages(3));
+		when(database.listAfter(ROOM, 3, 1)).thenReturn(messages(4));
+		when(database.listAfter(ROOM, 4, 4)).thenReturn(messages(5));
+
+		List<Message> messages = new ArrayList<>();
+		repository.forEachInRoom(ROOM, messages::add);
+		assertThat(ids(messages)).containsExactly(1L, 2L, 3L, 4L, 5L);
+	}
+
+	@Test
+	void ignoresTheArchiveOfAnotherDatabase(@TempDir Path root) throws IOException {
+		JdbcMessageRepository before = database("before", Long.MAX_VALUE);
+		new MessageArchive(before, root, 1 << 20).append(ROOM, messages(1, 2, 3));
+
+		// The database starts over, and a new room reuses the ID of the archived one
+		JdbcMessageRepository after = database("after", 100);
+		List<Message> current = List.of(new Message(2, ROOM, MessageType.MESSAGE, "bob", "new", LocalDateTime.now()));
+		when(after.listBefore(ROOM, Long.MAX_VALUE, 10)).thenReturn(current);
+		when(after.listAfter(ROOM, Long.MIN_VALUE, 3)).thenReturn(current);
+		TieredMessageRepository repository = new TieredMessageRepository(after, new MessageArchive(after, root, 1 << 20), 3);
+
+		assertThat(repository.listBefore(ROOM, Long.MAX_VALUE, 10)).isEqualTo(current);
+		List<Message> exported = new ArrayList<>();
+		repository.forEachInRoom(ROOM, exported::add);
+		assertThat(exported).isEqualTo(current);
+		try (Stream<Path> files = Files.list(root)) {
+			assertThat(files.map(path -> path.getFileName().toString())).singleElement().asString().startsWith(ROOM + ".stale-");
+		}
+	}
+
+	@Test
+	void ignoresAnArchiveAheadOfTheDatabase(@TempDir Path root) throws IOException {
+		new MessageArchive(database("same", Long.MAX_VALUE), root, 1 << 20).append(ROOM, messages(1, 2, 3));
+
+		// Restored from a backup taken before message 3 was handed out
+		JdbcMessageRepository restored = database("same", 3);
+		MessageArchive archive = new MessageArchive(restored, root, 1 << 20);
+		assertThat(archive.archivedThrough(ROOM)).isEqualTo(-1);
+
+		MessageArchive trusted = new MessageArchive(database("same", 4), root, 1 << 20);
+		trusted.append(ROOM, messages(1));
+		assertThat(new MessageArchive(database("same", 4), root, 1 << 20).archivedThrough(ROOM)).isEqualTo(1);
+	}
+
+	private static JdbcMessageRepository database(String databaseID, long idCeiling) {
+		JdbcMessageRepository database = mock(JdbcMessageRepository.class);
+		when(database.databaseID()).thenReturn(databaseID);
+		when(database.idCeiling()).thenReturn(idCeiling);
+		return database;
+	}
+
+	private static List<Message> messages(long... ids) {
+		List<Message> messages = new ArrayList<>();
+		for (long id : ids)
+			messages.add(new Message(id, ROOM, MessageType.MESSAGE, "alice", "message " + id, LocalDateTime.now()));
+		return messages;
+	}
+
+	private static List<Long> ids(List<Message> messages) {
+		return messages.stream().map(Message::id).toList();
+	}
+}
@@ -0,0 +1,103 @@
+package net.rooms.RoomsServer.message.archive;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.rooms.RoomsServer.message.JdbcMessageRepository;
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.rooms.RoomsServer.message.archive.SegmentTest.messages;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageArchiverTest {
+	private static final long ROOM = 7;
+
+	private final JdbcMessageRepository database = mock(JdbcMessageRepository.class);
+	private MessageArchiver archiver;
+
+	@TempDir
+	Path root;
+
+	@BeforeEach
+	void database() {
+		when(database.databaseID()).thenReturn("database");
+		when(database.idCeiling()).thenReturn(Long.MAX_VALUE);
+	}
+
+	@AfterEach
+	void shutdown() {
+		if (archiver != null) archiver.shutdown();
+	}
+
+	@Test
+	void deletesTheMessagesItArchived() throws IOException {
+		MessageArchive archive = archive();
+		List<Message> old = messages(1, 3);
+		when(database.listRoomsWithMessagesBefore(any())).thenReturn(List.of(ROOM));
+		when(database.listOlderThan(eq(ROOM), eq(-1L), any(), anyInt())).thenReturn(old);
+
+		archiver.archive();
+
+		assertThat(archive.archivedThrough(ROOM)).isEqualTo(3);
+		verify(database).deleteAll(ROOM, List.of(1L, 2L, 3L));
+	}
+
+	@Test
+	void deletesLeftoversOnlyIfTheArchiveHoldsThem() throws IOException {
+		MessageArchive archive = archive();
+		archive.append(ROOM, messages(1, 3)); // The server stopped before deleting them
+
+		List<Message> stored = new ArrayList<>(messages(1, 2));
+		stored.add(new Message(3, ROOM, MessageType.MESSAGE, "bob", "not the archived one", null));
+		stored.addAll(messages(4, 1));
+		when(database.listRoomsWithMessagesBefore(any())).thenReturn(List.of(ROOM));
+		when(database.listAfter(eq(ROOM), eq(Long.MIN_VALUE), anyInt())).thenReturn(stored);
+		when(database.listOlderThan(eq(ROOM), eq(3L), any(), anyInt())).thenReturn(List.of());
+
+		archiver.archive();
+
+		verify(database).deleteAll(ROOM, List.of(1L, 2L));
+		verify(database, never()).deleteAll(eq(ROOM), eq(List.of(1L, 2L, 3L)));
+	}
+
+	@Test
+	void deletesNothingForAnArchiveOfAnotherDatabase() throws IOException {
+		MessageArchive previous = archive();
+		previous.append(ROOM, messages(1, 3));
+
+		when(database.databaseID()).thenReturn("another");
+		MessageArchive archive = archive();
+		when(database.listRoomsWithMessagesBefore(any())).thenReturn(List.of(ROOM));
+		when(database.listOlderThan(eq(ROOM), eq(-1L), any(), anyInt())).thenReturn(List.of());
+
+		archiver.archive();
+
+		assertThat(archive.archivedThrough(ROOM)).isEqualTo(-1);
+		verify(database, never()).listAfter(anyLong(), anyLong(), anyInt());
+		verify(database, never()).deleteAll(anyLong(), any());
+	}
+
+	private MessageArchive archive() {
+		if (archiver != null) archiver.shutdown();
+		MessageArchive archive = new MessageArchive(database, root, 1 << 20);
+		archiver = new MessageArchiver(database, archive, new SimpleMeterRegistry(), false, Duration.ofDays(30), 3600000, 100);
+		return archive;
+	}
+}
@@ -0,0 +1,96 @@
+package net.rooms.RoomsServer.message.archive;
+
+import net.rooms.RoomsServer.message.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.rooms.RoomsServer.message.archive.SegmentTest.messages;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomArchiveTest {
+	private static final long ROOM = 7;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void startsNewSegmentsAndReadsAcrossThem() throws IOException {
+		RoomArchive archive = RoomArchive.open(directory, ROOM);
+		assertThat(archive.archivedThrough()).isEqualTo(-1);
+
+		List<Message> messages = messages(1, 500);
+		for (int i = 0; i < messages.size(); i += 100)
+			archive.append(messages.subList(i, i + 100), 1000);
+
+		try (var files = Files.list(directory)) {
+			assertThat(files.count()).isEqualTo(5);
+		}
+		assertThat(archive.archivedThrough()).isEqualTo(500);
+		assertThat(archive.listBefore(203, 5)).extracting(Message::id).containsExactly(198L, 199L, 200L, 201L, 202L);
+		assertThat(archive.listAfter(298, 4)).extracting(Message::id).containsExactly(299L, 300L, 301L, 302L);
+		assertThat(archive.find(301)).isEqualTo(messages.get(300));
+
+		List<Message> all = new ArrayList<>();
+		archive.forEach(all::add);
+		assertThat(all).isEqualTo(messages);
+	}
+
+	@Test
+	void reopensSegmentsInOrder() throws IOException {
+		RoomArchive archive = RoomArchive.open(directory, ROOM);
+		List<Message> messages = messages(1, 300);
+		for (int i = 0; i < messages.size(); i += 100)
+			archive.append(messages.subList(i, i + 100), 1000);
+
+		RoomArchive reopened = RoomArchive.open(directory, ROOM);
+		assertThat(reopened.archivedThrough()).isEqualTo(300);
+		assertThat(reopened.listAfter(Long.MIN_VALUE, 1000)).isEqualTo(messages);
+	}
+
+	@Test
+	void ignoresFilesThatAreNotSegments() throws IOException {
+		RoomArchive archive = RoomArchive.open(directory, ROOM);
+		archive.append(messages(1, 10), 1000);
+		Files.writeString(directory.resolve("notes.seg"), "not a segment");
+		Files.writeString(directory.resolve("00000000000000000001.seg.bak"), "not a segment either");
+
+		RoomArchive reopened = RoomArchive.open(directory, ROOM);
+		assertThat(reopened.archivedThrough()).isEqualTo(10);
+		assertThat(reopened.listAfter(Long.MIN_VALUE, 100)).hasSize(10);
+	}
+
+	@Test
+	void doesNotHoldTheLockWhileConsuming() throws Exception {
+		RoomArchive archive = RoomArchive.open(directory, ROOM);
+		archive.append(messages(1, 1000), 1 << 20);
+
+		List<Long> ids = new ArrayList<>();
+		archive.forEach(message -> {
+			if (message.id() == 1) {
+				// Appending from another thread would block forever if the lock was held
+				Thread appender = new Thread(() -> {
+					try {
+						archive.append(messages(1001, 1), 1 << 20);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+				appender.start();
+				try {
+					appender.join(5000);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				assertThat(appender.isAlive()).isFalse();
+			}
+			ids.add(message.id());
+		});
+		assertThat(ids).hasSize(1001);
+	}
+}
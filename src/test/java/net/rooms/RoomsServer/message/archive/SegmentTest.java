@@ -0,0 +1,168 @@
+package net.rooms.RoomsServer.message.archive;
+
+import net.rooms.RoomsServer.message.Message;
+import net.rooms.RoomsServer.message.MessageType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentTest {
+	private static final long ROOM = 7;
+	private static final LocalDateTime SENT = LocalDateTime.of(2024, 5, 17, 12, 30, 15, 123_456_000);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writesRecordsInTheDocumentedFormat() throws IOException {
+		Path path = directory.resolve("1.seg");
+		Segment segment = Segment.open(path, ROOM, 1);
+		segment.append(List.of(new Message(42, ROOM, MessageType.PONG_GAME_RESULT, "élise", "gg", SENT)));
+
+		byte[] sender = "élise".getBytes(StandardCharsets.UTF_8);
+		int length = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + sender.length + Integer.BYTES + 2;
+		ByteBuffer expected = ByteBuffer.allocate(length + 2 * Integer.BYTES)
+				.putInt(length)
+				.putLong(42)
+				.putInt(MessageType.PONG_GAME_RESULT.ordinal())
+				.putLong(SENT.toEpochSecond(ZoneOffset.UTC))
+				.putInt(SENT.getNano())
+				.putInt(sender.length).put(sender)
+				.putInt(2).put("gg".getBytes(StandardCharsets.UTF_8))
+				.putInt(length);
+
+		byte[] file = Files.readAllBytes(path);
+		assertThat(segment.size()).isEqualTo(expected.capacity());
+		assertThat(Arrays.copyOf(file, segment.size())).isEqualTo(expected.array());
+		// The rest of the mapping is not written yet
+		assertThat(Arrays.copyOfRange(file, segment.size(), file.length)).containsOnly(0);
+	}
+
+	@Test
+	void readsMessagesInBothDirections() throws IOException {
+		Segment segment = Segment.open(directory.resolve("10.seg"), ROOM, 10);
+		List<Message> messages = messages(10, 300);
+		segment.append(messages.subList(0, 100));
+		segment.append(messages.subList(100, messages.size()));
+
+		assertThat(segment.lastID()).isEqualTo(309);
+		assertThat(segment.listAfter(Long.MIN_VALUE, 1000)).isEqualTo(messages);
+		assertThat(segment.listAfter(150, 3)).extracting(Message::id).containsExactly(151L, 152L, 153L);
+		assertThat(segment.listAfter(309, 3)).isEmpty();
+		assertThat(segment.listBefore(150, 3)).extracting(Message::id).containsExactly(147L, 148L, 149L);
+		assertThat(segment.listBefore(12, 3)).extracting(Message::id).containsExactly(10L, 11L);
+		assertThat(segment.listBefore(Long.MAX_VALUE, 1)).extracting(Message::id).containsExactly(309L);
+		assertThat(segment.find(200)).isEqualTo(messages.get(190));
+		assertThat(segment.find(5)).isNull();
+		assertThat(segment.find(400)).isNull();
+	}
+
+	@Test
+	void keepsMessagesWithoutASendDate() throws IOException {
+		Segment segment = Segment.open(directory.resolve("1.seg"), ROOM, 1);
+		Message message = new Message(1, ROOM, MessageType.MESSAGE, "alice", "", null);
+		segment.append(List.of(message));
+
+		assertThat(Segment.open(segment.path, ROOM, 1).find(1)).isEqualTo(message);
+	}
+
+	@Test
+	void growsTheMappingWithoutMappingEveryAppend() throws IOException {
+		Path path = directory.resolve("1.seg");
+		Segment segment = Segment.open(path, ROOM, 1);
+		List<Message> messages = messages(1, 2000);
+		for (int i = 0; i < messages.size(); i += 10)
+			segment.append(messages.subList(i, i + 10));
+
+		long length = Files.size(path);
+		assertThat(length).isGreaterThanOrEqualTo(segment.size()).isLessThan(2L * segment.size() + 64 * 1024);
+		assertThat(segment.listAfter(Long.MIN_VALUE, Integer.MAX_VALUE)).isEqualTo(messages);
+	}
+
+	@Test
+	void recoversAfterACrash() throws IOException {
+		Path path = directory.resolve("1.seg");
+		Segment segment = Segment.open(path, ROOM, 1);
+		List<Message> messages = messages(1, 100);
+		segment.append(messages);
+		int size = segment.size();
+
+		Segment reopened = Segment.open(path, ROOM, 1);
+
+		// The zeros at the end of the mapping are cut off
+		assertThat(Files.size(path)).isEqualTo(size);
+		assertThat(reopened.size()).isEqualTo(size);
+		assertThat(reopened.lastID()).isEqualTo(100);
+		assertThat(reopened.listAfter(Long.MIN_VALUE, 1000)).isEqualTo(messages);
+
+		reopened.append(messages(101, 5));
+		assertThat(Segment.open(path, ROOM, 1).listAfter(Long.MIN_VALUE, 1000)).extracting(Message::id)
+				.containsExactlyElementsOf(LongStream.rangeClosed(1, 105).boxed().toList());
+	}
+
+	@Test
+	void cutsOffATornRecord() throws IOException {
+		Path path = directory.resolve("1.seg");
+		Segment segment = Segment.open(path, ROOM, 1);
+		List<Message> messages = messages(1, 3);
+		segment.append(messages);
+		int size = segment.size();
+
+		// Writes all but the trailing length of one more record, as if the server stopped halfway
+		Segment other = Segment.open(directory.resolve("other.seg"), ROOM, 4);
+		other.append(messages(4, 1));
+		byte[] record = Arrays.copyOf(Files.readAllBytes(other.path), other.size() - Integer.BYTES);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+			channel.write(ByteBuffer.wrap(record), size);
+		}
+
+		Segment reopened = Segment.open(path, ROOM, 1);
+		assertThat(reopened.size()).isEqualTo(size);
+		assertThat(Files.size(path)).isEqualTo(size);
+		assertThat(reopened.lastID()).isEqualTo(3);
+		assertThat(reopened.find(4)).isNull();
+
+		reopened.append(messages(4, 1));
+		assertThat(Segment.open(path, ROOM, 1).listAfter(Long.MIN_VALUE, 10)).extracting(Message::id)
+				.containsExactly(1L, 2L, 3L, 4L);
+	}
+
+	@Test
+	void cutsOffARecordWithAWrongLength() throws IOException {
+		Path path = directory.resolve("1.seg");
+		Segment segment = Segment.open(path, ROOM, 1);
+		segment.append(messages(1, 2));
+		int size = segment.size();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1_000_000), size);
+		}
+
+		Segment reopened = Segment.open(path, ROOM, 1);
+		assertThat(reopened.size()).isEqualTo(size);
+		assertThat(reopened.lastID()).isEqualTo(2);
+	}
+
+	static List<Message> messages(long firstID, int count) {
+		List<Message> messages = new ArrayList<>(count);
+		for (long id = firstID; id < firstID + count; id++)
+			messages.add(new Message(id, ROOM, MessageType.MESSAGE, "user" + id % 3, "message " + id, SENT.plusSeconds(id)));
+		return messages;
+	}
+}
@@ -0,0 +1,81 @@
+package net.rooms.RoomsServer.room;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.rooms.RoomsServer.user.Participant;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachedRoomRepositoryTest {
+	private final JdbcRoomRepository database = mock(JdbcRoomRepository.class);
+	private final PublicRoomIndex publicRooms = mock(PublicRoomIndex.class);
+
+	@Test
+	void cachesParticipantsUntilTheyChange() {
+		CachedRoomRepository repository = repository(true, 10);
+		when(database.listParticipants(1)).thenReturn(List.of(participant(1, "alice"), participant(1, "bob")));
+
+		assertThat(repository.isParticipant(1, "alice")).isTrue();
+		assertThat(repository.isParticipant(1, "carol")).isFalse();
+		verify(database, times(1)).listParticipants(1);
+
+		repository.leaveUser(1L, "alice");
+		assertThat(repository.listParticipants(1)).extracting(Participant::username).containsExactly("bob");
+		verify(database, times(1)).listParticipants(1);
+
+		repository.joinUser(1L, "carol");
+		repository.isParticipant(1, "carol");
+		verify(database, times(2)).listParticipants(1);
+	}
+
+	@Test
+	void doesNotCacheRoomsWithoutParticipants() {
+		CachedRoomRepository repository = repository(true, 10);
+		when(database.listParticipants(any(Long.class))).thenReturn(List.of());
+
+		for (long roomID = 0; roomID < 100; roomID++)
+			assertThat(repository.isParticipant(roomID, "alice")).isFalse();
+		assertThat(repository.listParticipants(0)).isEmpty();
+		verify(database, times(2)).listParticipants(0);
+	}
+
+	@Test
+	void holdsABoundedNumberOfRooms() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		CachedRoomRepository repository = new CachedRoomRepository(database, publicRooms, registry, true, 10, 3);
+		for (long roomID = 0; roomID < 10; roomID++) {
+			when(database.listParticipants(roomID)).thenReturn(List.of(participant(roomID, "alice")));
+			repository.isParticipant(roomID, "alice");
+		}
+
+		assertThat(registry.get("rooms.cache.size").tag("cache", "members").gauge().value()).isEqualTo(3);
+		repository.isParticipant(0, "alice");
+		verify(database, times(2)).listParticipants(0);
+	}
+
+	@Test
+	void readsEveryLookupWhenDisabled() {
+		CachedRoomRepository repository = repository(false, 10);
+		when(database.listParticipants(1)).thenReturn(List.of(participant(1, "alice")));
+
+		repository.isParticipant(1, "alice");
+		repository.isParticipant(1, "alice");
+		verify(database, times(2)).listParticipants(1);
+	}
+
+	private CachedRoomRepository repository(boolean enabled, int capacity) {
+		return new CachedRoomRepository(database, publicRooms, new SimpleMeterRegistry(), enabled, capacity, capacity);
+	}
+
+	private static Participant participant(long roomID, String username) {
+		return new Participant(roomID, username, username, LocalDateTime.now());
+	}
+}
@@ -0,0 +1,102 @@
+package net.rooms.RoomsServer.room;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PublicRoomIndexTest {
+	private final JdbcRoomRepository database = mock(JdbcRoomRepository.class);
+	private final PublicRoomIndex index = new PublicRoomIndex(database, new SimpleMeterRegistry());
+
+	@Test
+	void searchesByTitlePrefixAndMembers() {
+		loads(room(1, "Pong lovers", 2), room(2, "pong club", 5), room(3, "Snakes", 9), room(4, "PONG", 2));
+
+		PublicRoomPage page = index.search("pong", null, 0, 2);
+		assertThat(page.rooms()).extracting(PublicRoom::roomID).containsExactly(2L, 1L);
+		assertThat(index.search("pong", page.next(), 0, 2).rooms()).extracting(PublicRoom::roomID).containsExactly(4L);
+		assertThat(index.search("pong", null, 1, 5).rooms()).extracting(PublicRoom::roomID).containsExactly(1L, 4L);
+		verify(database, never()).searchPublicRooms(any(), any(), anyInt(), anyInt());
+	}
+
+	@Test
+	void retriesALoadThatRacedWithAChange() {
+		AtomicInteger loads = new AtomicInteger();
+		doAnswer(invocation -> {
+			ObjIntConsumer<PublicRoom> consumer = invocation.getArgument(0);
+			consumer.accept(publicRoom(1, "Pong lovers"), 1);
+			if (loads.incrementAndGet() == 1) index.change(() -> true, rooms -> {});
+			return null;
+		}).when(database).forEachPublicRoom(any());
+
+		long started = System.nanoTime();
+		assertThat(index.search("pong", null, 0, 10).rooms()).extracting(PublicRoom::roomID).containsExactly(1L);
+		assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(10_000_000); // Paused before retrying
+		assertThat(loads).hasValue(2);
+		verify(database, never()).searchPublicRooms(any(), any(), anyInt(), anyInt());
+	}
+
+	@Test
+	void searchesTheDatabaseWhileChangesKeepRacing() {
+		doAnswer(invocation -> {
+			index.change(() -> true, rooms -> {});
+			return null;
+		}).when(database).forEachPublicRoom(any());
+		PublicRoomPage fromDatabase = new PublicRoomPage(List.of(), null);
+		when(database.searchPublicRooms("pong", null, 0, 10)).thenReturn(fromDatabase);
+
+		long started = System.nanoTime();
+		assertThat(index.search("pong", null, 0, 10)).isSameAs(fromDatabase);
+		assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(30_000_000); // 10 and 20 milliseconds
+		verify(database, times(3)).forEachPublicRoom(any());
+	}
+
+	@Test
+	void indexesCreatedRoomsWithoutReadingThemBack() {
+		loads();
+		index.search("", null, 0, 10);
+		CachedRoomRepository repository = new CachedRoomRepository(database, index, new SimpleMeterRegistry(), true, 10, 10);
+		Room room = new Room(5, "Pong", false, "secret", "alice", LocalDateTime.now(), "Pong all day");
+		when(database.create(room)).thenReturn(true);
+
+		assertThat(repository.create(room)).isTrue();
+		assertThat(index.search("po", null, 0, 10).rooms()).containsExactly(
+				new PublicRoom(5, "Pong", true, "alice", room.creationDate(), "Pong all day"));
+		verify(database, never()).getByID(eq(5L));
+	}
+
+	private void loads(Ranked... rooms) {
+		doAnswer(invocation -> {
+			ObjIntConsumer<PublicRoom> consumer = invocation.getArgument(0);
+			for (Ranked room : rooms)
+				consumer.accept(room.room, room.members);
+			return null;
+		}).when(database).forEachPublicRoom(any());
+	}
+
+	private static Ranked room(long roomID, String title, int members) {
+		return new Ranked(publicRoom(roomID, title), members);
+	}
+
+	private static PublicRoom publicRoom(long roomID, String title) {
+		return new PublicRoom(roomID, title, false, "alice", LocalDateTime.now(), "");
+	}
+
+	private record Ranked(PublicRoom room, int members) {
+	}
+}
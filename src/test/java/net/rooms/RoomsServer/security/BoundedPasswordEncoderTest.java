@@ -0,0 +1,111 @@
+package net.rooms.RoomsServer.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BoundedPasswordEncoderTest {
+	private final BCryptPasswordEncoder bcrypt = mock(BCryptPasswordEncoder.class);
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private BoundedPasswordEncoder encoder;
+
+	@AfterEach
+	void shutdown() {
+		if (encoder != null) encoder.shutdown();
+	}
+
+	@Test
+	void hashesOnThePool() {
+		encoder = new BoundedPasswordEncoder(bcrypt, registry, false, 1, 1, 5000);
+		AtomicReference<String> thread = new AtomicReference<>();
+		when(bcrypt.encode(any())).thenAnswer(invocation -> {
+			thread.set(Thread.currentThread().getName());
+			return "hash";
+		});
+		when(bcrypt.matches("password", "hash")).thenReturn(true);
+
+		assertThat(encoder.encode("password")).isEqualTo("hash");
+		assertThat(thread.get()).startsWith("password-verifier-");
+		assertThat(encoder.matches("password", "hash")).isTrue();
+		assertThat(encoder.matches("wrong", "hash")).isFalse();
+		assertThat(registry.get("rooms.login.verifications").tag("result", "match").counter().count()).isEqualTo(1);
+		assertThat(registry.get("rooms.login.verifications").tag("result", "mismatch").counter().count()).isEqualTo(1);
+		assertThat(registry.get("rooms.login.queue").timer().count()).isEqualTo(3);
+	}
+
+	@Test
+	void rejectsHashingThatDoesNotFitTheQueue() throws InterruptedException {
+		encoder = new BoundedPasswordEncoder(bcrypt, registry, false, 1, 1, 5000);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(bcrypt.encode(any())).thenAnswer(invocation -> {
+			started.countDown();
+			release.await();
+			return "hash";
+		});
+
+		Thread first = Thread.ofVirtual().start(() -> encoder.encode("first"));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread second = Thread.ofVirtual().start(() -> encoder.encode("second")); // Queued
+		while (registry.get("rooms.login.queue.depth").gauge().value() < 1)
+			Thread.onSpinWait();
+
+		assertThatThrownBy(() -> encoder.encode("third")).isInstanceOf(AuthenticationServiceException.class);
+		assertThat(registry.get("rooms.login.verifications").tag("result", "rejected").counter().count()).isEqualTo(1);
+		release.countDown();
+		first.join();
+		second.join();
+	}
+
+	@Test
+	void skipsQueuedHashingThatTimesOut() throws InterruptedException {
+		encoder = new BoundedPasswordEncoder(bcrypt, registry, false, 1, 1, 1000);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(bcrypt.encode(any())).thenAnswer(invocation -> {
+			started.countDown();
+			while (true) {
+				try { // Like BCrypt, ignores interrupts
+					release.await();
+					return "hash";
+				} catch (InterruptedException ignored) {
+				}
+			}
+		});
+
+		Thread first = Thread.ofVirtual().start(() -> {
+			try {
+				encoder.encode("first");
+			} catch (AuthenticationServiceException ignored) { // Also times out, but keeps the thread
+			}
+		});
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThatThrownBy(() -> encoder.encode("second")).isInstanceOf(AuthenticationServiceException.class);
+		assertThat(registry.get("rooms.login.queue.depth").gauge().value()).isZero();
+
+		AtomicReference<String> third = new AtomicReference<>();
+		Thread thread = Thread.ofVirtual().start(() -> third.set(encoder.encode("third"))); // Takes the freed slot
+		while (registry.get("rooms.login.queue.depth").gauge().value() < 1)
+			Thread.onSpinWait();
+		release.countDown();
+		thread.join();
+		first.join();
+
+		assertThat(third.get()).isEqualTo("hash");
+		verify(bcrypt, never()).encode("second");
+	}
+}
@@ -0,0 +1,142 @@
+package net.rooms.RoomsServer.websocket;
+
+import jakarta.servlet.http.HttpSessionEvent;
+import net.rooms.RoomsServer.CustomSessionListener;
+import net.rooms.RoomsServer.game.GameController;
+import net.rooms.RoomsServer.user.User;
+import net.rooms.RoomsServer.user.UserRole;
+import net.rooms.RoomsServer.websocket.util.WSAuth;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ConnectAuthInterceptorTest {
+	private static final User ALICE = user("alice");
+	private static final User BOB = user("bob");
+
+	private final CustomSessionListener listener = new CustomSessionListener();
+	private final ConnectAuthInterceptor interceptor = new ConnectAuthInterceptor();
+	private final List<MockHttpSession> sessions = new ArrayList<>();
+
+	@AfterEach
+	void destroySessions() {
+		sessions.forEach(session -> listener.sessionDestroyed(new HttpSessionEvent(session)));
+	}
+
+	@Test
+	void bindsTheAuthenticatedPrincipal() {
+		MockHttpSession session = login(ALICE);
+		StompHeaderAccessor connect = frame(StompCommand.CONNECT, new HashMap<>());
+		connect.setUser(authentication(ALICE));
+		connect.getSessionAttributes().put(HttpSessionHandshakeInterceptor.HTTP_SESSION_ID_ATTR_NAME, session.getId());
+
+		Map<String, Object> attributes = send(connect);
+
+		assertThat(attributes).containsEntry(WSAuth.USER_ATTRIBUTE, ALICE)
+				.containsEntry(WSAuth.SESSION_ATTRIBUTE, "JSESSIONID=" + session.getId());
+		assertThat(WSAuth.getUser(frame(StompCommand.SEND, attributes), (String) null)).isEqualTo(ALICE);
+	}
+
+	@Test
+	void doesNotBindAPrincipalWithoutAnHttpSession() {
+		StompHeaderAccessor connect = frame(StompCommand.CONNECT, new HashMap<>());
+		connect.setUser(authentication(ALICE));
+
+		assertThat(send(connect)).isEmpty();
+	}
+
+	@Test
+	void fallsBackToTheSessionIDHeader() {
+		MockHttpSession session = login(ALICE);
+		StompHeaderAccessor connect = frame(StompCommand.CONNECT, new HashMap<>());
+		connect.setNativeHeader(GameController.SESSION_ID_HEADER, "JSESSIONID=" + session.getId());
+
+		Map<String, Object> attributes = send(connect);
+
+		assertThat(attributes).containsEntry(WSAuth.USER_ATTRIBUTE, ALICE)
+				.containsEntry(WSAuth.SESSION_ATTRIBUTE, "JSESSIONID=" + session.getId());
+	}
+
+	@Test
+	void leavesOtherFramesUntouched() {
+		MockHttpSession session = login(ALICE);
+		StompHeaderAccessor send = frame(StompCommand.SEND, new HashMap<>());
+		send.setUser(authentication(ALICE));
+		send.setNativeHeader(GameController.SESSION_ID_HEADER, "JSESSIONID=" + session.getId());
+
+		assertThat(send(send)).isEmpty();
+	}
+
+	@Test
+	void prefersTheBoundUserOverTheSessionIDInThePayload() {
+		MockHttpSession alice = login(ALICE);
+		MockHttpSession bob = login(BOB);
+		StompHeaderAccessor connect = frame(StompCommand.CONNECT, new HashMap<>());
+		connect.setNativeHeader(GameController.SESSION_ID_HEADER, "JSESSIONID=" + alice.getId());
+		Map<String, Object> attributes = send(connect);
+
+		assertThat(WSAuth.getUser(frame(StompCommand.SEND, attributes), "JSESSIONID=" + bob.getId())).isEqualTo(ALICE);
+	}
+
+	@Test
+	void resolvesUnknownAndExpiredSessionsToNoUser() {
+		StompHeaderAccessor unknown = frame(StompCommand.CONNECT, new HashMap<>());
+		unknown.setNativeHeader(GameController.SESSION_ID_HEADER, "JSESSIONID=unknown");
+		assertThat(send(unknown)).isEmpty();
+		assertThat(WSAuth.getUser(frame(StompCommand.SEND, new HashMap<>()), "JSESSIONID=unknown")).isEqualTo(User.EMPTY);
+
+		MockHttpSession session = login(ALICE);
+		StompHeaderAccessor connect = frame(StompCommand.CONNECT, new HashMap<>());
+		connect.setNativeHeader(GameController.SESSION_ID_HEADER, "JSESSIONID=" + session.getId());
+		Map<String, Object> attributes = send(connect);
+		listener.sessionDestroyed(new HttpSessionEvent(session));
+
+		assertThat(WSAuth.getUser(frame(StompCommand.SEND, attributes), (String) null)).isEqualTo(User.EMPTY);
+	}
+
+	private MockHttpSession login(User user) {
+		MockHttpSession session = new MockHttpSession();
+		session.setAttribute("SPRING_SECURITY_CONTEXT", new SecurityContextImpl(authentication(user)));
+		listener.sessionCreated(new HttpSessionEvent(session));
+		sessions.add(session);
+		return session;
+	}
+
+	private Map<String, Object> send(StompHeaderAccessor accessor) {
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+		interceptor.preSend(message, mock(MessageChannel.class));
+		return accessor.getSessionAttributes();
+	}
+
+	private static StompHeaderAccessor frame(StompCommand command, Map<String, Object> attributes) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+		accessor.setSessionAttributes(attributes);
+		accessor.setLeaveMutable(true);
+		return accessor;
+	}
+
+	private static UsernamePasswordAuthenticationToken authentication(User user) {
+		return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+	}
+
+	private static User user(String username) {
+		return new User(username, username, "", UserRole.USER, LocalDateTime.of(2024, 1, 1, 0, 0));
+	}
+}